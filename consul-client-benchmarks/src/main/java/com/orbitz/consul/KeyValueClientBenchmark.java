@@ -0,0 +1,78 @@
+package com.orbitz.consul;
+
+import com.orbitz.consul.benchmark.Fixtures;
+import com.orbitz.consul.model.kv.Value;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recursive KV reads against a local server, from the HTTP call to the decoded values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyValueClientBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private MockWebServer server;
+    private Consul consul;
+    private KeyValueClient keyValueClient;
+
+    @Setup
+    public void setUp() throws IOException {
+        String body = Fixtures.valuesJson(size);
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setHeader("X-Consul-Index", "183746523")
+                        .setHeader("X-Consul-Knownleader", "true")
+                        .setHeader("X-Consul-Lastcontact", "0")
+                        .setBody(body);
+            }
+        });
+        server.start();
+
+        consul = Consul.builder()
+                .withUrl(server.url("/").toString())
+                .withPing(false)
+                .build();
+        keyValueClient = consul.keyValueClient();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        consul.destroy();
+        server.shutdown();
+    }
+
+    @Benchmark
+    public List<Value> getValues() {
+        return keyValueClient.getValues("config/service");
+    }
+}
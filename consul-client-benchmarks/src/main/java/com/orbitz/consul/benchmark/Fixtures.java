@@ -0,0 +1,99 @@
+package com.orbitz.consul.benchmark;
+
+import com.google.common.io.BaseEncoding;
+import com.orbitz.consul.model.kv.ImmutableValue;
+import com.orbitz.consul.model.kv.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Payloads shaped like the responses of a Consul agent, shared by the benchmarks.
+ */
+public final class Fixtures {
+
+    private Fixtures() {}
+
+    /**
+     * Gets the key of the {@code i}-th value of a KV prefix.
+     */
+    public static String key(int i) {
+        return "config/service/" + i;
+    }
+
+    /**
+     * Builds {@code count} KV values whose modify index is {@code modifyIndex}.
+     */
+    public static List<Value> values(int count, long modifyIndex) {
+        List<Value> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(ImmutableValue.builder()
+                    .createIndex(1)
+                    .modifyIndex(modifyIndex)
+                    .lockIndex(0)
+                    .key(key(i))
+                    .flags(0)
+                    .value(encode("value-" + i))
+                    .build());
+        }
+        return values;
+    }
+
+    /**
+     * Builds the JSON body of a recursive KV read returning {@code count} values.
+     */
+    public static String valuesJson(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"LockIndex\":0,\"Key\":\"").append(key(i))
+                    .append("\",\"Flags\":0,\"Value\":\"").append(encode("value-" + i))
+                    .append("\",\"CreateIndex\":").append(i + 1)
+                    .append(",\"ModifyIndex\":").append(i + 1).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Builds the JSON body of a health query returning {@code count} instances of a service,
+     * each with a node check and a service check.
+     */
+    public static String serviceHealthJson(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            String node = "node-" + i;
+            String id = "web-" + i;
+            json.append("{\"Node\":{\"ID\":\"").append(i).append("\",\"Node\":\"").append(node)
+                    .append("\",\"Address\":\"10.0.").append(i / 256).append('.').append(i % 256)
+                    .append("\",\"Datacenter\":\"dc1\",\"TaggedAddresses\":{\"lan\":\"10.0.0.1\",\"wan\":\"10.0.0.1\"},")
+                    .append("\"Meta\":{\"rack\":\"r").append(i % 8).append("\"},\"CreateIndex\":5,\"ModifyIndex\":5},")
+                    .append("\"Service\":{\"ID\":\"").append(id).append("\",\"Service\":\"web\",\"Tags\":[\"primary\",\"v1\"],")
+                    .append("\"Address\":\"\",\"Meta\":{\"version\":\"1.0\"},\"Port\":8080,")
+                    .append("\"Weights\":{\"Passing\":10,\"Warning\":1},\"EnableTagOverride\":false,")
+                    .append("\"CreateIndex\":7,\"ModifyIndex\":7},")
+                    .append("\"Checks\":[")
+                    .append(check(node, "serfHealth", "Serf Health Status", "", ""))
+                    .append(',')
+                    .append(check(node, "service:" + id, "Service 'web' check", id, "web"))
+                    .append("]}");
+        }
+        return json.append(']').toString();
+    }
+
+    private static String check(String node, String checkId, String name, String serviceId, String serviceName) {
+        return "{\"Node\":\"" + node + "\",\"CheckID\":\"" + checkId + "\",\"Name\":\"" + name
+                + "\",\"Status\":\"passing\",\"Notes\":\"\",\"Output\":\"HTTP GET http://localhost:8080/health: 200 OK\","
+                + "\"ServiceID\":\"" + serviceId + "\",\"ServiceName\":\"" + serviceName + "\",\"ServiceTags\":[],"
+                + "\"CreateIndex\":9,\"ModifyIndex\":9}";
+    }
+
+    private static String encode(String value) {
+        return BaseEncoding.base64().encode(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
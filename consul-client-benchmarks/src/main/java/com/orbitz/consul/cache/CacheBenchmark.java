@@ -0,0 +1,89 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Equivalence;
+import com.google.common.collect.ImmutableMap;
+import com.orbitz.consul.benchmark.Fixtures;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.kv.Value;
+import com.orbitz.consul.monitoring.ClientEventCallback;
+import com.orbitz.consul.monitoring.ClientEventHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the snapshot of a cache from a response: full conversion compared to the incremental
+ * diff against the previous snapshot, with no change and with 1% of the entries updated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    private static final Equivalence<Value> MODIFY_INDEX = ConsulCache.modifyIndexEquivalence(v -> Optional.of(v.getModifyIndex()));
+
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private ConsulCache<String, Value> cache;
+    private ConsulResponse<List<Value>> response;
+    private ImmutableMap<String, Value> previous;
+    private List<Value> unchanged;
+    private List<Value> onePercentUpdated;
+
+    @Setup
+    public void setUp() {
+        cache = new ConsulCache<>(Value::getKey, (index, callback) -> {}, CacheConfig.builder().build(),
+                new ClientEventHandler("benchmark", new ClientEventCallback() {}), new CacheDescriptor("benchmark"));
+
+        List<Value> values = Fixtures.values(size, 1);
+        response = new ConsulResponse<>(values, 0, true, BigInteger.ONE, Optional.empty());
+        previous = cache.convertToMap(response);
+        unchanged = Fixtures.values(size, 1);
+
+        List<Value> updated = Fixtures.values(size, 2);
+        onePercentUpdated = new ArrayList<>(unchanged);
+        for (int i = 0; i < size; i += 100) {
+            onePercentUpdated.set(i, updated.get(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.stop();
+    }
+
+    @Benchmark
+    public ImmutableMap<String, Value> convertToMap() {
+        return cache.convertToMap(response);
+    }
+
+    @Benchmark
+    public ChangeSet<String, Value> changeSetUnchanged() {
+        return ChangeSet.compute(previous, unchanged, Value::getKey, MODIFY_INDEX, BigInteger.TEN);
+    }
+
+    @Benchmark
+    public ChangeSet<String, Value> changeSetOnePercentUpdated() {
+        return ChangeSet.compute(previous, onePercentUpdated, Value::getKey, MODIFY_INDEX, BigInteger.TEN);
+    }
+}
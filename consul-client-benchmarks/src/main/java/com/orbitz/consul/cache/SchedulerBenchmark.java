@@ -0,0 +1,120 @@
+package com.orbitz.consul.cache;
+
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ExecutionMode;
+import com.orbitz.consul.util.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wake-up latency of the cache schedulers while many caches are waiting for their next poll,
+ * for each way of running them. The number of live threads and the resident set size of the
+ * JVM are printed at the end of each trial.
+ * <p>
+ * The virtual threads mode requires running the benchmarks on Java 21 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    public enum SchedulerType {
+        PLATFORM_THREADS, VIRTUAL_THREADS, TIMER_WHEEL
+    }
+
+    @Param({"PLATFORM_THREADS", "VIRTUAL_THREADS", "TIMER_WHEEL"})
+    public SchedulerType type;
+
+    @Param({"100", "1000"})
+    public int caches;
+
+    private HashedWheelTimer timer;
+    private ConsulCache.Scheduler[] schedulers;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        CacheConfig.Builder config = CacheConfig.builder();
+        switch (type) {
+            case VIRTUAL_THREADS:
+                if (!VirtualThreads.isSupported()) {
+                    throw new IllegalStateException("Virtual threads require Java 21 or later");
+                }
+                config.withExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+                break;
+            case TIMER_WHEEL:
+                timer = new HashedWheelTimer(Duration.ofMillis(1), 512, Runnable::run);
+                config.withTimerWheel(timer);
+                break;
+            default:
+                break;
+        }
+        CacheConfig cacheConfig = config.build();
+
+        schedulers = new ConsulCache.Scheduler[caches];
+        for (int i = 0; i < caches; i++) {
+            schedulers[i] = ConsulCache.createDefault(cacheConfig);
+            // an idle cache waiting for its next poll
+            schedulers[i].schedule(() -> {}, 1, TimeUnit.HOURS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("%n%s with %d caches: %d live threads, RSS %s%n", type, caches,
+                ManagementFactory.getThreadMXBean().getThreadCount(), residentSetSize());
+        for (ConsulCache.Scheduler scheduler : schedulers) {
+            scheduler.shutdownNow();
+        }
+        if (timer != null) {
+            System.out.printf("Timer wheel average drift %s, maximum drift %s%n", timer.getAverageDrift(), timer.getMaximumDrift());
+            timer.stop();
+        }
+    }
+
+    @Benchmark
+    public void wakeUp() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        schedulers[next++ % caches].schedule(latch::countDown, 1, TimeUnit.MILLISECONDS);
+        latch.await();
+    }
+
+    private static String residentSetSize() {
+        Path status = Paths.get("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return "unavailable";
+        }
+        try {
+            return Files.readAllLines(status, StandardCharsets.UTF_8).stream()
+                    .filter(line -> line.startsWith("VmRSS:"))
+                    .map(line -> line.substring("VmRSS:".length()).trim())
+                    .findFirst()
+                    .orElse("unavailable");
+        } catch (IOException e) {
+            return "unavailable";
+        }
+    }
+}
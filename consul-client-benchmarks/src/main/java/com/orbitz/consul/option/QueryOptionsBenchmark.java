@@ -0,0 +1,59 @@
+package com.orbitz.consul.option;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of query options to query parameters, done for every cache poll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryOptionsBenchmark {
+
+    private QueryOptions blocking;
+    private QueryOptions filtered;
+
+    @Setup
+    public void setUp() {
+        blocking = QueryOptions.blockSeconds(10, new BigInteger("183746523")).build();
+        filtered = QueryOptions.blockSeconds(10, new BigInteger("183746523"))
+                .consistencyMode(ConsistencyMode.STALE)
+                .datacenter("dc1")
+                .near("_agent")
+                .filter("Service.Meta.version == \"1.0\"")
+                .addTag("primary")
+                .addNodeMeta("rack:r1")
+                .build();
+    }
+
+    @Benchmark
+    public Map<String, Object> blank() {
+        return QueryOptions.BLANK.toQuery();
+    }
+
+    @Benchmark
+    public Map<String, Object> blocking() {
+        return blocking.toQuery();
+    }
+
+    @Benchmark
+    public Map<String, Object> filtered() {
+        return filtered.toQuery();
+    }
+}
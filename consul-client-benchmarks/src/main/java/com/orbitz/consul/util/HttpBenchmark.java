@@ -0,0 +1,62 @@
+package com.orbitz.consul.util;
+
+import com.orbitz.consul.model.ConsulResponse;
+import okhttp3.Headers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import retrofit2.Response;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of the Consul headers from a response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpBenchmark {
+
+    private Response<List<String>> response;
+    private Response<List<String>> cachedResponse;
+
+    @Setup
+    public void setUp() {
+        Headers headers = new Headers.Builder()
+                .add("Content-Type", "application/json")
+                .add("Vary", "Accept-Encoding")
+                .add("X-Consul-Effective-Consistency", "leader")
+                .add("X-Consul-Index", "183746523")
+                .add("X-Consul-Knownleader", "true")
+                .add("X-Consul-Lastcontact", "0")
+                .add("Date", "Mon, 01 Feb 2021 10:00:00 GMT")
+                .build();
+        response = Response.success(Collections.emptyList(), headers);
+        cachedResponse = Response.success(Collections.emptyList(), headers.newBuilder()
+                .add("X-Cache", "HIT")
+                .add("Age", "3")
+                .build());
+    }
+
+    @Benchmark
+    public ConsulResponse<List<String>> consulResponse() {
+        return Http.consulResponse(response);
+    }
+
+    @Benchmark
+    public ConsulResponse<List<String>> consulResponseWithCacheHeaders() {
+        return Http.consulResponse(cachedResponse);
+    }
+}
@@ -0,0 +1,59 @@
+package com.orbitz.consul.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.orbitz.consul.benchmark.Fixtures;
+import com.orbitz.consul.model.health.ServiceHealth;
+import com.orbitz.consul.model.kv.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of KV and health responses with the mapper used by the Retrofit converter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JacksonBenchmark {
+
+    private static final TypeReference<List<Value>> VALUES = new TypeReference<List<Value>>() {};
+    private static final TypeReference<List<ServiceHealth>> SERVICE_HEALTH = new TypeReference<List<ServiceHealth>>() {};
+
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private byte[] valuesJson;
+    private byte[] serviceHealthJson;
+
+    @Setup
+    public void setUp() {
+        valuesJson = Fixtures.valuesJson(size).getBytes(StandardCharsets.UTF_8);
+        serviceHealthJson = Fixtures.serviceHealthJson(size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<Value> decodeValues() throws IOException {
+        return Jackson.MAPPER.readValue(valuesJson, VALUES);
+    }
+
+    @Benchmark
+    public List<ServiceHealth> decodeServiceHealth() throws IOException {
+        return Jackson.MAPPER.readValue(serviceHealthJson, SERVICE_HEALTH);
+    }
+}
@@ -4,6 +4,7 @@ import java.nio.charset.Charset;
 import java.util.Optional;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
 import com.orbitz.consul.async.ConsulResponseCallback;
 import com.orbitz.consul.model.ConsulResponse;
 import com.orbitz.consul.model.kv.ImmutableOperation;
@@ -23,7 +24,12 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
@@ -32,6 +38,8 @@ import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
@@ -412,6 +420,53 @@ public class KeyValueITest extends BaseIntegrationTest {
         assertNotNull(response.getIndex());
     }
 
+    @Test
+    public void testPutAndGetRawValue() throws IOException {
+        KeyValueClient keyValueClient = client.keyValueClient();
+        String key = UUID.randomUUID().toString();
+        byte[] value = new byte[256 * 1024];
+        ThreadLocalRandom.current().nextBytes(value);
+
+        assertTrue(keyValueClient.putValue(key, new ByteArrayInputStream(value), 0, PutOptions.BLANK));
+
+        ByteBuffer raw = keyValueClient.getValueRaw(key).get();
+        byte[] rawBytes = new byte[raw.remaining()];
+        raw.get(rawBytes);
+        assertArrayEquals(value, rawBytes);
+
+        assertTrue(keyValueClient.putValue(key, ByteBuffer.wrap(value, 1, 10), 0, PutOptions.BLANK));
+        try (InputStream in = keyValueClient.streamValue(key).get()) {
+            assertArrayEquals(Arrays.copyOfRange(value, 1, 11), ByteStreams.toByteArray(in));
+        }
+
+        keyValueClient.deleteKey(key);
+        assertFalse(keyValueClient.getValueRaw(key).isPresent());
+    }
+
+    @Test
+    public void testStreamValues() {
+        KeyValueClient keyValueClient = client.keyValueClient();
+        String key = UUID.randomUUID().toString();
+        keyValueClient.putValue(key + "/a", "a");
+        keyValueClient.putValue(key + "/b", "b");
+
+        List<String> values;
+        try (Stream<Value> stream = keyValueClient.streamValues(key)) {
+            values = stream.map(v -> v.getValueAsString().get()).collect(Collectors.toList());
+        }
+
+        keyValueClient.deleteKeys(key);
+
+        assertEquals(ImmutableSet.of("a", "b"), new HashSet<>(values));
+    }
+
+    @Test
+    public void testStreamValuesNotFound() {
+        try (Stream<Value> stream = client.keyValueClient().streamValues(UUID.randomUUID().toString())) {
+            assertEquals(0, stream.count());
+        }
+    }
+
     @Test
     public void testGetValueNotFoundAsync() throws InterruptedException {
         KeyValueClient keyValueClient = client.keyValueClient();
@@ -2,6 +2,7 @@ package com.orbitz.consul;
 
 import com.google.common.net.HostAndPort;
 import com.orbitz.consul.async.ConsulResponseCallback;
+import com.orbitz.consul.cache.WatchMultiplexer;
 import com.orbitz.consul.config.ClientConfig;
 import com.orbitz.consul.model.ConsulResponse;
 import com.orbitz.consul.model.State;
@@ -27,7 +28,7 @@ import java.util.Optional;
  *
  * @see <a href="http://www.consul.io/docs/agent/http.html#agent">The Consul API Docs</a>
  */
-public class AgentClient extends BaseClient {
+public class AgentClient extends BaseCacheableClient {
 
     private static String CLIENT_NAME = "agent";
 
@@ -38,8 +39,9 @@ public class AgentClient extends BaseClient {
      *
      * @param retrofit The {@link Retrofit} to build a client from.
      */
-    AgentClient(Retrofit retrofit, ClientConfig config, ClientEventCallback eventCallback) {
-        super(CLIENT_NAME, config, eventCallback);
+    AgentClient(Retrofit retrofit, ClientConfig config, ClientEventCallback eventCallback, Consul.NetworkTimeoutConfig networkTimeoutConfig,
+                WatchMultiplexer watchMultiplexer) {
+        super(CLIENT_NAME, config, eventCallback, networkTimeoutConfig, watchMultiplexer);
         this.api = retrofit.create(Api.class);
     }
 
@@ -444,6 +446,18 @@ public class AgentClient extends BaseClient {
         return http.extract(api.getChecks(queryOptions.toQuery()));
     }
 
+    /**
+     * Asynchronously retrieves all checks registered with the Agent.
+     * <p/>
+     * GET /v1/agent/checks
+     *
+     * @param queryOptions The Query Options to use.
+     * @param callback     Callback implemented by callee to handle results, a map of Check ID to Checks.
+     */
+    public void getChecks(QueryOptions queryOptions, ConsulResponseCallback<Map<String, HealthCheck>> callback) {
+        http.extractConsulResponse(api.getChecks(queryOptions.toQuery()), callback);
+    }
+
     /**
      * Retrieves all services registered with the Agent.
      * <p/>
@@ -467,6 +481,19 @@ public class AgentClient extends BaseClient {
         return http.extract(api.getServices(queryOptions.toQuery()));
     }
 
+    /**
+     * Asynchronously retrieves all services registered with the Agent.
+     * A blocking query on the content hash of the previous response is made when a hash is set in the query options.
+     * <p/>
+     * GET /v1/agent/services
+     *
+     * @param queryOptions The Query Options to use.
+     * @param callback     Callback implemented by callee to handle results, a map of Service ID to Services.
+     */
+    public void getServices(QueryOptions queryOptions, ConsulResponseCallback<Map<String, Service>> callback) {
+        http.extractConsulResponse(api.getServices(queryOptions.toQuery()), callback);
+    }
+
     /**
      * Retrieves all information about a service.
      * <p/>
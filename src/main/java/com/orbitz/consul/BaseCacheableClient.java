@@ -1,5 +1,6 @@
 package com.orbitz.consul;
 
+import com.orbitz.consul.cache.WatchMultiplexer;
 import com.orbitz.consul.config.ClientConfig;
 import com.orbitz.consul.monitoring.ClientEventCallback;
 import com.orbitz.consul.monitoring.ClientEventHandler;
@@ -8,14 +9,25 @@ import com.orbitz.consul.util.Http;
 abstract class BaseCacheableClient extends BaseClient {
 
     private final Consul.NetworkTimeoutConfig networkTimeoutConfig;
+    private final WatchMultiplexer watchMultiplexer;
 
     protected BaseCacheableClient(String name, ClientConfig config, ClientEventCallback eventCallback,
                                   Consul.NetworkTimeoutConfig networkTimeoutConfig) {
+        this(name, config, eventCallback, networkTimeoutConfig, new WatchMultiplexer());
+    }
+
+    protected BaseCacheableClient(String name, ClientConfig config, ClientEventCallback eventCallback,
+                                  Consul.NetworkTimeoutConfig networkTimeoutConfig, WatchMultiplexer watchMultiplexer) {
         super(name, config, eventCallback);
         this.networkTimeoutConfig = networkTimeoutConfig;
+        this.watchMultiplexer = watchMultiplexer;
     }
 
     public Consul.NetworkTimeoutConfig getNetworkTimeoutConfig() {
         return networkTimeoutConfig;
     }
+
+    public WatchMultiplexer getWatchMultiplexer() {
+        return watchMultiplexer;
+    }
 }
@@ -1,6 +1,7 @@
 package com.orbitz.consul;
 
 import com.orbitz.consul.async.ConsulResponseCallback;
+import com.orbitz.consul.cache.WatchMultiplexer;
 import com.orbitz.consul.config.ClientConfig;
 import com.orbitz.consul.model.ConsulResponse;
 import com.orbitz.consul.model.catalog.CatalogDeregistration;
@@ -31,8 +32,9 @@ public class CatalogClient extends BaseCacheableClient {
      *
      * @param retrofit The {@link Retrofit} to build a client from.
      */
-    CatalogClient(Retrofit retrofit, ClientConfig config, ClientEventCallback eventCallback, Consul.NetworkTimeoutConfig networkTimeoutConfig) {
-        super(CLIENT_NAME, config, eventCallback, networkTimeoutConfig);
+    CatalogClient(Retrofit retrofit, ClientConfig config, ClientEventCallback eventCallback, Consul.NetworkTimeoutConfig networkTimeoutConfig,
+            WatchMultiplexer watchMultiplexer) {
+        super(CLIENT_NAME, config, eventCallback, networkTimeoutConfig, watchMultiplexer);
         this.api = retrofit.create(Api.class);
     }
 
@@ -19,10 +19,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.io.BaseEncoding;
 import com.google.common.net.HostAndPort;
 import com.orbitz.consul.cache.TimeoutInterceptor;
+import com.orbitz.consul.cache.WatchMultiplexer;
 import com.orbitz.consul.config.ClientConfig;
+import com.orbitz.consul.config.ExecutionMode;
 import com.orbitz.consul.monitoring.ClientEventCallback;
 import com.orbitz.consul.util.Jackson;
 import com.orbitz.consul.util.TrustManagerUtils;
+import com.orbitz.consul.util.VirtualThreads;
 import com.orbitz.consul.util.bookend.ConsulBookend;
 import com.orbitz.consul.util.bookend.ConsulBookendInterceptor;
 import com.orbitz.consul.util.failover.ConsulFailoverInterceptor;
@@ -242,6 +245,17 @@ public class Consul {
         return snapshotClient;
     }
 
+    /**
+    * Get the multiplexer sharing identical cache watches.
+    * <p>
+    * Watches are only shared when enabled with {@link com.orbitz.consul.config.CacheConfig.Builder#withWatchMultiplexing(boolean)}.
+    *
+    * @return The watch multiplexer used by the caches of this client.
+    */
+    public WatchMultiplexer watchMultiplexer() {
+        return keyValueClient.getWatchMultiplexer();
+    }
+
     /**
     * Creates a new {@link Builder} object.
     *
@@ -279,6 +293,7 @@ public class Consul {
         private Interceptor consulFailoverInterceptor;
         private final NetworkTimeoutConfig.Builder networkTimeoutConfigBuilder = new NetworkTimeoutConfig.Builder();
         private ExecutorService executorService;
+        private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
         private ConnectionPool connectionPool;
         private ClientConfig clientConfig;
         private ClientEventCallback clientEventCallback;
@@ -619,6 +634,25 @@ public class Consul {
             return this;
         }
 
+        /**
+        * Sets the kind of threads created for the internal tasks dispatcher when no ExecutorService is provided.
+        *
+        * With {@link ExecutionMode#VIRTUAL_THREADS}, every asynchronous call (including cache blocking queries)
+        * runs on its own virtual thread instead of a pooled platform thread.
+        * Cache scheduling is configured separately with {@link com.orbitz.consul.config.CacheConfig.Builder#withExecutionMode(ExecutionMode)}.
+        *
+        * @param executionMode The kind of threads to use.
+        * @return The builder.
+        * @throws UnsupportedOperationException if virtual threads are requested and not available.
+        */
+        public Builder withExecutionMode(ExecutionMode executionMode) {
+            this.executionMode = Preconditions.checkNotNull(executionMode, "Execution mode cannot be null");
+            if (executionMode == ExecutionMode.VIRTUAL_THREADS && !VirtualThreads.isSupported()) {
+                throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+            }
+
+            return this;
+        }
 
         /**
         * Sets the ConnectionPool to be used by OkHttp Client
@@ -675,7 +709,9 @@ public class Consul {
 
             // if an ExecutorService is provided to the Builder, we use it, otherwise, we create one
             ExecutorService executorService = this.executorService;
-            if (executorService == null) {
+            if (executorService == null && executionMode == ExecutionMode.VIRTUAL_THREADS) {
+                executorService = VirtualThreads.newThreadPerTaskExecutor("OkHttp Dispatcher-");
+            } else if (executorService == null) {
                 /**
                 * mimics okhttp3.Dispatcher#executorService implementation, except
                 * using daemon thread so shutdown is not blocked (issue #133)
@@ -717,15 +753,17 @@ public class Consul {
                     clientEventCallback :
                     new ClientEventCallback(){};
 
-            AgentClient agentClient = new AgentClient(retrofit, config, eventCallback);
-            HealthClient healthClient = new HealthClient(retrofit, config, eventCallback, networkTimeoutConfig);
-            KeyValueClient keyValueClient = new KeyValueClient(retrofit, config, eventCallback, networkTimeoutConfig);
-            CatalogClient catalogClient = new CatalogClient(retrofit, config, eventCallback, networkTimeoutConfig);
+            WatchMultiplexer watchMultiplexer = new WatchMultiplexer();
+
+            AgentClient agentClient = new AgentClient(retrofit, config, eventCallback, networkTimeoutConfig, watchMultiplexer);
+            HealthClient healthClient = new HealthClient(retrofit, config, eventCallback, networkTimeoutConfig, watchMultiplexer);
+            KeyValueClient keyValueClient = new KeyValueClient(retrofit, config, eventCallback, networkTimeoutConfig, watchMultiplexer);
+            CatalogClient catalogClient = new CatalogClient(retrofit, config, eventCallback, networkTimeoutConfig, watchMultiplexer);
             StatusClient statusClient = new StatusClient(retrofit, config, eventCallback);
             SessionClient sessionClient = new SessionClient(retrofit, config, eventCallback);
             EventClient eventClient = new EventClient(retrofit, config, eventCallback);
             PreparedQueryClient preparedQueryClient = new PreparedQueryClient(retrofit, config, eventCallback);
-            CoordinateClient coordinateClient = new CoordinateClient(retrofit, config, eventCallback);
+            CoordinateClient coordinateClient = new CoordinateClient(retrofit, config, eventCallback, networkTimeoutConfig, watchMultiplexer);
             OperatorClient operatorClient = new OperatorClient(retrofit, config, eventCallback);
             AclClient aclClient = new AclClient(retrofit, config, eventCallback);
             SnapshotClient snapshotClient = new SnapshotClient(retrofit, config, eventCallback);
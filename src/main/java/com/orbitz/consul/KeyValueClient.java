@@ -9,8 +9,10 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.UnsignedLongs;
 import com.orbitz.consul.async.ConsulResponseCallback;
+import com.orbitz.consul.cache.WatchMultiplexer;
 import com.orbitz.consul.config.ClientConfig;
 import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.kv.CompactValue;
 import com.orbitz.consul.model.kv.Operation;
 import com.orbitz.consul.model.kv.TxResponse;
 import com.orbitz.consul.model.kv.Value;
@@ -23,11 +25,18 @@ import com.orbitz.consul.option.ImmutableTransactionOptions;
 import com.orbitz.consul.option.PutOptions;
 import com.orbitz.consul.option.QueryOptions;
 import com.orbitz.consul.option.TransactionOptions;
+import com.orbitz.consul.util.Http;
 import com.orbitz.consul.util.Jackson;
+import com.orbitz.consul.util.JsonArrayIterator;
 import okhttp3.MediaType;
+import okhttp3.Request;
 import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Timeout;
 import org.apache.commons.lang3.StringUtils;
 import retrofit2.Call;
+import retrofit2.Response;
 import retrofit2.Retrofit;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
@@ -37,11 +46,16 @@ import retrofit2.http.Headers;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
 import retrofit2.http.QueryMap;
+import retrofit2.http.Streaming;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.orbitz.consul.util.Strings.trimLeadingSlash;
@@ -53,6 +67,7 @@ public class KeyValueClient extends BaseCacheableClient {
 
     private static String CLIENT_NAME = "keyvalue";
     public static final int NOT_FOUND_404 = 404;
+    private static final int ROLLED_BACK_409 = 409;
 
     private final Api api;
 
@@ -61,8 +76,9 @@ public class KeyValueClient extends BaseCacheableClient {
      *
      * @param retrofit The {@link Retrofit} to build a client from.
      */
-    KeyValueClient(Retrofit retrofit, ClientConfig config, ClientEventCallback eventCallback, Consul.NetworkTimeoutConfig networkTimeoutConfig) {
-        super(CLIENT_NAME, config, eventCallback, networkTimeoutConfig);
+    KeyValueClient(Retrofit retrofit, ClientConfig config, ClientEventCallback eventCallback, Consul.NetworkTimeoutConfig networkTimeoutConfig,
+            WatchMultiplexer watchMultiplexer) {
+        super(CLIENT_NAME, config, eventCallback, networkTimeoutConfig, watchMultiplexer);
         this.api = retrofit.create(Api.class);
     }
 
@@ -268,6 +284,159 @@ public class KeyValueClient extends BaseCacheableClient {
         http.extractConsulResponse(api.getValue(trimLeadingSlash(key), query), callback, NOT_FOUND_404);
     }
 
+    /**
+     * Retrieves a list of {@link CompactValue} objects for a specific key
+     * from the key/value store.
+     *
+     * GET /v1/kv/{key}?recurse
+     *
+     * @param key The key to retrieve.
+     * @param queryOptions The query options.
+     * @return A list of zero to many {@link CompactValue} objects.
+     */
+    public List<CompactValue> getCompactValues(String key, QueryOptions queryOptions) {
+        Map<String, Object> query = queryOptions.toQuery();
+
+        query.put("recurse", "true");
+
+        List<CompactValue> result = http.extract(api.getCompactValues(trimLeadingSlash(key), query), NOT_FOUND_404);
+
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    /**
+     * Asynchronously retrieves a list of {@link CompactValue} objects for a specific key
+     * from the key/value store.
+     *
+     * GET /v1/kv/{key}?recurse
+     *
+     * @param key The key to retrieve.
+     * @param queryOptions The query options.
+     * @param callback Callback implemented by callee to handle results.
+     */
+    public void getCompactValues(String key, QueryOptions queryOptions, ConsulResponseCallback<List<CompactValue>> callback) {
+        Map<String, Object> query = queryOptions.toQuery();
+
+        query.put("recurse", "true");
+
+        http.extractConsulResponse(api.getCompactValues(trimLeadingSlash(key), query), callback, NOT_FOUND_404);
+    }
+
+    /**
+     * Retrieves a stream of {@link com.orbitz.consul.model.kv.Value} objects for a specific key
+     * from the key/value store.
+     *
+     * GET /v1/kv/{key}?recurse
+     *
+     * Values are decoded one at a time while the stream is consumed, so the memory used does not
+     * depend on the number of values. The stream holds the HTTP connection and must be closed.
+     *
+     * @param key The key to retrieve.
+     * @return A stream of zero to many {@link com.orbitz.consul.model.kv.Value} objects.
+     */
+    public Stream<Value> streamValues(String key) {
+        return streamValues(key, QueryOptions.BLANK);
+    }
+
+    /**
+     * Retrieves a stream of {@link com.orbitz.consul.model.kv.Value} objects for a specific key
+     * from the key/value store.
+     *
+     * GET /v1/kv/{key}?recurse
+     *
+     * Values are decoded one at a time while the stream is consumed, so the memory used does not
+     * depend on the number of values. The stream holds the HTTP connection and must be closed.
+     *
+     * @param key The key to retrieve.
+     * @param queryOptions The query options.
+     * @return A stream of zero to many {@link com.orbitz.consul.model.kv.Value} objects.
+     */
+    public Stream<Value> streamValues(String key, QueryOptions queryOptions) {
+        Map<String, Object> query = queryOptions.toQuery();
+
+        query.put("recurse", "true");
+
+        ResponseBody body = http.extract(api.streamValues(trimLeadingSlash(key), query), NOT_FOUND_404);
+
+        return body == null ? Stream.empty() : JsonArrayIterator.of(body.byteStream(), Value.class).stream();
+    }
+
+    /**
+     * Retrieves the raw value of a specific key from the key/value store,
+     * without the JSON framing and base64 encoding of {@link #getValue(String)}.
+     *
+     * GET /v1/kv/{key}?raw
+     *
+     * @param key The key to retrieve.
+     * @return An {@link Optional} containing the value or {@link Optional#empty()}
+     */
+    public Optional<ByteBuffer> getValueRaw(String key) {
+        return getValueRaw(key, QueryOptions.BLANK);
+    }
+
+    /**
+     * Retrieves the raw value of a specific key from the key/value store,
+     * without the JSON framing and base64 encoding of {@link #getValue(String, QueryOptions)}.
+     *
+     * GET /v1/kv/{key}?raw
+     *
+     * @param key The key to retrieve.
+     * @param queryOptions The query options.
+     * @return An {@link Optional} containing the value or {@link Optional#empty()}
+     */
+    public Optional<ByteBuffer> getValueRaw(String key, QueryOptions queryOptions) {
+        ResponseBody body = getRawBody(key, queryOptions);
+        if (body == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(ByteBuffer.wrap(body.bytes()));
+        } catch (IOException e) {
+            throw new ConsulException(e);
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Retrieves the raw value of a specific key from the key/value store as a stream
+     * read directly from the HTTP response.
+     *
+     * GET /v1/kv/{key}?raw
+     *
+     * The stream holds the HTTP connection and must be closed.
+     *
+     * @param key The key to retrieve.
+     * @return An {@link Optional} containing the value or {@link Optional#empty()}
+     */
+    public Optional<InputStream> streamValue(String key) {
+        return streamValue(key, QueryOptions.BLANK);
+    }
+
+    /**
+     * Retrieves the raw value of a specific key from the key/value store as a stream
+     * read directly from the HTTP response.
+     *
+     * GET /v1/kv/{key}?raw
+     *
+     * The stream holds the HTTP connection and must be closed.
+     *
+     * @param key The key to retrieve.
+     * @param queryOptions The query options.
+     * @return An {@link Optional} containing the value or {@link Optional#empty()}
+     */
+    public Optional<InputStream> streamValue(String key, QueryOptions queryOptions) {
+        return Optional.ofNullable(getRawBody(key, queryOptions)).map(ResponseBody::byteStream);
+    }
+
+    private ResponseBody getRawBody(String key, QueryOptions queryOptions) {
+        Map<String, Object> query = queryOptions.toQuery();
+
+        query.put("raw", "true");
+
+        return http.extract(api.getValueRaw(trimLeadingSlash(key), query), NOT_FOUND_404);
+    }
+
     /**
      * Retrieves a string value for a specific key from the key/value store.
      *
@@ -448,6 +617,46 @@ public class KeyValueClient extends BaseCacheableClient {
         }
     }
 
+    /**
+     * Puts a value into the key/value store, without copying it into an intermediate array.
+     *
+     * @param key The key to use as index.
+     * @param value The value to index, from its position to its limit. The position of the buffer is not modified.
+     * @param flags The flags for this key.
+     * @param putOptions PUT options (e.g. wait, acquire).
+     * @return <code>true</code> if the value was successfully indexed.
+     */
+    public boolean putValue(String key, ByteBuffer value, long flags, PutOptions putOptions) {
+        checkArgument(value != null, "Value must be defined");
+        return putRequestBody(key, new ByteBufferRequestBody(value.duplicate()), flags, putOptions);
+    }
+
+    /**
+     * Puts a value into the key/value store, streaming it from {@code value} into the HTTP request.
+     * The stream is read until its end but is not closed.
+     *
+     * @param key The key to use as index.
+     * @param value The value to index.
+     * @param flags The flags for this key.
+     * @param putOptions PUT options (e.g. wait, acquire).
+     * @return <code>true</code> if the value was successfully indexed.
+     */
+    public boolean putValue(String key, InputStream value, long flags, PutOptions putOptions) {
+        checkArgument(value != null, "Value must be defined");
+        return putRequestBody(key, new InputStreamRequestBody(value), flags, putOptions);
+    }
+
+    private boolean putRequestBody(String key, RequestBody body, long flags, PutOptions putOptions) {
+        checkArgument(StringUtils.isNotEmpty(key), "Key must be defined");
+        Map<String, Object> query = putOptions.toQuery();
+
+        if (flags != 0) {
+            query.put("flags", UnsignedLongs.toString(flags));
+        }
+
+        return http.extract(api.putValue(trimLeadingSlash(key), body, query));
+    }
+
     /**
      * Retrieves a list of matching keys for the given key.
      *
@@ -508,6 +717,26 @@ public class KeyValueClient extends BaseCacheableClient {
         return result == null ? Collections.emptyList() : result;
     }
 
+    /**
+     * Asynchronously retrieves a list of matching keys for the given key.
+     *
+     * GET /v1/kv/{key}?keys&separator={separator}
+     *
+     * @param key The key to retrieve.
+     * @param separator The separator used to limit the prefix of keys returned, may be <code>null</code>.
+     * @param queryOptions The query options.
+     * @param callback Callback implemented by callee to handle results.
+     */
+    public void getKeys(String key, String separator, QueryOptions queryOptions, ConsulResponseCallback<List<String>> callback) {
+        Map<String, Object> query = queryOptions.toQuery();
+        query.put("keys", "true");
+        if (separator != null) {
+            query.put("separator", separator);
+        }
+
+        http.extractConsulResponse(api.getKeys(trimLeadingSlash(key), query), callback, NOT_FOUND_404);
+    }
+
     /**
      * Deletes a specified key.
      *
@@ -659,6 +888,40 @@ public class KeyValueClient extends BaseCacheableClient {
         }
     }
 
+    /**
+     * Asynchronously performs a Consul transaction.
+     *
+     * PUT /v1/txn
+     *
+     * A transaction rolled back by Consul is not a failure: the {@link TxResponse} passed to the
+     * callback then holds the {@link com.orbitz.consul.model.kv.TxError errors} of the operations.
+     *
+     * @param transactionOptions transaction options (e.g. dc, consistency).
+     * @param callback Callback implemented by callee to handle results.
+     * @param operations A list of KV operations.
+     */
+    public void performTransaction(TransactionOptions transactionOptions, ConsulResponseCallback<TxResponse> callback,
+                                   Operation... operations) {
+        Map<String, Object> query = transactionOptions.toQuery();
+        RequestBody body;
+        try {
+            body = RequestBody.create(MediaType.parse("application/json"), Jackson.MAPPER.writeValueAsString(kv(operations)));
+        } catch (JsonProcessingException e) {
+            throw new ConsulException(e);
+        }
+
+        http.extractConsulResponse(new RolledBackTransactionCall(api.performTransaction(body, query)), callback);
+    }
+
+    /**
+     * Creates a {@link KvBatchWriter} with the default limits, coalescing KV writes into transactions.
+     *
+     * @return A new batch writer.
+     */
+    public KvBatchWriter batchWriter() {
+        return KvBatchWriter.builder(this).build();
+    }
+
     /**
      * Wraps {@link Operation} in a <code>"KV": { }</code> block.
      * @param operations An array of ops.
@@ -674,6 +937,88 @@ public class KeyValueClient extends BaseCacheableClient {
         return kvs;
     }
 
+    /**
+     * A transaction call reporting a transaction rolled back by Consul as a successful response,
+     * whose {@link TxResponse} holds the errors of the operations.
+     */
+    private static final class RolledBackTransactionCall implements Call<TxResponse> {
+        private final Call<TxResponse> delegate;
+
+        private RolledBackTransactionCall(Call<TxResponse> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response<TxResponse> execute() throws IOException {
+            return withErrors(delegate.execute());
+        }
+
+        @Override
+        public void enqueue(retrofit2.Callback<TxResponse> callback) {
+            delegate.enqueue(new retrofit2.Callback<TxResponse>() {
+                @Override
+                public void onResponse(Call<TxResponse> call, Response<TxResponse> response) {
+                    Response<TxResponse> result;
+                    try {
+                        result = withErrors(response);
+                    } catch (IOException e) {
+                        callback.onFailure(RolledBackTransactionCall.this, new ConsulException(e));
+                        return;
+                    }
+                    callback.onResponse(RolledBackTransactionCall.this, result);
+                }
+
+                @Override
+                public void onFailure(Call<TxResponse> call, Throwable t) {
+                    callback.onFailure(RolledBackTransactionCall.this, t);
+                }
+            });
+        }
+
+        private static Response<TxResponse> withErrors(Response<TxResponse> response) throws IOException {
+            if (response.isSuccessful() || response.code() != ROLLED_BACK_409) {
+                return response;
+            }
+            try (ResponseBody errorBody = response.errorBody()) {
+                if (errorBody == null) {
+                    return response;
+                }
+                return Response.success(Jackson.MAPPER.readValue(errorBody.charStream(), TxResponse.class),
+                        response.headers());
+            }
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return delegate.isExecuted();
+        }
+
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return delegate.isCanceled();
+        }
+
+        @Override
+        public Call<TxResponse> clone() {
+            return new RolledBackTransactionCall(delegate.clone());
+        }
+
+        @Override
+        public Request request() {
+            return delegate.request();
+        }
+
+        @Override
+        public Timeout timeout() {
+            return delegate.timeout();
+        }
+    }
+
     /**
      * Retrofit API interface.
      */
@@ -684,6 +1029,20 @@ public class KeyValueClient extends BaseCacheableClient {
         Call<List<Value>> getValue(@Path("key") String key,
                                    @QueryMap Map<String, Object> query);
 
+        @GET("kv/{key}")
+        Call<List<CompactValue>> getCompactValues(@Path("key") String key,
+                                                  @QueryMap Map<String, Object> query);
+
+        @Streaming
+        @GET("kv/{key}")
+        Call<ResponseBody> streamValues(@Path("key") String key,
+                                        @QueryMap Map<String, Object> query);
+
+        @Streaming
+        @GET("kv/{key}")
+        Call<ResponseBody> getValueRaw(@Path("key") String key,
+                                       @QueryMap Map<String, Object> query);
+
         @GET("kv/{key}")
         Call<List<String>> getKeys(@Path("key") String key,
                                    @QueryMap Map<String, Object> query);
@@ -706,6 +1065,69 @@ public class KeyValueClient extends BaseCacheableClient {
                                             @QueryMap Map<String, Object> query);
     }
 
+    /**
+     * Request body writing the remaining bytes of a buffer.
+     */
+    private static class ByteBufferRequestBody extends RequestBody {
+        private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferRequestBody(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            ByteBuffer source = buffer.duplicate();
+            while (source.hasRemaining()) {
+                sink.write(source);
+            }
+        }
+    }
+
+    /**
+     * Request body copying a stream, which can only be sent once.
+     */
+    private static class InputStreamRequestBody extends RequestBody {
+        private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+        private final InputStream in;
+
+        private InputStreamRequestBody(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                sink.write(chunk, 0, read);
+            }
+        }
+    }
+
     /**
      * Wrapper for Transaction KV entry.
      */
@@ -0,0 +1,387 @@
+package com.orbitz.consul;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.orbitz.consul.async.ConsulResponseCallback;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.kv.Operation;
+import com.orbitz.consul.model.kv.TxError;
+import com.orbitz.consul.model.kv.TxResponse;
+import com.orbitz.consul.model.kv.Value;
+import com.orbitz.consul.model.kv.Verb;
+import com.orbitz.consul.option.TransactionOptions;
+import com.orbitz.consul.util.Jackson;
+import org.apache.commons.lang3.StringUtils;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces KV writes into Consul transactions.
+ * <p>
+ * Operations are buffered until {@link #flush()} is called. They are then split into transactions
+ * respecting the maximum number of operations and the maximum payload size accepted by Consul,
+ * and these transactions are sent concurrently.
+ * <p>
+ * Each transaction is atomic, but the batch as a whole is not: a failed transaction only rolls back
+ * the operations it contains. {@link #flush()} returns one {@link Result} per operation, in the order
+ * the operations were added.
+ * <p>
+ * This class is thread-safe.
+ */
+public class KvBatchWriter {
+
+    /**
+     * Maximum number of operations in a transaction accepted by Consul.
+     */
+    public static final int DEFAULT_MAX_OPERATIONS = 64;
+    /**
+     * Maximum size of a transaction request accepted by Consul with its default configuration ({@code txn_max_req_len}).
+     */
+    public static final int DEFAULT_MAX_PAYLOAD_BYTES = 512 * 1024;
+    public static final int DEFAULT_MAX_CONCURRENT_TRANSACTIONS = 4;
+
+    private static final Set<Verb> VERBS_WITHOUT_RESULT = EnumSet.of(Verb.DELETE, Verb.DELETE_TREE, Verb.DELETE_CHECK_AND_SET);
+
+    private final KeyValueClient keyValueClient;
+    private final TransactionOptions transactionOptions;
+    private final int maxOperations;
+    private final int maxPayloadBytes;
+    private final int maxConcurrentTransactions;
+
+    private List<Operation> pending = new ArrayList<>();
+
+    private KvBatchWriter(KeyValueClient keyValueClient, TransactionOptions transactionOptions, int maxOperations,
+                          int maxPayloadBytes, int maxConcurrentTransactions) {
+        this.keyValueClient = keyValueClient;
+        this.transactionOptions = transactionOptions;
+        this.maxOperations = maxOperations;
+        this.maxPayloadBytes = maxPayloadBytes;
+        this.maxConcurrentTransactions = maxConcurrentTransactions;
+    }
+
+    /**
+     * Creates a new {@link KvBatchWriter.Builder} object.
+     */
+    public static Builder builder(KeyValueClient keyValueClient) {
+        return new Builder(keyValueClient);
+    }
+
+    /**
+     * Sets a value.
+     */
+    public KvBatchWriter put(String key, String value) {
+        return add(Operation.builder(Verb.SET).key(key).value(value).build());
+    }
+
+    /**
+     * Sets a value with flags.
+     */
+    public KvBatchWriter put(String key, String value, long flags) {
+        return add(Operation.builder(Verb.SET).key(key).value(value).flags(flags).build());
+    }
+
+    /**
+     * Sets a value only if the current modify index of the key is {@code index}.
+     */
+    public KvBatchWriter checkAndSet(String key, String value, long index) {
+        return add(Operation.builder(Verb.CHECK_AND_SET).key(key).value(value).index(BigInteger.valueOf(index)).build());
+    }
+
+    /**
+     * Deletes a key.
+     */
+    public KvBatchWriter delete(String key) {
+        return add(Operation.builder(Verb.DELETE).key(key).build());
+    }
+
+    /**
+     * Deletes a key and all the keys below it.
+     */
+    public KvBatchWriter deleteTree(String key) {
+        return add(Operation.builder(Verb.DELETE_TREE).key(key).build());
+    }
+
+    /**
+     * Deletes a key only if its current modify index is {@code index}.
+     */
+    public KvBatchWriter checkAndDelete(String key, long index) {
+        return add(Operation.builder(Verb.DELETE_CHECK_AND_SET).key(key).index(BigInteger.valueOf(index)).build());
+    }
+
+    /**
+     * Adds an operation.
+     *
+     * @throws IllegalArgumentException if the operation has no key or is a {@code get-tree},
+     * whose number of results cannot be mapped back to the operation.
+     */
+    public KvBatchWriter add(Operation operation) {
+        Preconditions.checkNotNull(operation, "Operation cannot be null");
+        Preconditions.checkArgument(operation.key().map(StringUtils::isNotEmpty).orElse(false), "Key must be defined");
+        Preconditions.checkArgument(!Verb.GET_TREE.toValue().equals(operation.verb()), "get-tree operations cannot be batched");
+        synchronized (this) {
+            pending.add(operation);
+        }
+        return this;
+    }
+
+    /**
+     * Gets the number of operations waiting for the next flush.
+     */
+    public synchronized int getPendingOperations() {
+        return pending.size();
+    }
+
+    /**
+     * Sends all the pending operations and waits for the results.
+     *
+     * @return the result of each operation, in the order the operations were added.
+     */
+    public List<Result> flush() {
+        List<Operation> operations;
+        synchronized (this) {
+            operations = pending;
+            pending = new ArrayList<>();
+        }
+        if (operations.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<List<Operation>> transactions = split(operations);
+        Result[][] results = new Result[transactions.size()][];
+        Semaphore permits = new Semaphore(maxConcurrentTransactions);
+        CountDownLatch done = new CountDownLatch(transactions.size());
+        try {
+            for (int i = 0; i < transactions.size(); i++) {
+                List<Operation> transaction = transactions.get(i);
+                int index = i;
+                permits.acquire();
+                send(transaction, transactionResults -> {
+                    results[index] = transactionResults;
+                    permits.release();
+                    done.countDown();
+                });
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConsulException("Interrupted while flushing KV operations", e);
+        }
+
+        ImmutableList.Builder<Result> all = ImmutableList.builder();
+        for (Result[] transactionResults : results) {
+            all.add(transactionResults);
+        }
+        return all.build();
+    }
+
+    List<List<Operation>> split(List<Operation> operations) {
+        List<List<Operation>> transactions = new ArrayList<>();
+        List<Operation> current = new ArrayList<>();
+        // the enclosing brackets of the JSON array
+        int currentBytes = 2;
+        for (Operation operation : operations) {
+            int size = payloadSize(operation) + 1;
+            if (!current.isEmpty() && (current.size() == maxOperations || currentBytes + size > maxPayloadBytes)) {
+                transactions.add(current);
+                current = new ArrayList<>();
+                currentBytes = 2;
+            }
+            current.add(operation);
+            currentBytes += size;
+        }
+        transactions.add(current);
+        return transactions;
+    }
+
+    private static int payloadSize(Operation operation) {
+        try {
+            return Jackson.MAPPER.writeValueAsString(KeyValueClient.kv(operation)[0]).getBytes(StandardCharsets.UTF_8).length;
+        } catch (JsonProcessingException e) {
+            throw new ConsulException(e);
+        }
+    }
+
+    private void send(List<Operation> transaction, Consumer<Result[]> onResults) {
+        Operation[] operations = transaction.toArray(new Operation[0]);
+        ConsulResponseCallback<TxResponse> callback = new ConsulResponseCallback<TxResponse>() {
+            @Override
+            public void onComplete(ConsulResponse<TxResponse> consulResponse) {
+                onResults.accept(map(operations, consulResponse.getResponse()));
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                onResults.accept(failAll(operations, String.valueOf(throwable.getMessage())));
+            }
+        };
+        try {
+            keyValueClient.performTransaction(transactionOptions, callback, operations);
+        } catch (RuntimeException e) {
+            callback.onFailure(e);
+        }
+    }
+
+    static Result[] map(Operation[] operations, TxResponse response) {
+        Result[] results = new Result[operations.length];
+        if (!response.errors().isEmpty()) {
+            for (TxError error : response.errors()) {
+                int index = error.opIndex().map(BigInteger::intValue).orElse(-1);
+                if (index >= 0 && index < operations.length) {
+                    results[index] = new Result(operations[index], false, null, error.what().orElse("Operation failed"));
+                }
+            }
+            for (int i = 0; i < operations.length; i++) {
+                if (results[i] == null) {
+                    results[i] = new Result(operations[i], false, null, "Transaction rolled back");
+                }
+            }
+            return results;
+        }
+
+        List<Map<String, Value>> values = response.results();
+        int next = 0;
+        for (int i = 0; i < operations.length; i++) {
+            Value value = null;
+            if (!producesNoResult(operations[i]) && next < values.size()) {
+                value = values.get(next++).get("KV");
+            }
+            results[i] = new Result(operations[i], true, value, null);
+        }
+        return results;
+    }
+
+    private static boolean producesNoResult(Operation operation) {
+        return VERBS_WITHOUT_RESULT.stream().anyMatch(verb -> verb.toValue().equals(operation.verb()));
+    }
+
+    private static Result[] failAll(Operation[] operations, String error) {
+        return Arrays.stream(operations)
+                .map(operation -> new Result(operation, false, null, error))
+                .toArray(Result[]::new);
+    }
+
+    /**
+     * The outcome of an operation of the batch.
+     */
+    public static final class Result {
+        private final Operation operation;
+        private final boolean successful;
+        private final Value value;
+        private final String error;
+
+        Result(Operation operation, boolean successful, Value value, String error) {
+            this.operation = operation;
+            this.successful = successful;
+            this.value = value;
+            this.error = error;
+        }
+
+        /**
+         * Gets the operation this result is for.
+         */
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * Was the operation applied?
+         */
+        public boolean isSuccessful() {
+            return successful;
+        }
+
+        /**
+         * Gets the entry returned by Consul for a successful operation, without its value.
+         * Deletions do not return any entry.
+         */
+        public Optional<Value> getValue() {
+            return Optional.ofNullable(value);
+        }
+
+        /**
+         * Gets the reason of the failure of the operation.
+         */
+        public Optional<String> getError() {
+            return Optional.ofNullable(error);
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "verb=" + operation.verb() +
+                    ", key=" + operation.key().orElse(null) +
+                    ", successful=" + successful +
+                    ", error=" + error +
+                    '}';
+        }
+    }
+
+    public static class Builder {
+        private final KeyValueClient keyValueClient;
+        private TransactionOptions transactionOptions = TransactionOptions.BLANK;
+        private int maxOperations = DEFAULT_MAX_OPERATIONS;
+        private int maxPayloadBytes = DEFAULT_MAX_PAYLOAD_BYTES;
+        private int maxConcurrentTransactions = DEFAULT_MAX_CONCURRENT_TRANSACTIONS;
+
+        private Builder(KeyValueClient keyValueClient) {
+            this.keyValueClient = Preconditions.checkNotNull(keyValueClient, "Key value client cannot be null");
+        }
+
+        /**
+         * Sets the options of the transactions (e.g. dc).
+         */
+        public Builder withTransactionOptions(TransactionOptions transactionOptions) {
+            this.transactionOptions = Preconditions.checkNotNull(transactionOptions, "Transaction options cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of operations in a transaction.
+         * @throws IllegalArgumentException if {@code maxOperations} is not between 1 and 64.
+         */
+        public Builder withMaxOperations(int maxOperations) {
+            Preconditions.checkArgument(maxOperations > 0 && maxOperations <= DEFAULT_MAX_OPERATIONS,
+                    "Maximum operations must be between 1 and %s", DEFAULT_MAX_OPERATIONS);
+            this.maxOperations = maxOperations;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of the JSON body of a transaction.
+         * An operation larger than this limit is sent alone.
+         * @throws IllegalArgumentException if {@code maxPayloadBytes} is not positive.
+         */
+        public Builder withMaxPayloadBytes(int maxPayloadBytes) {
+            Preconditions.checkArgument(maxPayloadBytes > 0, "Maximum payload size must be positive");
+            this.maxPayloadBytes = maxPayloadBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of transactions sent at the same time by a flush.
+         * @throws IllegalArgumentException if {@code maxConcurrentTransactions} is not positive.
+         */
+        public Builder withMaxConcurrentTransactions(int maxConcurrentTransactions) {
+            Preconditions.checkArgument(maxConcurrentTransactions > 0, "Maximum concurrent transactions must be positive");
+            this.maxConcurrentTransactions = maxConcurrentTransactions;
+            return this;
+        }
+
+        public KvBatchWriter build() {
+            return new KvBatchWriter(keyValueClient, transactionOptions, maxOperations, maxPayloadBytes, maxConcurrentTransactions);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.primitives.Ints;
+import com.orbitz.consul.AgentClient;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.health.HealthCheck;
+import com.orbitz.consul.option.QueryOptions;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A cache of the checks registered with the local agent, keyed by check ID.
+ * <p>
+ * The agent is watched with hash-based blocking queries, so the cache long-polls the local agent
+ * rather than the servers. If the agent does not return a content hash, the endpoint is polled
+ * once per watch duration.
+ */
+public class AgentChecksCache extends ConsulCache<String, HealthCheck> {
+
+    private final Duration pollingInterval;
+
+    private AgentChecksCache(AgentClient agentClient,
+                               QueryOptions queryOptions,
+                               int watchSeconds,
+                               Scheduler callbackScheduler) {
+
+        super(HealthCheck::getCheckId,
+            shareWatch(agentClient.getWatchMultiplexer(), agentClient.getConfig().getCacheConfig(),
+                blockOnContentHash((hash, callback) -> {
+                    checkWatch(agentClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
+                    agentClient.getChecks(hashWatchParams(hash, watchSeconds, queryOptions), mapValuesCallback(callback));
+                }),
+                "agent.checks", watchSeconds, queryOptions),
+            agentClient.getConfig().getCacheConfig(),
+            agentClient.getEventHandler(),
+            new CacheDescriptor("agent.checks"),
+            callbackScheduler);
+        this.pollingInterval = Duration.ofSeconds(watchSeconds);
+    }
+
+    @Override
+    protected Duration minimumDurationBetweenRequests(ConsulResponse<List<HealthCheck>> response, CacheConfig cacheConfig) {
+        Duration minimum = super.minimumDurationBetweenRequests(response, cacheConfig);
+        if (!response.getContentHash().isPresent() && pollingInterval.compareTo(minimum) > 0) {
+            return pollingInterval;
+        }
+        return minimum;
+    }
+
+    public static AgentChecksCache newCache(
+            final AgentClient agentClient,
+            final QueryOptions queryOptions,
+            final int watchSeconds,
+            final ScheduledExecutorService callbackExecutorService) {
+
+        Scheduler scheduler = createExternal(callbackExecutorService);
+        return new AgentChecksCache(agentClient, queryOptions, watchSeconds, scheduler);
+    }
+
+    public static AgentChecksCache newCache(
+            final AgentClient agentClient,
+            final QueryOptions queryOptions,
+            final int watchSeconds) {
+
+        return new AgentChecksCache(agentClient, queryOptions, watchSeconds, createDefault(agentClient.getConfig().getCacheConfig()));
+    }
+
+    public static AgentChecksCache newCache(final AgentClient agentClient) {
+        CacheConfig cacheConfig = agentClient.getConfig().getCacheConfig();
+        int watchSeconds = Ints.checkedCast(cacheConfig.getWatchDuration().getSeconds());
+        return newCache(agentClient, QueryOptions.BLANK, watchSeconds);
+    }
+}
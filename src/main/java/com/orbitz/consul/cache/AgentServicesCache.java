@@ -0,0 +1,76 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.primitives.Ints;
+import com.orbitz.consul.AgentClient;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.health.Service;
+import com.orbitz.consul.option.QueryOptions;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A cache of the services registered with the local agent, keyed by service ID.
+ * <p>
+ * The agent is watched with hash-based blocking queries, so the cache long-polls the local agent
+ * rather than the servers. If the agent does not return a content hash, the endpoint is polled
+ * once per watch duration.
+ */
+public class AgentServicesCache extends ConsulCache<String, Service> {
+
+    private final Duration pollingInterval;
+
+    private AgentServicesCache(AgentClient agentClient,
+                               QueryOptions queryOptions,
+                               int watchSeconds,
+                               Scheduler callbackScheduler) {
+
+        super(Service::getId,
+            shareWatch(agentClient.getWatchMultiplexer(), agentClient.getConfig().getCacheConfig(),
+                blockOnContentHash((hash, callback) -> {
+                    checkWatch(agentClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
+                    agentClient.getServices(hashWatchParams(hash, watchSeconds, queryOptions), mapValuesCallback(callback));
+                }),
+                "agent.services", watchSeconds, queryOptions),
+            agentClient.getConfig().getCacheConfig(),
+            agentClient.getEventHandler(),
+            new CacheDescriptor("agent.services"),
+            callbackScheduler);
+        this.pollingInterval = Duration.ofSeconds(watchSeconds);
+    }
+
+    @Override
+    protected Duration minimumDurationBetweenRequests(ConsulResponse<List<Service>> response, CacheConfig cacheConfig) {
+        Duration minimum = super.minimumDurationBetweenRequests(response, cacheConfig);
+        if (!response.getContentHash().isPresent() && pollingInterval.compareTo(minimum) > 0) {
+            return pollingInterval;
+        }
+        return minimum;
+    }
+
+    public static AgentServicesCache newCache(
+            final AgentClient agentClient,
+            final QueryOptions queryOptions,
+            final int watchSeconds,
+            final ScheduledExecutorService callbackExecutorService) {
+
+        Scheduler scheduler = createExternal(callbackExecutorService);
+        return new AgentServicesCache(agentClient, queryOptions, watchSeconds, scheduler);
+    }
+
+    public static AgentServicesCache newCache(
+            final AgentClient agentClient,
+            final QueryOptions queryOptions,
+            final int watchSeconds) {
+
+        return new AgentServicesCache(agentClient, queryOptions, watchSeconds, createDefault(agentClient.getConfig().getCacheConfig()));
+    }
+
+    public static AgentServicesCache newCache(final AgentClient agentClient) {
+        CacheConfig cacheConfig = agentClient.getConfig().getCacheConfig();
+        int watchSeconds = Ints.checkedCast(cacheConfig.getWatchDuration().getSeconds());
+        return newCache(agentClient, QueryOptions.BLANK, watchSeconds);
+    }
+}
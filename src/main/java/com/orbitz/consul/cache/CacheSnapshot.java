@@ -0,0 +1,140 @@
+package com.orbitz.consul.cache;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.google.common.hash.Hashing;
+import com.orbitz.consul.util.Jackson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * The entries of a {@link ConsulCache} and the Consul index they were received at, as persisted on disk.
+ * <p>
+ * The file starts with a magic number, the index and the number of entries, followed by each entry
+ * as a length-prefixed JSON document, and ends with a CRC32 of all the preceding bytes.
+ * Files are written to a temporary file which is then moved over the previous snapshot, and are
+ * memory-mapped when read.
+ *
+ * @param <V> the type of the entries
+ */
+final class CacheSnapshot<V> {
+
+    private static final int MAGIC = 0x43435331;
+    private static final String EXTENSION = ".snapshot";
+
+    private final BigInteger index;
+    private final List<V> values;
+
+    private CacheSnapshot(BigInteger index, List<V> values) {
+        this.index = index;
+        this.values = values;
+    }
+
+    BigInteger getIndex() {
+        return index;
+    }
+
+    List<V> getValues() {
+        return values;
+    }
+
+    /**
+     * Gets the snapshot file of a watch in the given directory.
+     * The name is made of the endpoint and a hash of the watch key, so that caches watching
+     * the same endpoint with different options do not share a file.
+     */
+    static Path file(Path directory, CacheDescriptor descriptor, List<Object> watchKey) {
+        String hash = Hashing.sha256().hashString(watchKey.toString(), StandardCharsets.UTF_8).toString();
+        return directory.resolve(descriptor.getEndpoint() + "-" + hash.substring(0, 32) + EXTENSION);
+    }
+
+    static <V> void write(Path file, BigInteger index, Collection<V> values) throws IOException {
+        ObjectWriter writer = Jackson.MAPPER.writer();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        byte[] indexBytes = index.toByteArray();
+        out.writeShort(indexBytes.length);
+        out.write(indexBytes);
+        out.writeInt(values.size());
+        for (V value : values) {
+            byte[] json = writer.writeValueAsBytes(value);
+            out.writeInt(json.length);
+            out.write(json);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @return the snapshot, or {@link Optional#empty()} if the file does not exist
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    static <V> Optional<CacheSnapshot<V>> read(Path file, Class<? extends V> type) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 4 + 2 + 4 + 8 || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+
+            ByteBuffer content = buffer.duplicate();
+            content.limit(buffer.limit() - 8);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (crc.getValue() != buffer.getLong(buffer.limit() - 8)) {
+                throw new IOException("Corrupted cache snapshot: " + file);
+            }
+
+            buffer.position(4);
+            byte[] indexBytes = new byte[buffer.getShort()];
+            buffer.get(indexBytes);
+            BigInteger index = new BigInteger(indexBytes);
+
+            int count = buffer.getInt();
+            ObjectReader reader = Jackson.MAPPER.readerFor(type);
+            List<V> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                ByteBuffer json = buffer.slice();
+                json.limit(length);
+                values.add(reader.readValue(new ByteBufferBackedInputStream(json)));
+                buffer.position(buffer.position() + length);
+            }
+            return Optional.of(new CacheSnapshot<>(index, Collections.unmodifiableList(values)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+}
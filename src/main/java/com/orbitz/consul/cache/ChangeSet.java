@@ -0,0 +1,170 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Equivalence;
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The differences between two consecutive snapshots of a {@link ConsulCache}.
+ * <p>
+ * Entries are compared with an {@link Equivalence} which, for most caches, only looks at the
+ * Consul {@code ModifyIndex} of the entries rather than at their whole content.
+ * Unchanged entries keep the instance of the previous snapshot, and when nothing changed
+ * the previous snapshot itself is reused, so a poll without changes does not build any new map.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class ChangeSet<K, V> {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ChangeSet.class);
+
+    private final ImmutableMap<K, V> snapshot;
+    private final ImmutableMap<K, V> added;
+    private final ImmutableMap<K, V> removed;
+    private final ImmutableMap<K, V> updated;
+    private final BigInteger index;
+
+    ChangeSet(ImmutableMap<K, V> snapshot, ImmutableMap<K, V> added, ImmutableMap<K, V> removed,
+              ImmutableMap<K, V> updated, BigInteger index) {
+        this.snapshot = snapshot;
+        this.added = added;
+        this.removed = removed;
+        this.updated = updated;
+        this.index = index;
+    }
+
+    /**
+     * Gets the full snapshot after the changes were applied.
+     */
+    public ImmutableMap<K, V> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the entries that were not part of the previous snapshot.
+     */
+    public ImmutableMap<K, V> getAdded() {
+        return added;
+    }
+
+    /**
+     * Gets the entries of the previous snapshot that are no longer present.
+     */
+    public ImmutableMap<K, V> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Gets the new values of the entries that were modified since the previous snapshot.
+     */
+    public ImmutableMap<K, V> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Gets the Consul index of the response that produced these changes.
+     */
+    public BigInteger getIndex() {
+        return index;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && updated.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "added=" + added.keySet() +
+                ", removed=" + removed.keySet() +
+                ", updated=" + updated.keySet() +
+                ", index=" + index +
+                '}';
+    }
+
+    /**
+     * Creates a change set where every entry of the snapshot is added.
+     */
+    static <K, V> ChangeSet<K, V> initial(ImmutableMap<K, V> snapshot, BigInteger index) {
+        return new ChangeSet<>(snapshot, snapshot, ImmutableMap.of(), ImmutableMap.of(), index);
+    }
+
+    /**
+     * Computes the changes between the {@code previous} snapshot and a new list of values.
+     *
+     * @param previous the previous snapshot, or {@code null} if there is none
+     * @param values the values returned by Consul
+     * @param keyConversion the function extracting the key of a value
+     * @param equivalence tells whether a value is unchanged compared to its previous version
+     * @param index the Consul index of the response
+     */
+    static <K, V> ChangeSet<K, V> compute(ImmutableMap<K, V> previous, List<V> values, Function<V, K> keyConversion,
+                                          Equivalence<? super V> equivalence, BigInteger index) {
+        if (previous == null) {
+            previous = ImmutableMap.of();
+        }
+        if (values == null || values.isEmpty()) {
+            return new ChangeSet<>(ImmutableMap.of(), ImmutableMap.of(), previous, ImmutableMap.of(), index);
+        }
+
+        // fast path: every value matches an equivalent entry of the previous snapshot, with no duplicate key
+        if (values.size() == previous.size()) {
+            boolean unchanged = true;
+            Set<K> seen = new HashSet<>();
+            for (V v : values) {
+                K key = keyConversion.apply(v);
+                V old = key == null ? null : previous.get(key);
+                if (old == null || !seen.add(key) || !equivalence.equivalent(old, v)) {
+                    unchanged = false;
+                    break;
+                }
+            }
+            if (unchanged) {
+                return new ChangeSet<>(previous, ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of(), index);
+            }
+        }
+
+        final ImmutableMap.Builder<K, V> snapshot = ImmutableMap.builder();
+        final ImmutableMap.Builder<K, V> added = ImmutableMap.builder();
+        final ImmutableMap.Builder<K, V> updated = ImmutableMap.builder();
+        final Set<K> keySet = new HashSet<>();
+        for (final V v : values) {
+            final K key = keyConversion.apply(v);
+            if (key == null) {
+                continue;
+            }
+            if (!keySet.add(key)) {
+                LOGGER.warn("Duplicate service encountered. May differ by tags. Try using more specific tags? " + key.toString());
+                continue;
+            }
+            V old = previous.get(key);
+            if (old == null) {
+                added.put(key, v);
+                snapshot.put(key, v);
+            } else if (equivalence.equivalent(old, v)) {
+                snapshot.put(key, old);
+            } else {
+                updated.put(key, v);
+                snapshot.put(key, v);
+            }
+        }
+
+        final ImmutableMap.Builder<K, V> removed = ImmutableMap.builder();
+        for (Map.Entry<K, V> entry : previous.entrySet()) {
+            if (!keySet.contains(entry.getKey())) {
+                removed.put(entry);
+            }
+        }
+
+        return new ChangeSet<>(snapshot.build(), added.build(), removed.build(), updated.build(), index);
+    }
+}
@@ -0,0 +1,420 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.orbitz.consul.HealthClient;
+import com.orbitz.consul.async.ConsulResponseCallback;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.State;
+import com.orbitz.consul.model.health.HealthCheck;
+import com.orbitz.consul.model.health.ImmutableServiceHealth;
+import com.orbitz.consul.model.health.ServiceHealth;
+import com.orbitz.consul.option.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the health checks of the whole datacenter with a single blocking query on {@code /v1/health/state/any},
+ * and serves per-service caches of the instances of services with the same content as {@link ServiceHealthCache},
+ * without a blocking query per service.
+ * <p>
+ * The checks do not hold the addresses of the instances: each service cache fetches the instances of its service
+ * once with a plain request, then derives their health from the checks of the cluster. The instances are fetched
+ * again only when a check of the service is added or removed, which is how registrations and deregistrations show
+ * in the checks, and every resync interval to pick up instances registered without any check.
+ * <p>
+ * The cluster cache must be started for the service caches to follow the changes of the checks.
+ */
+public class ClusterHealthCache implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterHealthCache.class);
+
+    static final Duration DEFAULT_RESYNC_INTERVAL = Duration.ofMinutes(5);
+
+    private final HealthClient healthClient;
+    private final QueryOptions queryOptions;
+    private final Duration resyncInterval;
+    private final HealthCheckCache checks;
+    private final Set<ServiceWatch> watches = new CopyOnWriteArraySet<>();
+    private final Set<ServiceView> views = new CopyOnWriteArraySet<>();
+    private final ScheduledExecutorService executor;
+
+    // node -> check ID -> check, guarded by this
+    private final Map<String, Map<String, HealthCheck>> checksByNode = new HashMap<>();
+    private BigInteger index;
+
+    private ClusterHealthCache(HealthClient healthClient, int watchSeconds, QueryOptions queryOptions,
+                               Duration resyncInterval) {
+        this.healthClient = healthClient;
+        this.queryOptions = queryOptions;
+        this.resyncInterval = resyncInterval;
+        this.checks = HealthCheckCache.newCache(healthClient, State.ANY, watchSeconds, queryOptions,
+                check -> check.getNode() + "/" + check.getCheckId());
+        this.executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("consulClusterHealth-%d")
+                        .setDaemon(true)
+                        .build());
+        checks.addDeltaListener(this::apply);
+    }
+
+    /**
+     * Creates a cache of the instances of a service, following the checks of this cache.
+     * The returned cache must be started and stopped like any {@link ServiceHealthCache},
+     * and is stopped along with this cache.
+     *
+     * @param serviceName the name of the service
+     * @param passing whether to only keep the instances whose checks are all passing
+     */
+    public ServiceHealthCache newServiceCache(String serviceName, boolean passing) {
+        Preconditions.checkNotNull(serviceName, "Service name cannot be null");
+        ServiceWatch watch = new ServiceWatch(serviceName, passing);
+        watches.add(watch);
+        ServiceView view = new ServiceView(watch);
+        views.add(view);
+        return view;
+    }
+
+    public void start() {
+        checks.start();
+    }
+
+    /**
+     * Stops the cache of the checks along with every service cache created from this cache.
+     */
+    public void stop() {
+        for (ServiceView view : views) {
+            view.stop();
+        }
+        checks.stop();
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    public boolean awaitInitialized(long timeout, TimeUnit unit) throws InterruptedException {
+        return checks.awaitInitialized(timeout, unit);
+    }
+
+    /**
+     * Gets the underlying cache of the checks, keyed by node name and check ID.
+     */
+    public HealthCheckCache getHealthCheckCache() {
+        return checks;
+    }
+
+    private void apply(ChangeSet<String, HealthCheck> changes) {
+        Set<String> addedOrRemoved = new HashSet<>();
+        Set<String> updated = new HashSet<>();
+        Set<String> nodes = new HashSet<>();
+        synchronized (this) {
+            for (HealthCheck check : changes.getRemoved().values()) {
+                Map<String, HealthCheck> nodeChecks = checksByNode.get(check.getNode());
+                if (nodeChecks != null) {
+                    nodeChecks.remove(check.getCheckId());
+                    if (nodeChecks.isEmpty()) {
+                        checksByNode.remove(check.getNode());
+                    }
+                }
+                collect(check, addedOrRemoved, nodes);
+            }
+            for (HealthCheck check : changes.getAdded().values()) {
+                checksByNode.computeIfAbsent(check.getNode(), node -> new HashMap<>()).put(check.getCheckId(), check);
+                collect(check, addedOrRemoved, nodes);
+            }
+            for (HealthCheck check : changes.getUpdated().values()) {
+                checksByNode.computeIfAbsent(check.getNode(), node -> new HashMap<>()).put(check.getCheckId(), check);
+                collect(check, updated, nodes);
+            }
+            index = changes.getIndex();
+        }
+
+        for (ServiceWatch watch : watches) {
+            if (addedOrRemoved.contains(watch.serviceName)) {
+                watch.changed(true);
+            } else if (updated.contains(watch.serviceName) || watch.hasInstanceOn(nodes)) {
+                watch.changed(false);
+            }
+        }
+    }
+
+    private static void collect(HealthCheck check, Set<String> services, Set<String> nodes) {
+        if (check.getServiceName().isPresent() && !check.getServiceName().get().isEmpty()) {
+            services.add(check.getServiceName().get());
+        } else {
+            nodes.add(check.getNode());
+        }
+    }
+
+    /**
+     * Gets the index of the checks, or {@code null} before the first response.
+     */
+    private synchronized BigInteger getIndex() {
+        return index;
+    }
+
+    /**
+     * Replaces the checks of the instances with the current checks of the cluster.
+     */
+    private synchronized List<ServiceHealth> withCurrentChecks(List<ServiceHealth> instances) {
+        List<ServiceHealth> result = new ArrayList<>(instances.size());
+        for (ServiceHealth instance : instances) {
+            Map<String, HealthCheck> nodeChecks = checksByNode.get(instance.getNode().getNode());
+            List<HealthCheck> instanceChecks = new ArrayList<>();
+            if (nodeChecks != null) {
+                for (HealthCheck check : nodeChecks.values()) {
+                    String serviceId = check.getServiceId().orElse("");
+                    if (serviceId.isEmpty() || serviceId.equals(instance.getService().getId())) {
+                        instanceChecks.add(check);
+                    }
+                }
+            }
+            instanceChecks.sort((a, b) -> a.getCheckId().compareTo(b.getCheckId()));
+            result.add(ImmutableServiceHealth.copyOf(instance).withChecks(instanceChecks));
+        }
+        return result;
+    }
+
+    private static boolean isPassing(ServiceHealth instance) {
+        for (HealthCheck check : instance.getChecks()) {
+            if (!State.PASS.getName().equals(check.getStatus())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Serves the requests of a service cache: each request returns as soon as the checks of the service change,
+     * like a blocking query would.
+     */
+    private final class ServiceWatch implements ConsulCache.CallbackConsumer<ServiceHealth> {
+        private final String serviceName;
+        private final boolean passing;
+
+        // guarded by this
+        private boolean refetch = true;
+        private boolean rederive;
+        private List<ServiceHealth> instances;
+        private BigInteger fetchIndex;
+        private BigInteger lastIndex = BigInteger.ZERO;
+        private ConsulResponseCallback<List<ServiceHealth>> parked;
+        private ScheduledFuture<?> resync;
+
+        private ServiceWatch(String serviceName, boolean passing) {
+            this.serviceName = serviceName;
+            this.passing = passing;
+        }
+
+        @Override
+        public void consume(BigInteger requestIndex, ConsulResponseCallback<List<ServiceHealth>> callback) {
+            synchronized (this) {
+                if (requestIndex == null) {
+                    refetch = true;
+                }
+                if (!refetch && !rederive) {
+                    parked = callback;
+                    try {
+                        resync = executor.schedule(() -> changed(true), resyncInterval.toMillis(), TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException e) {
+                        LOGGER.debug("Cluster health cache stopped, {} will not be resynchronized", serviceName);
+                    }
+                    return;
+                }
+            }
+            serve(callback);
+        }
+
+        private synchronized boolean hasInstanceOn(Set<String> nodes) {
+            if (nodes.isEmpty() || instances == null) {
+                return false;
+            }
+            for (ServiceHealth instance : instances) {
+                if (nodes.contains(instance.getNode().getNode())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void changed(boolean membership) {
+            ConsulResponseCallback<List<ServiceHealth>> callback = wake(membership);
+            if (callback != null) {
+                try {
+                    executor.execute(() -> serve(callback));
+                } catch (RejectedExecutionException e) {
+                    LOGGER.debug("Cluster health cache stopped, {} will not be updated", serviceName);
+                }
+            }
+        }
+
+        private synchronized ConsulResponseCallback<List<ServiceHealth>> wake(boolean membership) {
+            if (membership) {
+                refetch = true;
+            } else {
+                rederive = true;
+            }
+            ConsulResponseCallback<List<ServiceHealth>> callback = parked;
+            parked = null;
+            if (resync != null) {
+                resync.cancel(false);
+                resync = null;
+            }
+            return callback;
+        }
+
+        private void serve(ConsulResponseCallback<List<ServiceHealth>> callback) {
+            boolean fetch;
+            synchronized (this) {
+                fetch = refetch || instances == null;
+                refetch = false;
+                rederive = false;
+            }
+            if (!fetch) {
+                callback.onComplete(response());
+                return;
+            }
+
+            healthClient.getAllServiceInstances(serviceName, queryOptions, new ConsulResponseCallback<List<ServiceHealth>>() {
+                @Override
+                public void onComplete(ConsulResponse<List<ServiceHealth>> consulResponse) {
+                    synchronized (ServiceWatch.this) {
+                        instances = consulResponse.getResponse() == null
+                                ? ImmutableList.of() : ImmutableList.copyOf(consulResponse.getResponse());
+                        fetchIndex = consulResponse.getIndex();
+                    }
+                    callback.onComplete(response());
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    synchronized (ServiceWatch.this) {
+                        refetch = true;
+                    }
+                    callback.onFailure(throwable);
+                }
+            });
+        }
+
+        private ConsulResponse<List<ServiceHealth>> response() {
+            List<ServiceHealth> current;
+            BigInteger responseIndex;
+            synchronized (this) {
+                current = instances;
+                responseIndex = fetchIndex;
+            }
+            BigInteger clusterIndex = getIndex();
+            // the fetched instances are newer than the checks until the checks catch up with them
+            if (clusterIndex != null && (responseIndex == null || clusterIndex.compareTo(responseIndex) >= 0)) {
+                current = withCurrentChecks(current);
+                responseIndex = clusterIndex;
+            }
+            if (passing) {
+                List<ServiceHealth> healthy = new ArrayList<>(current.size());
+                for (ServiceHealth instance : current) {
+                    if (isPassing(instance)) {
+                        healthy.add(instance);
+                    }
+                }
+                current = healthy;
+            }
+            synchronized (this) {
+                // keeps the index increasing, whichever of the two indexes the response comes from
+                if (responseIndex != null && responseIndex.compareTo(lastIndex) > 0) {
+                    lastIndex = responseIndex;
+                }
+                responseIndex = lastIndex;
+            }
+            return new ConsulResponse<>(current, 0, true, responseIndex, Optional.empty());
+        }
+
+        private void close() {
+            synchronized (this) {
+                parked = null;
+                if (resync != null) {
+                    resync.cancel(false);
+                    resync = null;
+                }
+            }
+            watches.remove(this);
+        }
+    }
+
+    /**
+     * A cache of the instances of a service served by the cluster health cache.
+     */
+    private final class ServiceView extends ServiceHealthCache {
+        private final ServiceWatch watch;
+
+        private ServiceView(ServiceWatch watch) {
+            super(ServiceHealthKey::fromServiceHealth,
+                  watch,
+                  healthClient.getConfig().getCacheConfig(),
+                  healthClient.getEventHandler(),
+                  new CacheDescriptor("health.cluster", watch.serviceName),
+                  createDefault(healthClient.getConfig().getCacheConfig()));
+            this.watch = watch;
+        }
+
+        @Override
+        public void stop() {
+            watch.close();
+            views.remove(this);
+            super.stop();
+        }
+    }
+
+    /**
+     * Factory method to construct a cache of the checks of the cluster.
+     *
+     * @param healthClient the {@link HealthClient}
+     * @param watchSeconds the duration of the blocking query on the checks
+     * @param queryOptions the options of the queries, such as the datacenter
+     * @param resyncInterval the interval between fetches of the instances of a service when its checks do not change
+     * @return the cache object
+     */
+    public static ClusterHealthCache newCache(
+            final HealthClient healthClient,
+            final int watchSeconds,
+            final QueryOptions queryOptions,
+            final Duration resyncInterval) {
+        Preconditions.checkArgument(!resyncInterval.isNegative() && !resyncInterval.isZero(),
+                "Resync interval must be positive");
+        return new ClusterHealthCache(healthClient, watchSeconds, queryOptions, resyncInterval);
+    }
+
+    public static ClusterHealthCache newCache(
+            final HealthClient healthClient,
+            final int watchSeconds,
+            final QueryOptions queryOptions) {
+        return newCache(healthClient, watchSeconds, queryOptions, DEFAULT_RESYNC_INTERVAL);
+    }
+
+    public static ClusterHealthCache newCache(final HealthClient healthClient) {
+        CacheConfig cacheConfig = healthClient.getConfig().getCacheConfig();
+        int watchSeconds = Ints.checkedCast(cacheConfig.getWatchDuration().getSeconds());
+        return newCache(healthClient, watchSeconds, QueryOptions.BLANK);
+    }
+}
@@ -1,39 +1,56 @@
 package com.orbitz.consul.cache;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Equivalence;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.orbitz.consul.ConsulException;
 import com.orbitz.consul.async.ConsulResponseCallback;
 import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ExecutionMode;
 import com.orbitz.consul.model.ConsulResponse;
 import com.orbitz.consul.monitoring.ClientEventHandler;
+import com.orbitz.consul.option.ConsistencyMode;
 import com.orbitz.consul.option.ImmutableQueryOptions;
 import com.orbitz.consul.option.QueryOptions;
+import com.orbitz.consul.util.VirtualThreads;
 import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
@@ -48,17 +65,31 @@ public class ConsulCache<K, V> implements AutoCloseable {
     enum State {latent, starting, started, stopped }
 
     private final static Logger LOGGER = LoggerFactory.getLogger(ConsulCache.class);
+    private final static String CACHED = "CACHED";
+    @VisibleForTesting
+    static final long TIGHT_LOOP_THRESHOLD_MS = 1000;
+    private static final long SNAPSHOT_FLUSH_TIMEOUT_SECONDS = 5;
 
     private final AtomicReference<BigInteger> latestIndex = new AtomicReference<>(null);
+    private final AtomicReference<BigInteger> requestIndex = new AtomicReference<>(null);
+    private final AtomicLong indexResets = new AtomicLong();
+    private final AtomicLong tightLoops = new AtomicLong();
+    private final AtomicLong rateLimitedRequests = new AtomicLong();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger maxConsecutiveFailures = new AtomicInteger();
+    private final AtomicReference<Duration> lastBackOffDelay = new AtomicReference<>(Duration.ZERO);
     private final AtomicLong lastContact = new AtomicLong();
     private final AtomicBoolean isKnownLeader = new AtomicBoolean();
     private final AtomicReference<ConsulResponse.CacheResponseInfo> lastCacheInfo = new AtomicReference<>(null);
+    private final AtomicLong agentCacheHits = new AtomicLong();
+    private final AtomicLong agentCacheMisses = new AtomicLong();
     private final AtomicReference<ImmutableMap<K, V>> lastResponse = new AtomicReference<>(null);
     private final AtomicReference<State> state = new AtomicReference<>(State.latent);
     private final CountDownLatch initLatch = new CountDownLatch(1);
     private final Scheduler scheduler;
-    private final CopyOnWriteArrayList<Listener<K, V>> listeners = new CopyOnWriteArrayList<>();
-    private final ReentrantLock listenersStartingLock = new ReentrantLock();
+    private final CopyOnWriteArrayList<ListenerDispatcher<K, V>> listeners = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<DeltaListener<K, V>> deltaListeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock listenersLock = new ReentrantLock();
     private final Stopwatch stopWatch = Stopwatch.createUnstarted();
 
     private final Function<V, K> keyConversion;
@@ -66,6 +97,16 @@ public class ConsulCache<K, V> implements AutoCloseable {
     private final ConsulResponseCallback<List<V>> responseCallback;
     private final ClientEventHandler eventHandler;
     private final CacheDescriptor cacheDescriptor;
+    private final Optional<Path> snapshotDirectory;
+    private final List<Object> watchKey;
+    private final AtomicReference<BigInteger> snapshotIndex = new AtomicReference<>(null);
+    private final AtomicReference<Map.Entry<BigInteger, ImmutableMap<K, V>>> pendingSnapshot = new AtomicReference<>();
+    private final AtomicBoolean snapshotWriteScheduled = new AtomicBoolean();
+    private volatile long nextSnapshotWriteNanos = System.nanoTime();
+    private final CacheConfig cacheConfig;
+    private final Optional<TokenBucket> rateLimiter;
+    private final Optional<TokenBucket> globalRateLimiter;
+    private final Duration wakeupJitter;
 
     protected ConsulCache(
             Function<V, K> keyConversion,
@@ -74,7 +115,7 @@ public class ConsulCache<K, V> implements AutoCloseable {
             ClientEventHandler eventHandler,
             CacheDescriptor cacheDescriptor) {
 
-        this(keyConversion, callbackConsumer, cacheConfig, eventHandler, cacheDescriptor, createDefault());
+        this(keyConversion, callbackConsumer, cacheConfig, eventHandler, cacheDescriptor, createDefault(cacheConfig));
     }
 
     protected ConsulCache(
@@ -113,6 +154,12 @@ public class ConsulCache<K, V> implements AutoCloseable {
         this.eventHandler = eventHandler;
         this.cacheDescriptor = cacheDescriptor;
         this.scheduler = callbackScheduler;
+        this.snapshotDirectory = cacheConfig.getSnapshotDirectory();
+        this.watchKey = watchKey(callbackConsumer);
+        this.cacheConfig = cacheConfig;
+        this.rateLimiter = cacheConfig.getRateLimit().map(TokenBucket::new);
+        this.globalRateLimiter = cacheConfig.getGlobalRateLimiter();
+        this.wakeupJitter = cacheConfig.getWakeupJitter();
 
         this.responseCallback = new ConsulResponseCallback<List<V>>() {
             @Override
@@ -121,42 +168,45 @@ public class ConsulCache<K, V> implements AutoCloseable {
                     return;
                 }
                 long elapsedTime = stopWatch.elapsed(TimeUnit.MILLISECONDS);
-                updateIndex(consulResponse);
+                consecutiveFailures.set(0);
+                lastBackOffDelay.set(Duration.ZERO);
+                updateIndex(consulResponse, elapsedTime);
+                updateCacheInfo(consulResponse);
                 LOGGER.debug("Consul cache updated for {} (index={}), request duration: {} ms",
                         cacheDescriptor, latestIndex, elapsedTime);
 
-                ImmutableMap<K, V> full = convertToMap(consulResponse);
+                ImmutableMap<K, V> previous = lastResponse.get();
+                ChangeSet<K, V> changeSet = ChangeSet.compute(previous, consulResponse.getResponse(),
+                        keyConversion, valueEquivalence(), consulResponse.getIndex());
+                ImmutableMap<K, V> full = changeSet.getSnapshot();
 
-                boolean changed = !full.equals(lastResponse.get());
+                boolean changed = previous == null || !changeSet.isEmpty();
                 eventHandler.cachePollingSuccess(cacheDescriptor, changed, elapsedTime);
 
                 if (changed) {
-                    // changes
-                    lastResponse.set(full);
                     // metadata changes
                     lastContact.set(consulResponse.getLastContact());
                     isKnownLeader.set(consulResponse.isKnownLeader());
-                }
+                    persistSnapshot(consulResponse.getIndex(), full);
 
-                if (changed) {
-                    Boolean locked = false;
-                    if (state.get() == State.starting) {
-                        listenersStartingLock.lock();
-                        locked = true;
-                    }
+                    // the new entries are published and dispatched under the lock taken by listeners added
+                    // concurrently, so that they get either the previous entries and this change set, or the new entries
+                    listenersLock.lock();
                     try {
-                        for (Listener<K, V> l : listeners) {
+                        lastResponse.set(full);
+                        for (ListenerDispatcher<K, V> l : listeners) {
+                            l.dispatch(full);
+                        }
+                        for (DeltaListener<K, V> l : deltaListeners) {
                             try {
-                                l.notify(full);
+                                l.notify(changeSet);
                             } catch (RuntimeException e) {
-                                LOGGER.warn("ConsulCache Listener's notify method threw an exception.", e);
+                                LOGGER.warn("ConsulCache DeltaListener's notify method threw an exception.", e);
                             }
                         }
                     }
                     finally {
-                        if (locked) {
-                            listenersStartingLock.unlock();
-                        }
+                        listenersLock.unlock();
                     }
                 }
 
@@ -164,15 +214,13 @@ public class ConsulCache<K, V> implements AutoCloseable {
                     initLatch.countDown();
                 }
 
-                Duration timeToWait = cacheConfig.getMinimumDurationBetweenRequests();
+                Duration timeToWait = minimumDurationBetweenRequests(consulResponse, cacheConfig);
                 if ((consulResponse.getResponse() == null || consulResponse.getResponse().isEmpty()) &&
                         cacheConfig.getMinimumDurationDelayOnEmptyResult().compareTo(timeToWait) > 0) {
                     timeToWait = cacheConfig.getMinimumDurationDelayOnEmptyResult();
                 }
-                timeToWait = timeToWait.minusMillis(elapsedTime);
 
-                scheduler.schedule(ConsulCache.this::runCallback,
-                        timeToWait.toMillis(), TimeUnit.MILLISECONDS);
+                scheduleNextRequest(computeNextRequestDelayMs(timeToWait, elapsedTime, wakeupJitter));
             }
 
             @Override
@@ -181,26 +229,175 @@ public class ConsulCache<K, V> implements AutoCloseable {
                     return;
                 }
                 eventHandler.cachePollingError(cacheDescriptor, throwable);
-                long delayMs = computeBackOffDelayMs(cacheConfig);
-                String message = String.format("Error getting response from consul for %s, will retry in %d %s",
-                        cacheDescriptor, delayMs, TimeUnit.MILLISECONDS);
+                int failures = consecutiveFailures.incrementAndGet();
+                maxConsecutiveFailures.accumulateAndGet(failures, Math::max);
+                Duration delay = cacheConfig.getBackOffPolicy().nextDelay(failures, lastBackOffDelay.get());
+                lastBackOffDelay.set(delay);
+                long delayMs = delay.toMillis();
+                String message = String.format("Error getting response from consul for %s, will retry in %d %s (%d consecutive failures)",
+                        cacheDescriptor, delayMs, TimeUnit.MILLISECONDS, failures);
 
                 cacheConfig.getRefreshErrorLoggingConsumer().accept(LOGGER, message, throwable);
 
-                scheduler.schedule(ConsulCache.this::runCallback, delayMs, TimeUnit.MILLISECONDS);
+                scheduleNextRequest(delayMs);
             }
         };
     }
 
+    /**
+     * Schedules the next request after the given delay, or later if the rate limiters require it.
+     */
+    private void scheduleNextRequest(long delayMs) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMs);
+        long limitedNanos = delayNanos;
+        if (rateLimiter.isPresent()) {
+            limitedNanos = rateLimiter.get().reserve(limitedNanos);
+        }
+        if (globalRateLimiter.isPresent()) {
+            limitedNanos = globalRateLimiter.get().reserve(limitedNanos);
+        }
+        if (limitedNanos > Math.max(0, delayNanos)) {
+            rateLimitedRequests.incrementAndGet();
+            LOGGER.debug("Next request of {} delayed by {} ms by rate limiting", cacheDescriptor,
+                    TimeUnit.NANOSECONDS.toMillis(limitedNanos - Math.max(0, delayNanos)));
+        }
+        scheduler.schedule(this::runCallback, limitedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the delay before the request following a response which took the given time: the part of the minimum
+     * delay between requests not yet elapsed, plus a random jitter so that caches woken up by the same change do not
+     * all send their next request at the same moment.
+     */
+    static long computeNextRequestDelayMs(Duration timeToWait, long elapsedTime, Duration jitter) {
+        return Math.max(0, timeToWait.toMillis() - elapsedTime) + computeJitterMs(jitter);
+    }
+
+    static long computeJitterMs(Duration jitter) {
+        return jitter.isZero() ? 0 : ThreadLocalRandom.current().nextLong(jitter.toMillis() + 1);
+    }
+
     static long computeBackOffDelayMs(CacheConfig cacheConfig) {
-        return cacheConfig.getMinimumBackOffDelay().toMillis() +
-                Math.round(Math.random() * (cacheConfig.getMaximumBackOffDelay().minus(cacheConfig.getMinimumBackOffDelay()).toMillis()));
+        return cacheConfig.getBackOffPolicy().nextDelay(1, Duration.ZERO).toMillis();
     }
 
     public void start() {
         checkState(state.compareAndSet(State.latent, State.starting),"Cannot transition from state %s to %s", state.get(), State.starting);
         eventHandler.cacheStart(cacheDescriptor);
-        runCallback();
+        if (!restoreSnapshot()) {
+            runCallback();
+        }
+    }
+
+    /**
+     * Initializes the cache from its persisted snapshot, if any, as if it was the response of a first request.
+     * The next request then blocks on the persisted index.
+     */
+    private boolean restoreSnapshot() {
+        Optional<Path> file = snapshotFile();
+        if (!file.isPresent()) {
+            return false;
+        }
+        try {
+            Optional<CacheSnapshot<V>> snapshot = CacheSnapshot.read(file.get(), snapshotValueType().get());
+            if (!snapshot.isPresent()) {
+                return false;
+            }
+            LOGGER.debug("Consul cache {} restored from {} (index={})", cacheDescriptor, file.get(), snapshot.get().getIndex());
+            snapshotIndex.set(snapshot.get().getIndex());
+            responseCallback.onComplete(new ConsulResponse<>(snapshot.get().getValues(), 0, false,
+                    snapshot.get().getIndex(), Optional.empty()));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to restore Consul cache {} from {}", cacheDescriptor, file.get(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Persists the entries of a response in the background. The responses received until the next write,
+     * which happens at most once per {@link CacheConfig#getSnapshotInterval()}, are coalesced into one write
+     * of the latest entries.
+     */
+    private void persistSnapshot(BigInteger index, ImmutableMap<K, V> entries) {
+        Optional<Path> file = snapshotFile();
+        if (!file.isPresent() || index == null || index.equals(snapshotIndex.get())) {
+            return;
+        }
+        pendingSnapshot.set(Maps.immutableEntry(index, entries));
+        scheduleSnapshotWrite(file.get());
+    }
+
+    private void scheduleSnapshotWrite(Path file) {
+        if (!snapshotWriteScheduled.compareAndSet(false, true)) {
+            // the scheduled write picks the latest entries
+            return;
+        }
+        long delay = Math.max(0, nextSnapshotWriteNanos - System.nanoTime());
+        try {
+            SnapshotWriter.EXECUTOR.schedule(() -> {
+                writePendingSnapshot(file);
+                snapshotWriteScheduled.set(false);
+                if (pendingSnapshot.get() != null) {
+                    scheduleSnapshotWrite(file);
+                }
+            }, delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            snapshotWriteScheduled.set(false);
+            LOGGER.warn("Unable to schedule the snapshot of Consul cache {}", cacheDescriptor, e);
+        }
+    }
+
+    /**
+     * Writes the latest entries not persisted yet, if any. Only called from the snapshot writer thread.
+     */
+    private void writePendingSnapshot(Path file) {
+        Map.Entry<BigInteger, ImmutableMap<K, V>> snapshot = pendingSnapshot.getAndSet(null);
+        if (snapshot == null || snapshot.getKey().equals(snapshotIndex.get())) {
+            return;
+        }
+        try {
+            CacheSnapshot.write(file, snapshot.getKey(), snapshot.getValue().values());
+            snapshotIndex.set(snapshot.getKey());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to persist Consul cache {} to {}", cacheDescriptor, file, e);
+        } finally {
+            nextSnapshotWriteNanos = System.nanoTime() + cacheConfig.getSnapshotInterval().toNanos();
+        }
+    }
+
+    /**
+     * Writes the latest entries not persisted yet before the cache stops, so that the next start resumes from them.
+     * The write is queued behind the one the writer thread may be doing, so that both are done on return.
+     */
+    private void flushSnapshot() {
+        Optional<Path> file = snapshotFile();
+        if (!file.isPresent() || (pendingSnapshot.get() == null && !snapshotWriteScheduled.get())) {
+            return;
+        }
+        try {
+            SnapshotWriter.EXECUTOR.submit(() -> writePendingSnapshot(file.get()))
+                    .get(SNAPSHOT_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+            LOGGER.warn("Unable to persist Consul cache {} to {}", cacheDescriptor, file.get(), e);
+        }
+    }
+
+    private Optional<Path> snapshotFile() {
+        if (!snapshotDirectory.isPresent() || watchKey == null || !snapshotValueType().isPresent()) {
+            return Optional.empty();
+        }
+        return Optional.of(CacheSnapshot.file(snapshotDirectory.get(), cacheDescriptor, watchKey));
+    }
+
+    /**
+     * Gets the type the entries are decoded to when the cache is restored from a snapshot.
+     * Caches that do not override it are never persisted.
+     */
+    protected Optional<Class<? extends V>> snapshotValueType() {
+        return Optional.empty();
     }
 
     public void stop() {
@@ -216,6 +413,10 @@ public class ConsulCache<K, V> implements AutoCloseable {
         }
         if (previous != State.stopped) {
             scheduler.shutdownNow();
+            if (callBackConsumer instanceof WatchMultiplexer.Subscription) {
+                ((WatchMultiplexer.Subscription<V>) callBackConsumer).close();
+            }
+            flushSnapshot();
         }
     }
 
@@ -227,7 +428,9 @@ public class ConsulCache<K, V> implements AutoCloseable {
     private void runCallback() {
         if (isRunning()) {
             stopWatch.reset().start();
-            callBackConsumer.consume(latestIndex.get(), responseCallback);
+            BigInteger index = latestIndex.get();
+            requestIndex.set(index);
+            callBackConsumer.consume(index, responseCallback);
         }
     }
 
@@ -247,6 +450,38 @@ public class ConsulCache<K, V> implements AutoCloseable {
         return new ConsulResponse<>(lastResponse.get(), lastContact.get(), isKnownLeader.get(), latestIndex.get(), Optional.ofNullable(lastCacheInfo.get()));
     }
 
+    /**
+     * Tells whether a value received from Consul is unchanged compared to the cached one.
+     * Caches whose values carry a Consul {@code ModifyIndex} override this to avoid deep comparisons.
+     */
+    protected Equivalence<? super V> valueEquivalence() {
+        return Equivalence.equals();
+    }
+
+    /**
+     * Creates an {@link Equivalence} comparing values by their Consul {@code ModifyIndex}.
+     * Values without a {@code ModifyIndex} are compared with {@link Object#equals(Object)}.
+     */
+    protected static <V> Equivalence<V> modifyIndexEquivalence(Function<V, Optional<Long>> modifyIndex) {
+        return new Equivalence<V>() {
+            @Override
+            protected boolean doEquivalent(V a, V b) {
+                Optional<Long> indexA = modifyIndex.apply(a);
+                Optional<Long> indexB = modifyIndex.apply(b);
+                if (indexA.isPresent() && indexB.isPresent()) {
+                    return indexA.get().equals(indexB.get());
+                }
+                return a.equals(b);
+            }
+
+            @Override
+            protected int doHash(V v) {
+                Optional<Long> index = modifyIndex.apply(v);
+                return index.isPresent() ? index.get().hashCode() : v.hashCode();
+            }
+        };
+    }
+
     @VisibleForTesting
     ImmutableMap<K, V> convertToMap(final ConsulResponse<List<V>> response) {
         if (response == null || response.getResponse() == null || response.getResponse().isEmpty()) {
@@ -268,27 +503,169 @@ public class ConsulCache<K, V> implements AutoCloseable {
         return builder.build();
     }
 
-    private void updateIndex(ConsulResponse<List<V>> consulResponse) {
-        if (consulResponse != null && consulResponse.getIndex() != null) {
-            this.latestIndex.set(consulResponse.getIndex());
+    /**
+     * Stores the index of a response following the recommendations on blocking queries:
+     * an index lower than the previous one (e.g. after a snapshot restore) resets the index, so that the next request
+     * is a non-blocking full read, and an index of 0 is stored as 1 so that the next request blocks instead of
+     * returning immediately.
+     * A blocking request which returned quickly without its index moving forward is counted as a tight loop.
+     */
+    private void updateIndex(ConsulResponse<List<V>> consulResponse, long elapsedTime) {
+        if (consulResponse == null || consulResponse.getIndex() == null) {
+            return;
+        }
+        BigInteger index = consulResponse.getIndex();
+        BigInteger normalized = normalizeIndex(index);
+        BigInteger previous = requestIndex.getAndSet(null);
+        if (previous != null && normalized.compareTo(previous) <= 0 && elapsedTime < TIGHT_LOOP_THRESHOLD_MS) {
+            tightLoops.incrementAndGet();
+        }
+
+        if (previous != null && index.signum() > 0 && index.compareTo(previous) < 0) {
+            LOGGER.info("Consul index of {} went backwards from {} to {}, resyncing", cacheDescriptor, previous, index);
+            indexResets.incrementAndGet();
+            latestIndex.set(null);
+        } else {
+            latestIndex.set(normalized);
         }
     }
 
+    /**
+     * Gets the index the next request blocks on after a response with the given index: an index of 0 or less,
+     * as returned by the endpoints without an X-Consul-Index header, is replaced by 1.
+     */
+    static BigInteger normalizeIndex(BigInteger index) {
+        return index.signum() > 0 ? index : BigInteger.ONE;
+    }
+
+    /**
+     * Gets the number of failed requests since the last successful one.
+     */
+    public int getConsecutiveFailureCount() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * Gets the highest number of consecutive failed requests since the cache was created.
+     */
+    public int getMaxConsecutiveFailureCount() {
+        return maxConsecutiveFailures.get();
+    }
+
+    /**
+     * Gets the number of requests delayed by the rate limiters of the {@link CacheConfig}.
+     */
+    public long getRateLimitedCount() {
+        return rateLimitedRequests.get();
+    }
+
+    /**
+     * Gets the number of times the index returned by Consul went backwards and the cache had to resync.
+     */
+    public long getIndexResetCount() {
+        return indexResets.get();
+    }
+
+    /**
+     * Gets the number of blocking requests which returned in less than a second without their index moving forward.
+     * A steadily growing count means that the cache is polling Consul in a tight loop.
+     */
+    public long getTightLoopCount() {
+        return tightLoops.get();
+    }
+
+    private void updateCacheInfo(ConsulResponse<List<V>> consulResponse) {
+        Optional<ConsulResponse.CacheResponseInfo> cacheInfo = consulResponse.getCacheReponseInfo();
+        if (cacheInfo != null && cacheInfo.isPresent()) {
+            lastCacheInfo.set(cacheInfo.get());
+            if (cacheInfo.get().isCacheHit()) {
+                agentCacheHits.incrementAndGet();
+            } else {
+                agentCacheMisses.incrementAndGet();
+            }
+            eventHandler.cacheAgentCacheResponse(cacheDescriptor, cacheInfo.get().isCacheHit(), cacheInfo.get().getAgeInSeconds());
+        }
+    }
+
+    /**
+     * Gets the number of responses served from the cache of the agent.
+     */
+    public long getAgentCacheHitCount() {
+        return agentCacheHits.get();
+    }
+
+    /**
+     * Gets the number of responses the agent had to fetch from the servers while its cache was used.
+     */
+    public long getAgentCacheMissCount() {
+        return agentCacheMisses.get();
+    }
+
+    /**
+     * Switches the given options to the {@code cached} consistency mode when the agent cache is enabled
+     * in the {@link CacheConfig}, unless they already use it.
+     */
+    protected static QueryOptions agentCacheParams(QueryOptions queryOptions, CacheConfig cacheConfig) {
+        if (!cacheConfig.isAgentCacheEnabled() || CACHED.equals(queryOptions.getConsistencyMode().name())) {
+            return queryOptions;
+        }
+        ConsistencyMode cached = ConsistencyMode.createCachedConsistencyWithMaxAgeAndStale(
+                cacheConfig.getAgentCacheMaxAge().map(Duration::getSeconds),
+                cacheConfig.getAgentCacheStaleIfError().map(Duration::getSeconds));
+        return ImmutableQueryOptions.copyOf(queryOptions).withConsistencyMode(cached);
+    }
+
     protected static QueryOptions watchParams(final BigInteger index, final int blockSeconds,
                                               QueryOptions queryOptions) {
         checkArgument(!queryOptions.getIndex().isPresent() && !queryOptions.getWait().isPresent(),
                 "Index and wait cannot be overridden");
 
         ImmutableQueryOptions.Builder builder =  ImmutableQueryOptions.builder()
-                .from(watchDefaultParams(index, blockSeconds))
-                .token(queryOptions.getToken())
+                .from(watchDefaultParams(index, blockSeconds));
+        return readParams(builder, queryOptions).build();
+    }
+
+    /**
+     * Builds the options of a hash-based blocking query, for the agent endpoints which block on the
+     * {@code X-Consul-ContentHash} of the previous response rather than on an index.
+     */
+    protected static QueryOptions hashWatchParams(final String hash, final int blockSeconds,
+                                                  QueryOptions queryOptions) {
+        checkArgument(!queryOptions.getHash().isPresent() && !queryOptions.getWait().isPresent(),
+                "Hash and wait cannot be overridden");
+
+        ImmutableQueryOptions.Builder builder = ImmutableQueryOptions.builder()
+                .from(hash == null ? QueryOptions.BLANK : QueryOptions.blockSeconds(blockSeconds, hash).build());
+        return readParams(builder, queryOptions).build();
+    }
+
+    /**
+     * Copies the options of a watch which select the returned values, so that filtering happens on the server
+     * on every blocking request.
+     */
+    private static ImmutableQueryOptions.Builder readParams(ImmutableQueryOptions.Builder builder,
+                                                            QueryOptions queryOptions) {
+        builder.token(queryOptions.getToken())
                 .consistencyMode(queryOptions.getConsistencyMode())
                 .near(queryOptions.getNear())
-                .datacenter(queryOptions.getDatacenter());
+                .datacenter(queryOptions.getDatacenter())
+                .filter(queryOptions.getFilter())
+                .namespace(queryOptions.getNamespace());
         for (String tag : queryOptions.getTag()) {
             builder.addTag(tag);
         }
-        return builder.build();
+        for (String nodeMeta : queryOptions.getNodeMeta()) {
+            builder.addNodeMeta(nodeMeta);
+        }
+        return builder;
+    }
+
+    /**
+     * Gets the minimum time to wait after a response before making the next request.
+     * Caches watching endpoints which do not always block can override it to avoid polling them in a tight loop.
+     */
+    protected Duration minimumDurationBetweenRequests(ConsulResponse<List<V>> response, CacheConfig cacheConfig) {
+        return cacheConfig.getMinimumDurationBetweenRequests();
     }
 
     private static QueryOptions watchDefaultParams(final BigInteger index, final int blockSeconds) {
@@ -299,10 +676,65 @@ public class ConsulCache<K, V> implements AutoCloseable {
         }
     }
 
+    /**
+     * Wraps the given consumer so that its blocking queries are shared with every other cache
+     * watching the same key, when watch multiplexing is enabled in the {@link CacheConfig}.
+     *
+     * @param multiplexer the multiplexer shared by the caches of a {@link com.orbitz.consul.Consul} instance
+     * @param cacheConfig the cache configuration
+     * @param consumer the consumer issuing the actual blocking query
+     * @param watchKey the elements identifying the watch (endpoint, key, query options...)
+     */
+    protected static <V> CallbackConsumer<V> shareWatch(WatchMultiplexer multiplexer, CacheConfig cacheConfig,
+                                                        CallbackConsumer<V> consumer, Object... watchKey) {
+        if (multiplexer == null || !cacheConfig.isWatchMultiplexingEnabled()) {
+            return new KeyedCallbackConsumer<>(Arrays.asList(watchKey), consumer);
+        }
+        return multiplexer.subscribe(Arrays.asList(watchKey), consumer);
+    }
+
+    private static List<Object> watchKey(CallbackConsumer<?> consumer) {
+        if (consumer instanceof KeyedCallbackConsumer) {
+            return ((KeyedCallbackConsumer<?>) consumer).watchKey;
+        }
+        if (consumer instanceof WatchMultiplexer.Subscription) {
+            return ((WatchMultiplexer.Subscription<?>) consumer).getWatchKey();
+        }
+        return null;
+    }
+
+    /**
+     * A consumer which is not shared, remembering the key of its watch.
+     */
+    private static final class KeyedCallbackConsumer<V> implements CallbackConsumer<V> {
+        private final List<Object> watchKey;
+        private final CallbackConsumer<V> delegate;
+
+        private KeyedCallbackConsumer(List<Object> watchKey, CallbackConsumer<V> delegate) {
+            this.watchKey = watchKey;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void consume(BigInteger index, ConsulResponseCallback<List<V>> callback) {
+            delegate.consume(index, callback);
+        }
+    }
+
     protected static Scheduler createDefault() {
         return new DefaultScheduler();
     }
 
+    protected static Scheduler createDefault(CacheConfig cacheConfig) {
+        if (cacheConfig.getTimerWheel().isPresent()) {
+            return new TimerWheelScheduler(cacheConfig.getTimerWheel().get());
+        }
+        if (cacheConfig.getExecutionMode() == ExecutionMode.VIRTUAL_THREADS) {
+            return new VirtualThreadScheduler();
+        }
+        return createDefault();
+    }
+
     protected static Scheduler createExternal(ScheduledExecutorService executor) {
         return new ExternalScheduler(executor);
     }
@@ -316,6 +748,58 @@ public class ConsulCache<K, V> implements AutoCloseable {
         void consume(BigInteger index, ConsulResponseCallback<List<V>> callback);
     }
 
+    /**
+     * A consumer blocking on the content hash of the previous response instead of its index.
+     *
+     * @param <V>
+     */
+    protected interface HashCallbackConsumer<V> {
+        void consume(String hash, ConsulResponseCallback<List<V>> callback);
+    }
+
+    /**
+     * Adapts a {@link HashCallbackConsumer} to the cache, remembering the content hash of each response
+     * to pass it to the next request. The hash is forgotten when the cache starts over without an index.
+     */
+    protected static <V> CallbackConsumer<V> blockOnContentHash(HashCallbackConsumer<V> consumer) {
+        AtomicReference<String> contentHash = new AtomicReference<>();
+        return (index, callback) -> {
+            if (index == null) {
+                contentHash.set(null);
+            }
+            consumer.consume(contentHash.get(), new ConsulResponseCallback<List<V>>() {
+                @Override
+                public void onComplete(ConsulResponse<List<V>> consulResponse) {
+                    contentHash.set(consulResponse.getContentHash().orElse(null));
+                    callback.onComplete(consulResponse);
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    callback.onFailure(throwable);
+                }
+            });
+        };
+    }
+
+    /**
+     * Adapts a callback of the values of a list endpoint to endpoints returning a map of the values by their ID.
+     */
+    static <V> ConsulResponseCallback<Map<String, V>> mapValuesCallback(ConsulResponseCallback<List<V>> callback) {
+        return new ConsulResponseCallback<Map<String, V>>() {
+            @Override
+            public void onComplete(ConsulResponse<Map<String, V>> response) {
+                List<V> values = response.getResponse() == null ? null : ImmutableList.copyOf(response.getResponse().values());
+                callback.onComplete(response.withResponse(values));
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                callback.onFailure(throwable);
+            }
+        };
+    }
+
     /**
      * Implementers can register a listener to receive
      * a new map when it changes
@@ -326,37 +810,87 @@ public class ConsulCache<K, V> implements AutoCloseable {
         void notify(Map<K, V> newValues);
     }
 
+    /**
+     * Implementers can register a delta listener to receive only
+     * the entries that changed since the previous snapshot.
+     * <p>
+     * The {@link ChangeSet} is computed once per update and shared by all delta listeners.
+     * A listener added to a started cache is first notified with every cached entry as added.
+     *
+     * @param <V>
+     */
+    public interface DeltaListener<K, V> {
+        void notify(ChangeSet<K, V> changes);
+    }
+
     public boolean addListener(Listener<K, V> listener) {
-        Boolean locked = false;
-        boolean added;
-        if (state.get() == State.starting) {
-            listenersStartingLock.lock();
-            locked = true;
+        listenersLock.lock();
+        try {
+            ListenerDispatcher<K, V> dispatcher = ListenerDispatcher.create(listener, cacheConfig);
+            boolean added = listeners.add(dispatcher);
+            ImmutableMap<K, V> current = lastResponse.get();
+            if (current != null && isRunning()) {
+                dispatcher.dispatch(current);
+            }
+            return added;
+        }
+        finally {
+            listenersLock.unlock();
+        }
+    }
+
+    public List<Listener<K, V>> getListeners() {
+        return Collections.unmodifiableList(listeners.stream()
+                .map(ListenerDispatcher::getListener)
+                .collect(Collectors.toList()));
+    }
+
+    public boolean removeListener(Listener<K, V> listener) {
+        for (ListenerDispatcher<K, V> dispatcher : listeners) {
+            if (dispatcher.getListener().equals(listener)) {
+                return listeners.remove(dispatcher);
+            }
         }
+        return false;
+    }
+
+    /**
+     * Gets the notification metrics of a listener.
+     *
+     * @return the metrics, or {@link Optional#empty()} if the listener was not added to the cache
+     */
+    public Optional<ListenerStats> getListenerStats(Listener<K, V> listener) {
+        return listeners.stream()
+                .filter(dispatcher -> dispatcher.getListener().equals(listener))
+                .findFirst()
+                .map(ListenerDispatcher::getStats);
+    }
+
+    public boolean addDeltaListener(DeltaListener<K, V> listener) {
+        listenersLock.lock();
         try {
-            added = listeners.add(listener);
-            if (state.get() == State.started) {
+            boolean added = deltaListeners.add(listener);
+            ImmutableMap<K, V> current = lastResponse.get();
+            if (current != null && isRunning()) {
                 try {
-                    listener.notify(lastResponse.get());
+                    listener.notify(ChangeSet.initial(current, latestIndex.get()));
                 } catch (RuntimeException e) {
-                    LOGGER.warn("ConsulCache Listener's notify method threw an exception.", e);
+                    LOGGER.warn("ConsulCache DeltaListener's notify method threw an exception.", e);
                 }
             }
+            return added;
         }
         finally {
-            if (locked) {
-                listenersStartingLock.unlock();
-            }
+            listenersLock.unlock();
         }
-        return added;
     }
 
-    public List<Listener<K, V>> getListeners() {
-        return Collections.unmodifiableList(listeners);
+    public List<DeltaListener<K, V>> getDeltaListeners() {
+        return Collections.unmodifiableList(deltaListeners);
     }
 
-    public boolean removeListener(Listener<K, V> listener) {
-        return listeners.remove(listener);
+    public boolean removeDeltaListener(DeltaListener<K, V> listener) {
+        return deltaListeners.remove(listener);
     }
 
     @VisibleForTesting
@@ -364,11 +898,25 @@ public class ConsulCache<K, V> implements AutoCloseable {
         return state.get();
     }
 
+    /**
+     * Gets the configuration of the cache, for the views built on top of it.
+     */
+    CacheConfig getCacheConfig() {
+        return cacheConfig;
+    }
+
     protected static class Scheduler {
         public Scheduler(ScheduledExecutorService executor) {
             this.executor = executor;
         }
 
+        /**
+         * For schedulers that are not backed by a {@link ScheduledExecutorService}.
+         */
+        protected Scheduler() {
+            this(null);
+        }
+
         void schedule(Runnable r, long delay, TimeUnit unit) {
             executor.schedule(r, delay, unit);
         }
@@ -377,7 +925,18 @@ public class ConsulCache<K, V> implements AutoCloseable {
             executor.shutdownNow();
         }
 
-        private final ScheduledExecutorService executor;
+        protected final ScheduledExecutorService executor;
+    }
+
+    /**
+     * The thread writing the snapshots of all the caches, created on the first write.
+     */
+    private static final class SnapshotWriter {
+        private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("consulCacheSnapshotWriter-%d")
+                        .setDaemon(true)
+                        .build());
     }
 
     private static class DefaultScheduler extends Scheduler {
@@ -390,6 +949,113 @@ public class ConsulCache<K, V> implements AutoCloseable {
         }
     }
 
+    /**
+     * Schedules callbacks on a timer shared by several caches, and runs them on another executor
+     * so that the timer thread is never blocked by a cache callback.
+     * Stopping a cache only cancels the callbacks it scheduled.
+     */
+    static class SharedTimerScheduler extends Scheduler {
+        private final Executor callbackExecutor;
+        private final Set<ScheduledFuture<?>> pending = ConcurrentHashMap.newKeySet();
+        private volatile boolean shutdown;
+
+        SharedTimerScheduler(ScheduledExecutorService timer, Executor callbackExecutor) {
+            super(timer);
+            this.callbackExecutor = callbackExecutor;
+        }
+
+        @Override
+        void schedule(Runnable r, long delay, TimeUnit unit) {
+            if (shutdown) {
+                return;
+            }
+            AtomicReference<ScheduledFuture<?>> self = new AtomicReference<>();
+            ScheduledFuture<?> future = executor.schedule(() -> {
+                pending.remove(self.get());
+                if (!shutdown) {
+                    callbackExecutor.execute(r);
+                }
+            }, delay, unit);
+            self.set(future);
+            pending.add(future);
+            if (future.isDone()) {
+                pending.remove(future);
+            }
+        }
+
+        @Override
+        void shutdownNow() {
+            shutdown = true;
+            for (ScheduledFuture<?> future : pending) {
+                future.cancel(false);
+            }
+            pending.clear();
+        }
+    }
+
+    private static class VirtualThreadScheduler extends SharedTimerScheduler {
+        private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("consulCacheTimer-%d")
+                        .setDaemon(true)
+                        .build());
+        private static final Executor CALLBACK_EXECUTOR = VirtualThreads.newThreadPerTaskExecutor("consulCacheScheduledCallback-");
+
+        public VirtualThreadScheduler() {
+            super(TIMER, CALLBACK_EXECUTOR);
+        }
+    }
+
+    /**
+     * Schedules callbacks on a {@link HashedWheelTimer} shared by several caches.
+     * Stopping a cache only cancels the callbacks it scheduled, the timer itself is left running.
+     */
+    static class TimerWheelScheduler extends Scheduler {
+        private final HashedWheelTimer timer;
+        private final Set<HashedWheelTimer.Timeout> pending = ConcurrentHashMap.newKeySet();
+        private volatile boolean shutdown;
+
+        TimerWheelScheduler(HashedWheelTimer timer) {
+            this.timer = timer;
+        }
+
+        @Override
+        void schedule(Runnable r, long delay, TimeUnit unit) {
+            if (shutdown) {
+                return;
+            }
+            AtomicReference<HashedWheelTimer.Timeout> self = new AtomicReference<>();
+            HashedWheelTimer.Timeout timeout;
+            try {
+                timeout = timer.newTimeout(() -> {
+                    pending.remove(self.get());
+                    if (!shutdown) {
+                        r.run();
+                    }
+                }, delay, unit);
+            } catch (IllegalStateException e) {
+                // the timer was stopped by the application: nothing will run anymore
+                LOGGER.debug("Timer wheel is stopped, callback is discarded.", e);
+                shutdown = true;
+                return;
+            }
+            self.set(timeout);
+            pending.add(timeout);
+            if (timeout.isExpired()) {
+                pending.remove(timeout);
+            }
+        }
+
+        @Override
+        void shutdownNow() {
+            shutdown = true;
+            for (HashedWheelTimer.Timeout timeout : pending) {
+                timeout.cancel();
+            }
+            pending.clear();
+        }
+    }
+
     private static class ExternalScheduler extends Scheduler {
 
         public ExternalScheduler(ScheduledExecutorService executor) {
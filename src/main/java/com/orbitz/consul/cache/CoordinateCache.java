@@ -0,0 +1,181 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+import com.orbitz.consul.CoordinateClient;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.coordinate.Coord;
+import com.orbitz.consul.model.coordinate.Coordinate;
+import com.orbitz.consul.model.health.ServiceHealth;
+import com.orbitz.consul.option.QueryOptions;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A cache of the network coordinates of the nodes of a datacenter, estimating the round trip time between nodes
+ * as Consul does, without a request per estimate.
+ * <p>
+ * Coordinates change often on large clusters: {@link CacheConfig#getMinimumDurationBetweenRequests()} can be used
+ * to refresh them less often.
+ */
+public class CoordinateCache extends ConsulCache<String, Coordinate> {
+
+    private static final double SECONDS_TO_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private CoordinateCache(CoordinateClient coordinateClient,
+                            QueryOptions queryOptions,
+                            int watchSeconds,
+                            Scheduler callbackScheduler) {
+        super(Coordinate::getNode,
+              shareWatch(coordinateClient.getWatchMultiplexer(), coordinateClient.getConfig().getCacheConfig(),
+                  (index, callback) -> {
+                      checkWatch(coordinateClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
+                      coordinateClient.getNodeCoordinates(watchParams(index, watchSeconds, queryOptions), callback);
+                  },
+                  "coordinate.nodes", watchSeconds, queryOptions),
+              coordinateClient.getConfig().getCacheConfig(),
+              coordinateClient.getEventHandler(),
+              new CacheDescriptor("coordinate.nodes"),
+              callbackScheduler);
+    }
+
+    @Override
+    protected Optional<Class<? extends Coordinate>> snapshotValueType() {
+        return Optional.of(Coordinate.class);
+    }
+
+    /**
+     * Estimates the round trip time between two coordinates, as Consul does.
+     *
+     * @throws IllegalArgumentException if the coordinates do not have the same dimensions
+     */
+    public static Duration estimateRtt(Coord from, Coord to) {
+        double[] a = from.getVec();
+        double[] b = to.getVec();
+        Preconditions.checkArgument(a.length == b.length, "Coordinates dimensions do not match");
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            double diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        double distance = Math.sqrt(sum) + from.getHeight() + to.getHeight();
+        double adjusted = distance + from.getAdjustment() + to.getAdjustment();
+        if (adjusted > 0) {
+            distance = adjusted;
+        }
+        return Duration.ofNanos(Math.round(distance * SECONDS_TO_NANOS));
+    }
+
+    /**
+     * Estimates the round trip time between two nodes.
+     *
+     * @return the estimate, or {@link Optional#empty()} if the coordinates of a node are unknown
+     */
+    public Optional<Duration> getRtt(String fromNode, String toNode) {
+        Map<String, Coordinate> coordinates = getMap();
+        Coordinate from = coordinates == null ? null : coordinates.get(fromNode);
+        Coordinate to = coordinates == null ? null : coordinates.get(toNode);
+        if (from == null || to == null || from.getCoord().getVec().length != to.getCoord().getVec().length) {
+            return Optional.empty();
+        }
+        return Optional.of(estimateRtt(from.getCoord(), to.getCoord()));
+    }
+
+    /**
+     * Gets the {@code count} instances of a {@link ServiceHealthCache} with the lowest estimated round trip time
+     * from a node, nearest first.
+     *
+     * @param fromNode the node of the caller, usually the node of the local agent
+     */
+    public List<ServiceHealth> nearest(String fromNode, ServiceHealthCache cache, int count) {
+        Map<ServiceHealthKey, ServiceHealth> instances = cache.getMap();
+        return nearest(fromNode, instances == null ? new ArrayList<>() : instances.values(),
+                serviceHealth -> serviceHealth.getNode().getNode(), count);
+    }
+
+    /**
+     * Gets the {@code count} candidates with the lowest estimated round trip time from a node, nearest first.
+     * Candidates on nodes without known coordinates come last, in their original order.
+     *
+     * @param fromNode the node of the caller, usually the node of the local agent
+     * @param candidates the candidates
+     * @param nodeOf the name of the node of a candidate
+     * @param count the maximum number of candidates to return
+     */
+    public <T> List<T> nearest(String fromNode, Collection<T> candidates, Function<T, String> nodeOf, int count) {
+        Preconditions.checkArgument(count >= 0, "Count must be positive");
+        Map<String, Coordinate> coordinates = getMap();
+        Coordinate from = coordinates == null ? null : coordinates.get(fromNode);
+
+        // keeps the nearest candidates in a heap whose head is the farthest one
+        Comparator<Ranked<T>> order = Comparator.<Ranked<T>>comparingDouble(ranked -> ranked.rtt)
+                .thenComparingInt(ranked -> ranked.position);
+        PriorityQueue<Ranked<T>> heap = new PriorityQueue<>(Math.max(1, count), order.reversed());
+        int position = 0;
+        for (T candidate : candidates) {
+            Coordinate to = from == null ? null : coordinates.get(nodeOf.apply(candidate));
+            double rtt = to == null || to.getCoord().getVec().length != from.getCoord().getVec().length
+                    ? Double.POSITIVE_INFINITY
+                    : estimateRtt(from.getCoord(), to.getCoord()).toNanos();
+            Ranked<T> ranked = new Ranked<>(candidate, rtt, position++);
+            if (heap.size() < count) {
+                heap.add(ranked);
+            } else if (count > 0 && order.compare(ranked, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(ranked);
+            }
+        }
+
+        List<Ranked<T>> nearest = new ArrayList<>(heap);
+        nearest.sort(order);
+        List<T> result = new ArrayList<>(nearest.size());
+        nearest.forEach(ranked -> result.add(ranked.candidate));
+        return result;
+    }
+
+    private static final class Ranked<T> {
+        private final T candidate;
+        private final double rtt;
+        private final int position;
+
+        private Ranked(T candidate, double rtt, int position) {
+            this.candidate = candidate;
+            this.rtt = rtt;
+            this.position = position;
+        }
+    }
+
+    public static CoordinateCache newCache(
+            final CoordinateClient coordinateClient,
+            final QueryOptions queryOptions,
+            final int watchSeconds,
+            final ScheduledExecutorService callbackExecutorService) {
+
+        Scheduler scheduler = createExternal(callbackExecutorService);
+        return new CoordinateCache(coordinateClient, queryOptions, watchSeconds, scheduler);
+    }
+
+    public static CoordinateCache newCache(
+            final CoordinateClient coordinateClient,
+            final QueryOptions queryOptions,
+            final int watchSeconds) {
+        return new CoordinateCache(coordinateClient, queryOptions, watchSeconds,
+                createDefault(coordinateClient.getConfig().getCacheConfig()));
+    }
+
+    public static CoordinateCache newCache(final CoordinateClient coordinateClient) {
+        CacheConfig cacheConfig = coordinateClient.getConfig().getCacheConfig();
+        int watchSeconds = Ints.checkedCast(cacheConfig.getWatchDuration().getSeconds());
+        return newCache(coordinateClient, QueryOptions.BLANK, watchSeconds);
+    }
+}
@@ -0,0 +1,283 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A timer wheel shared by many caches, with a single thread and O(1) scheduling and cancellation.
+ * <p>
+ * Deadlines are rounded up to the next tick, so the precision of the timer is its tick duration.
+ * This is well suited to cache rescheduling, where delays are in the order of seconds.
+ * <p>
+ * The timer is not owned by the caches using it: it must be stopped by the application
+ * once all these caches are stopped.
+ */
+public class HashedWheelTimer implements AutoCloseable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    static final Duration DEFAULT_TICK_DURATION = Duration.ofMillis(100);
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+    private final ExecutorService ownedExecutor;
+    private final Thread worker;
+    private final long startTime;
+
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+    private final AtomicLong expiredTimeouts = new AtomicLong();
+    private final AtomicLong totalDriftNanos = new AtomicLong();
+    private final AtomicLong maxDriftNanos = new AtomicLong();
+
+    private long tick;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a timer with a tick of 100 ms and 512 buckets, running its tasks on a pool of daemon threads
+     * which is shut down with the timer.
+     */
+    public HashedWheelTimer() {
+        this(DEFAULT_TICK_DURATION, DEFAULT_WHEEL_SIZE, Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("consulCacheTimerWheelTask-%d")
+                        .setDaemon(true)
+                        .build()), true);
+    }
+
+    /**
+     * Creates a timer.
+     *
+     * @param tickDuration the precision of the timer.
+     * @param wheelSize the number of buckets of the wheel, rounded up to a power of two.
+     * @param taskExecutor the executor running the expired tasks; tasks run on the timer thread
+     *                     when it is {@code Runnable::run}, so they must not block.
+     */
+    public HashedWheelTimer(Duration tickDuration, int wheelSize, Executor taskExecutor) {
+        this(tickDuration, wheelSize, taskExecutor, false);
+    }
+
+    private HashedWheelTimer(Duration tickDuration, int wheelSize, Executor taskExecutor, boolean ownsExecutor) {
+        Preconditions.checkNotNull(tickDuration, "Tick duration cannot be null");
+        Preconditions.checkArgument(!tickDuration.isNegative() && !tickDuration.isZero(), "Tick duration must be positive");
+        Preconditions.checkArgument(wheelSize > 0 && wheelSize <= 1 << 30, "Wheel size must be between 1 and 2^30");
+        this.taskExecutor = Preconditions.checkNotNull(taskExecutor, "Task executor cannot be null");
+        this.ownedExecutor = ownsExecutor ? (ExecutorService) taskExecutor : null;
+        this.tickNanos = tickDuration.toNanos();
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+
+        this.startTime = System.nanoTime();
+        this.worker = new ThreadFactoryBuilder()
+                .setNameFormat("consulCacheTimerWheel-%d")
+                .setDaemon(true)
+                .build()
+                .newThread(this::run);
+        this.worker.start();
+    }
+
+    /**
+     * Gets the number of tasks waiting for their deadline.
+     */
+    public long getPendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    /**
+     * Gets the number of tasks that reached their deadline since the timer was created.
+     */
+    public long getExpiredTimeouts() {
+        return expiredTimeouts.get();
+    }
+
+    /**
+     * Gets the average delay between the deadline of a task and the moment it was run.
+     */
+    public Duration getAverageDrift() {
+        long expired = expiredTimeouts.get();
+        return expired == 0 ? Duration.ZERO : Duration.ofNanos(totalDriftNanos.get() / expired);
+    }
+
+    /**
+     * Gets the maximum delay between the deadline of a task and the moment it was run.
+     */
+    public Duration getMaximumDrift() {
+        return Duration.ofNanos(maxDriftNanos.get());
+    }
+
+    /**
+     * Stops the timer thread. Pending tasks are discarded.
+     */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        Preconditions.checkState(!stopped, "Timer is stopped");
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(delay, 0)));
+        synchronized (this) {
+            long calculated = (timeout.deadline - startTime) / tickNanos;
+            long ticks = Math.max(calculated, tick);
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+        pendingTimeouts.incrementAndGet();
+        return timeout;
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.bucket == null) {
+            return false;
+        }
+        timeout.bucket.remove(timeout);
+        pendingTimeouts.decrementAndGet();
+        return true;
+    }
+
+    private void run() {
+        List<Timeout> expired = new ArrayList<>();
+        while (!stopped) {
+            long now = waitForNextTick();
+            if (stopped) {
+                break;
+            }
+            synchronized (this) {
+                wheel[(int) (tick & mask)].expire(now, expired);
+                tick++;
+            }
+            for (Timeout timeout : expired) {
+                timeout.expired = true;
+                pendingTimeouts.decrementAndGet();
+                expiredTimeouts.incrementAndGet();
+                long drift = Math.max(0, now - timeout.deadline);
+                totalDriftNanos.addAndGet(drift);
+                maxDriftNanos.accumulateAndGet(drift, Math::max);
+                try {
+                    taskExecutor.execute(timeout.task);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Timer wheel task threw an exception.", e);
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = startTime + (tick + 1) * tickNanos;
+        long now = System.nanoTime();
+        while (now < deadline && !stopped) {
+            LockSupport.parkNanos(this, deadline - now);
+            now = System.nanoTime();
+        }
+        return now;
+    }
+
+    /**
+     * A task registered in the wheel.
+     */
+    final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+        private volatile boolean expired;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task if it did not run yet.
+         *
+         * @return {@code true} if the task was cancelled.
+         */
+        boolean cancel() {
+            return HashedWheelTimer.this.cancel(this);
+        }
+
+        /**
+         * Tells whether the deadline of the task was reached, in which case it was handed to the task executor.
+         */
+        boolean isExpired() {
+            return expired;
+        }
+    }
+
+    /**
+     * A doubly-linked list of timeouts, only accessed while holding the timer lock.
+     */
+    private static final class Bucket {
+        private Timeout head;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.next = head;
+            if (head != null) {
+                head.previous = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        void expire(long now, List<Timeout> expired) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+                    remove(timeout);
+                    expired.add(timeout);
+                } else if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package com.orbitz.consul.cache;
 
+import com.google.common.base.Equivalence;
 import com.google.common.primitives.Ints;
 import com.orbitz.consul.HealthClient;
 import com.orbitz.consul.config.CacheConfig;
 import com.orbitz.consul.model.health.HealthCheck;
 import com.orbitz.consul.option.QueryOptions;
 
+import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Function;
 
@@ -18,17 +20,29 @@ public class HealthCheckCache extends ConsulCache<String, HealthCheck> {
                              Function<HealthCheck, String> keyExtractor,
                              Scheduler callbackScheduler) {
         super(keyExtractor,
-            (index, callback) -> {
-                checkWatch(healthClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
-                QueryOptions params = watchParams(index, watchSeconds, queryOptions);
-                healthClient.getChecksByState(state, params, callback);
-            },
+            shareWatch(healthClient.getWatchMultiplexer(), healthClient.getConfig().getCacheConfig(),
+                (index, callback) -> {
+                    checkWatch(healthClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
+                    QueryOptions params = watchParams(index, watchSeconds, queryOptions);
+                    healthClient.getChecksByState(state, params, callback);
+                },
+                "health.state", state, watchSeconds, queryOptions),
             healthClient.getConfig().getCacheConfig(),
             healthClient.getEventHandler(),
             new CacheDescriptor("health.state", state.getName()),
             callbackScheduler);
     }
 
+    @Override
+    protected Equivalence<HealthCheck> valueEquivalence() {
+        return modifyIndexEquivalence(HealthCheck::getModifyIndex);
+    }
+
+    @Override
+    protected Optional<Class<? extends HealthCheck>> snapshotValueType() {
+        return Optional.of(HealthCheck.class);
+    }
+
     /**
      * Factory method to construct a string/{@link HealthCheck} map for a particular {@link com.orbitz.consul.model.State}.
      * <p/>
@@ -57,7 +71,7 @@ public class HealthCheckCache extends ConsulCache<String, HealthCheck> {
             final QueryOptions queryOptions,
             final Function<HealthCheck, String> keyExtractor) {
 
-        return new HealthCheckCache(healthClient, state, watchSeconds, queryOptions, keyExtractor, createDefault());
+        return new HealthCheckCache(healthClient, state, watchSeconds, queryOptions, keyExtractor, createDefault(healthClient.getConfig().getCacheConfig()));
     }
     public static HealthCheckCache newCache(
             final HealthClient healthClient,
@@ -0,0 +1,194 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Secondary indexes of the instances of a service cache, by tag, meta key/value, node and datacenter,
+ * updated with the {@link ChangeSet} of each response.
+ * <p>
+ * Updates only touch the buckets of the changed instances. The immutable view of a bucket is built on the first
+ * query after the bucket changed and shared by the following queries, so that repeated queries do not copy.
+ *
+ * @param <K> the type of the keys of the cache
+ * @param <V> the type of the instances
+ */
+final class InstanceIndex<K, V> {
+
+    private final Function<V, ? extends Collection<String>> tagsOf;
+    private final Function<V, Map<String, String>> metaOf;
+    private final Function<V, String> nodeOf;
+    private final Function<V, Optional<String>> datacenterOf;
+
+    private final Map<K, V> instances = new HashMap<>();
+    private final Buckets<String> byTag = new Buckets<>();
+    private final Buckets<Map.Entry<String, String>> byMeta = new Buckets<>();
+    private final Buckets<String> byNode = new Buckets<>();
+    private final Buckets<String> byDatacenter = new Buckets<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    InstanceIndex(Function<V, ? extends Collection<String>> tagsOf,
+                  Function<V, Map<String, String>> metaOf,
+                  Function<V, String> nodeOf,
+                  Function<V, Optional<String>> datacenterOf) {
+        this.tagsOf = tagsOf;
+        this.metaOf = metaOf;
+        this.nodeOf = nodeOf;
+        this.datacenterOf = datacenterOf;
+    }
+
+    void apply(ChangeSet<K, V> changes) {
+        lock.writeLock().lock();
+        try {
+            changes.getRemoved().keySet().forEach(this::remove);
+            changes.getUpdated().keySet().forEach(this::remove);
+            changes.getAdded().forEach(this::add);
+            changes.getUpdated().forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(K key, V instance) {
+        instances.put(key, instance);
+        for (String tag : tagsOf.apply(instance)) {
+            byTag.add(tag, key, instance);
+        }
+        for (Map.Entry<String, String> meta : metaOf.apply(instance).entrySet()) {
+            byMeta.add(Maps.immutableEntry(meta.getKey(), meta.getValue()), key, instance);
+        }
+        byNode.add(nodeOf.apply(instance), key, instance);
+        datacenterOf.apply(instance).ifPresent(datacenter -> byDatacenter.add(datacenter, key, instance));
+    }
+
+    private void remove(K key) {
+        V instance = instances.remove(key);
+        if (instance == null) {
+            return;
+        }
+        for (String tag : tagsOf.apply(instance)) {
+            byTag.remove(tag, key);
+        }
+        for (Map.Entry<String, String> meta : metaOf.apply(instance).entrySet()) {
+            byMeta.remove(Maps.immutableEntry(meta.getKey(), meta.getValue()), key);
+        }
+        byNode.remove(nodeOf.apply(instance), key);
+        datacenterOf.apply(instance).ifPresent(datacenter -> byDatacenter.remove(datacenter, key));
+    }
+
+    ImmutableMap<K, V> withTag(String tag) {
+        return read(byTag, tag);
+    }
+
+    /**
+     * Gets the instances having all the given tags, scanning the smallest bucket only.
+     */
+    ImmutableMap<K, V> withTags(Collection<String> tags) {
+        if (tags.isEmpty()) {
+            return all();
+        }
+        lock.readLock().lock();
+        try {
+            Map<K, V> smallest = null;
+            for (String tag : tags) {
+                Map<K, V> bucket = byTag.bucket(tag);
+                if (smallest == null || bucket.size() < smallest.size()) {
+                    smallest = bucket;
+                }
+            }
+            ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+            for (Map.Entry<K, V> entry : smallest.entrySet()) {
+                boolean all = true;
+                for (String tag : tags) {
+                    if (!byTag.bucket(tag).containsKey(entry.getKey())) {
+                        all = false;
+                        break;
+                    }
+                }
+                if (all) {
+                    builder.put(entry);
+                }
+            }
+            return builder.build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    ImmutableMap<K, V> withMeta(String key, String value) {
+        return read(byMeta, Maps.immutableEntry(key, value));
+    }
+
+    ImmutableMap<K, V> onNode(String node) {
+        return read(byNode, node);
+    }
+
+    ImmutableMap<K, V> inDatacenter(String datacenter) {
+        return read(byDatacenter, datacenter);
+    }
+
+    private ImmutableMap<K, V> all() {
+        lock.readLock().lock();
+        try {
+            return ImmutableMap.copyOf(instances);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <A> ImmutableMap<K, V> read(Buckets<A> buckets, A attribute) {
+        lock.readLock().lock();
+        try {
+            return buckets.view(attribute);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The instances by value of an attribute. Buckets are changed under the write lock and viewed under the read
+     * lock; the views are cached until their bucket changes.
+     */
+    private final class Buckets<A> {
+        private final Map<A, Map<K, V>> buckets = new HashMap<>();
+        private final Map<A, ImmutableMap<K, V>> views = new ConcurrentHashMap<>();
+
+        void add(A attribute, K key, V instance) {
+            buckets.computeIfAbsent(attribute, a -> new HashMap<>()).put(key, instance);
+            views.remove(attribute);
+        }
+
+        void remove(A attribute, K key) {
+            Map<K, V> bucket = buckets.get(attribute);
+            if (bucket != null) {
+                bucket.remove(key);
+                if (bucket.isEmpty()) {
+                    buckets.remove(attribute);
+                }
+            }
+            views.remove(attribute);
+        }
+
+        Map<K, V> bucket(A attribute) {
+            return buckets.getOrDefault(attribute, Collections.emptyMap());
+        }
+
+        ImmutableMap<K, V> view(A attribute) {
+            Map<K, V> bucket = buckets.get(attribute);
+            if (bucket == null) {
+                return ImmutableMap.of();
+            }
+            return views.computeIfAbsent(attribute, a -> ImmutableMap.copyOf(bucket));
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package com.orbitz.consul.cache;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Equivalence;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.primitives.Ints;
 import com.orbitz.consul.KeyValueClient;
+import com.orbitz.consul.async.ConsulResponseCallback;
 import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.kv.CompactValue;
 import com.orbitz.consul.model.kv.Value;
 import com.orbitz.consul.option.QueryOptions;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Function;
 
 public class KVCache extends ConsulCache<String, Value> {
 
+    private final boolean compactValues;
+    private final SortedKeyIndex<Value> sortedIndex = new SortedKeyIndex<>();
+
     private KVCache(KeyValueClient kvClient,
                     String rootPath,
                     String keyPath,
@@ -20,15 +31,79 @@ public class KVCache extends ConsulCache<String, Value> {
                     QueryOptions queryOptions,
                     Scheduler callbackScheduler) {
         super(getKeyExtractorFunction(keyPath),
-            (index, callback) -> {
-                checkWatch(kvClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
-                QueryOptions params = watchParams(index, watchSeconds, queryOptions);
-                kvClient.getValues(keyPath, params, callback);
-            },
+            shareWatch(kvClient.getWatchMultiplexer(), kvClient.getConfig().getCacheConfig(),
+                (index, callback) -> {
+                    checkWatch(kvClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
+                    QueryOptions params = watchParams(index, watchSeconds, queryOptions);
+                    if (kvClient.getConfig().getCacheConfig().isCompactKeyValuesEnabled()) {
+                        kvClient.getCompactValues(keyPath, params, compactCallback(callback));
+                    } else {
+                        kvClient.getValues(keyPath, params, callback);
+                    }
+                },
+                "keyvalue", keyPath, watchSeconds, queryOptions,
+                kvClient.getConfig().getCacheConfig().isCompactKeyValuesEnabled()),
             kvClient.getConfig().getCacheConfig(),
             kvClient.getEventHandler(),
             new CacheDescriptor("keyvalue", rootPath),
             callbackScheduler);
+        this.compactValues = kvClient.getConfig().getCacheConfig().isCompactKeyValuesEnabled();
+        addDeltaListener(sortedIndex::apply);
+    }
+
+    /**
+     * Gets the entries of the cache sorted by key.
+     */
+    public ImmutableSortedMap<String, Value> getSortedMap() {
+        return sortedIndex.all();
+    }
+
+    /**
+     * Gets the entries of the cache whose key starts with the given prefix, sorted by key.
+     * The cost of the lookup depends on the number of matching entries, not on the size of the cache.
+     *
+     * @param prefix the prefix of the keys, relative to the root path as the keys of {@link #getMap()}
+     * @return the matching entries
+     */
+    public ImmutableSortedMap<String, Value> subMap(String prefix) {
+        return sortedIndex.withPrefix(Preconditions.checkNotNull(prefix, "Prefix cannot be null"));
+    }
+
+    /**
+     * Gets the entries of the cache whose key is between {@code fromKey} (inclusive) and {@code toKey} (exclusive),
+     * sorted by key.
+     *
+     * @throws IllegalArgumentException if {@code fromKey} is greater than {@code toKey}
+     */
+    public ImmutableSortedMap<String, Value> range(String fromKey, String toKey) {
+        Preconditions.checkNotNull(fromKey, "From key cannot be null");
+        Preconditions.checkNotNull(toKey, "To key cannot be null");
+        return sortedIndex.range(fromKey, toKey);
+    }
+
+    @Override
+    protected Equivalence<Value> valueEquivalence() {
+        return modifyIndexEquivalence(value -> Optional.of(value.getModifyIndex()));
+    }
+
+    @Override
+    protected Optional<Class<? extends Value>> snapshotValueType() {
+        return Optional.of(compactValues ? CompactValue.class : Value.class);
+    }
+
+    private static ConsulResponseCallback<List<CompactValue>> compactCallback(ConsulResponseCallback<List<Value>> callback) {
+        return new ConsulResponseCallback<List<CompactValue>>() {
+            @Override
+            public void onComplete(ConsulResponse<List<CompactValue>> response) {
+                List<Value> values = response.getResponse() == null ? null : Collections.unmodifiableList(response.getResponse());
+                callback.onComplete(response.withResponse(values));
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                callback.onFailure(throwable);
+            }
+        };
     }
 
     @VisibleForTesting
@@ -37,17 +112,21 @@ public class KVCache extends ConsulCache<String, Value> {
             Preconditions.checkNotNull(input, "Input to key extractor is null");
             Preconditions.checkNotNull(input.getKey(), "Input to key extractor has no key");
 
-            if (rootPath.equals(input.getKey())) {
-                return "";
-            }
-            int lastSlashIndex = rootPath.lastIndexOf("/");
-            if (lastSlashIndex >= 0) {
-                return input.getKey().substring(lastSlashIndex+1);
-            }
-            return input.getKey();
+            return relativeKey(rootPath, input.getKey());
         };
     }
 
+    static String relativeKey(String rootPath, String key) {
+        if (rootPath.equals(key)) {
+            return "";
+        }
+        int lastSlashIndex = rootPath.lastIndexOf("/");
+        if (lastSlashIndex >= 0) {
+            return key.substring(lastSlashIndex+1);
+        }
+        return key;
+    }
+
     public static KVCache newCache(
             final KeyValueClient kvClient,
             final String rootPath,
@@ -64,7 +143,7 @@ public class KVCache extends ConsulCache<String, Value> {
             final String rootPath,
             final int watchSeconds,
             final QueryOptions queryOptions) {
-        return new KVCache(kvClient, rootPath, prepareRootPath(rootPath), watchSeconds, queryOptions, createDefault());
+        return new KVCache(kvClient, rootPath, prepareRootPath(rootPath), watchSeconds, queryOptions, createDefault(kvClient.getConfig().getCacheConfig()));
     }
 
     @VisibleForTesting
@@ -0,0 +1,194 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+import com.orbitz.consul.KeyValueClient;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.kv.CompactValue;
+import com.orbitz.consul.model.kv.Value;
+import com.orbitz.consul.option.QueryOptions;
+
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of the keys under a root path, watched with {@code ?keys} so that the blocking queries
+ * do not carry the values.
+ * <p>
+ * The map associates the key relative to the root path (as in {@link KVCache}) with the full key.
+ * Values are fetched on demand with {@link #getValue(String)} and kept until the index of the cache
+ * moves past the index they were loaded at. Since the keys listing does not carry the {@code ModifyIndex}
+ * of each key, a loaded value is then fetched again the next time it is read, and the previous instance
+ * is kept when its {@code ModifyIndex} did not change.
+ */
+public class KeysCache extends ConsulCache<String, String> {
+
+    private final KeyValueClient kvClient;
+    private final QueryOptions queryOptions;
+    private final ConcurrentMap<String, LoadedValue> loadedValues = new ConcurrentHashMap<>();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private KeysCache(KeyValueClient kvClient,
+                      String rootPath,
+                      String keyPath,
+                      String separator,
+                      int watchSeconds,
+                      QueryOptions queryOptions,
+                      Scheduler callbackScheduler) {
+        super(key -> KVCache.relativeKey(keyPath, key),
+            shareWatch(kvClient.getWatchMultiplexer(), kvClient.getConfig().getCacheConfig(),
+                (index, callback) -> {
+                    checkWatch(kvClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
+                    QueryOptions params = watchParams(index, watchSeconds, queryOptions);
+                    kvClient.getKeys(keyPath, separator, params, callback);
+                },
+                "keyvalue.keys", keyPath, separator, watchSeconds, queryOptions),
+            kvClient.getConfig().getCacheConfig(),
+            kvClient.getEventHandler(),
+            new CacheDescriptor("keyvalue.keys", rootPath),
+            callbackScheduler);
+        this.kvClient = kvClient;
+        this.queryOptions = queryOptions;
+        addDeltaListener(changes -> changes.getRemoved().values().forEach(loadedValues::remove));
+    }
+
+    @Override
+    protected Optional<Class<? extends String>> snapshotValueType() {
+        return Optional.of(String.class);
+    }
+
+    /**
+     * Gets the value of a key of the cache, fetching it from Consul if it was not loaded yet
+     * or if the keys changed since it was loaded.
+     *
+     * @param key the key relative to the root path, as in {@link #getMap()}
+     * @return the value, or {@link Optional#empty()} if the key is not in the cache
+     */
+    public Optional<Value> getValue(String key) {
+        ConsulResponse<ImmutableMap<String, String>> keys = getMapWithMetadata();
+        String fullKey = keys.getResponse() == null ? null : keys.getResponse().get(key);
+        if (fullKey == null) {
+            return Optional.empty();
+        }
+
+        BigInteger index = keys.getIndex();
+        LoadedValue loaded = loadedValues.get(fullKey);
+        if (loaded != null && loaded.isCurrent(index)) {
+            hitCount.incrementAndGet();
+            return Optional.of(loaded.value);
+        }
+
+        loadCount.incrementAndGet();
+        Optional<Value> value = kvClient.getValue(fullKey, queryOptions);
+        if (!value.isPresent()) {
+            loadedValues.remove(fullKey);
+            return Optional.empty();
+        }
+
+        Value current = value.get();
+        if (loaded != null && loaded.value.getModifyIndex() == current.getModifyIndex()) {
+            current = loaded.value;
+        } else if (kvClient.getConfig().getCacheConfig().isCompactKeyValuesEnabled()) {
+            current = CompactValue.copyOf(current);
+        }
+        loadedValues.put(fullKey, new LoadedValue(current, index));
+        return Optional.of(current);
+    }
+
+    /**
+     * Gets the number of values fetched from Consul by {@link #getValue(String)}.
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * Gets the number of values returned by {@link #getValue(String)} without fetching them.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        loadedValues.clear();
+    }
+
+    private static final class LoadedValue {
+        private final Value value;
+        private final BigInteger index;
+
+        private LoadedValue(Value value, BigInteger index) {
+            this.value = value;
+            this.index = index;
+        }
+
+        private boolean isCurrent(BigInteger currentIndex) {
+            return currentIndex == null
+                    || currentIndex.equals(index)
+                    || BigInteger.valueOf(value.getModifyIndex()).compareTo(currentIndex) >= 0;
+        }
+    }
+
+    public static KeysCache newCache(
+            final KeyValueClient kvClient,
+            final String rootPath,
+            final String separator,
+            final int watchSeconds,
+            final QueryOptions queryOptions,
+            final ScheduledExecutorService callbackExecutorService) {
+
+        Scheduler scheduler = createExternal(callbackExecutorService);
+        return new KeysCache(kvClient, rootPath, KVCache.prepareRootPath(rootPath), separator, watchSeconds, queryOptions, scheduler);
+    }
+
+    public static KeysCache newCache(
+            final KeyValueClient kvClient,
+            final String rootPath,
+            final String separator,
+            final int watchSeconds,
+            final QueryOptions queryOptions) {
+        return new KeysCache(kvClient, rootPath, KVCache.prepareRootPath(rootPath), separator, watchSeconds, queryOptions,
+                createDefault(kvClient.getConfig().getCacheConfig()));
+    }
+
+    /**
+     * Factory method to construct a cache of the keys under a root path.
+     *
+     * @param kvClient the {@link KeyValueClient} to use
+     * @param rootPath the root path (will be stripped from keys in the cache)
+     * @param separator the separator used to limit the keys returned, may be <code>null</code>
+     * @param watchSeconds how long to tell the Consul server to wait for new values (note that
+     *                     if this is 60 seconds or more, the client's read timeout will need
+     *                     to be increased as well)
+     * @return the cache object
+     */
+    public static KeysCache newCache(
+            final KeyValueClient kvClient,
+            final String rootPath,
+            final String separator,
+            final int watchSeconds) {
+        return newCache(kvClient, rootPath, separator, watchSeconds, QueryOptions.BLANK);
+    }
+
+    /**
+     * Factory method to construct a cache of all the keys under a root path, with the
+     * block interval of the {@link CacheConfig}.
+     *
+     * @param kvClient the {@link KeyValueClient} to use
+     * @param rootPath the root path
+     * @return the cache object
+     */
+    public static KeysCache newCache(final KeyValueClient kvClient, final String rootPath) {
+        CacheConfig cacheConfig = kvClient.getConfig().getCacheConfig();
+        int watchSeconds = Ints.checkedCast(cacheConfig.getWatchDuration().getSeconds());
+        return newCache(kvClient, rootPath, null, watchSeconds);
+    }
+}
@@ -0,0 +1,148 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ExecutionMode;
+import com.orbitz.consul.config.ListenerDispatchMode;
+import com.orbitz.consul.util.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Notifies a {@link ConsulCache.Listener} according to the {@link ListenerDispatchMode} of the cache,
+ * and records its {@link ListenerStats}.
+ * <p>
+ * In the asynchronous modes, snapshots are queued and the listener is notified with one snapshot at a time,
+ * in order, on the listener executor.
+ */
+final class ListenerDispatcher<K, V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ListenerDispatcher.class);
+
+    private final ConsulCache.Listener<K, V> listener;
+    private final Executor executor;
+    private final int capacity;
+    private final ListenerStats stats = new ListenerStats();
+    private final Deque<Pending<K, V>> queue = new ArrayDeque<>();
+    private boolean draining;
+
+    private ListenerDispatcher(ConsulCache.Listener<K, V> listener, Executor executor, int capacity) {
+        this.listener = listener;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    static <K, V> ListenerDispatcher<K, V> create(ConsulCache.Listener<K, V> listener, CacheConfig cacheConfig) {
+        switch (cacheConfig.getListenerDispatchMode()) {
+            case QUEUED:
+                return new ListenerDispatcher<>(listener, executor(cacheConfig), cacheConfig.getListenerQueueCapacity());
+            case COALESCING:
+                return new ListenerDispatcher<>(listener, executor(cacheConfig), 1);
+            default:
+                return new ListenerDispatcher<>(listener, null, 0);
+        }
+    }
+
+    private static Executor executor(CacheConfig cacheConfig) {
+        if (cacheConfig.getListenerExecutor().isPresent()) {
+            return cacheConfig.getListenerExecutor().get();
+        }
+        return cacheConfig.getExecutionMode() == ExecutionMode.VIRTUAL_THREADS
+                ? VirtualThreadExecutor.EXECUTOR
+                : PlatformThreadExecutor.EXECUTOR;
+    }
+
+    ConsulCache.Listener<K, V> getListener() {
+        return listener;
+    }
+
+    ListenerStats getStats() {
+        return stats;
+    }
+
+    void dispatch(Map<K, V> snapshot) {
+        long dispatchTime = System.nanoTime();
+        if (executor == null) {
+            notifyListener(new Pending<>(snapshot, dispatchTime));
+            return;
+        }
+
+        synchronized (queue) {
+            if (queue.size() >= capacity) {
+                queue.removeFirst();
+                stats.recordDropped();
+            }
+            queue.addLast(new Pending<>(snapshot, dispatchTime));
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            synchronized (queue) {
+                queue.clear();
+                draining = false;
+            }
+            LOGGER.warn("Unable to notify ConsulCache Listener.", e);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Pending<K, V> pending;
+            synchronized (queue) {
+                pending = queue.pollFirst();
+                if (pending == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            notifyListener(pending);
+        }
+    }
+
+    private void notifyListener(Pending<K, V> pending) {
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            listener.notify(pending.snapshot);
+        } catch (RuntimeException e) {
+            failed = true;
+            LOGGER.warn("ConsulCache Listener's notify method threw an exception.", e);
+        }
+        long end = System.nanoTime();
+        stats.recordNotification(start - pending.dispatchTime, end - start, failed);
+    }
+
+    private static final class Pending<K, V> {
+        private final Map<K, V> snapshot;
+        private final long dispatchTime;
+
+        private Pending(Map<K, V> snapshot, long dispatchTime) {
+            this.snapshot = snapshot;
+            this.dispatchTime = dispatchTime;
+        }
+    }
+
+    private static class PlatformThreadExecutor {
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("consulCacheListener-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    private static class VirtualThreadExecutor {
+        private static final Executor EXECUTOR = VirtualThreads.newThreadPerTaskExecutor("consulCacheListener-");
+    }
+}
@@ -0,0 +1,88 @@
+package com.orbitz.consul.cache;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The notification metrics of a listener of a {@link ConsulCache}.
+ */
+public final class ListenerStats {
+
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalNotifyNanos = new AtomicLong();
+    private final AtomicLong maxNotifyNanos = new AtomicLong();
+    private final AtomicLong maxDelayNanos = new AtomicLong();
+
+    ListenerStats() {
+    }
+
+    void recordNotification(long delayNanos, long notifyNanos, boolean failed) {
+        notifications.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        totalNotifyNanos.addAndGet(notifyNanos);
+        maxNotifyNanos.accumulateAndGet(notifyNanos, Math::max);
+        maxDelayNanos.accumulateAndGet(delayNanos, Math::max);
+    }
+
+    void recordDropped() {
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of snapshots the listener was notified with.
+     */
+    public long getNotificationCount() {
+        return notifications.get();
+    }
+
+    /**
+     * Gets the number of snapshots which were replaced by a newer one before the listener was notified.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets the number of notifications which threw an exception.
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Gets the total time spent in the listener.
+     */
+    public Duration getTotalNotifyTime() {
+        return Duration.ofNanos(totalNotifyNanos.get());
+    }
+
+    /**
+     * Gets the longest time spent in the listener for a single snapshot.
+     */
+    public Duration getMaxNotifyTime() {
+        return Duration.ofNanos(maxNotifyNanos.get());
+    }
+
+    /**
+     * Gets the longest time between an update of the cache and the notification of the listener.
+     */
+    public Duration getMaxDispatchDelay() {
+        return Duration.ofNanos(maxDelayNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerStats{" +
+                "notifications=" + notifications +
+                ", dropped=" + dropped +
+                ", failures=" + failures +
+                ", totalNotifyTime=" + getTotalNotifyTime() +
+                ", maxNotifyTime=" + getMaxNotifyTime() +
+                ", maxDispatchDelay=" + getMaxDispatchDelay() +
+                '}';
+    }
+}
@@ -1,11 +1,13 @@
 package com.orbitz.consul.cache;
 
+import com.google.common.base.Equivalence;
 import com.google.common.primitives.Ints;
 import com.orbitz.consul.CatalogClient;
 import com.orbitz.consul.config.CacheConfig;
 import com.orbitz.consul.model.health.Node;
 import com.orbitz.consul.option.QueryOptions;
 
+import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 
 public class NodesCatalogCache extends ConsulCache<String, Node> {
@@ -15,16 +17,28 @@ public class NodesCatalogCache extends ConsulCache<String, Node> {
                               int watchSeconds,
                               Scheduler callbackScheduler) {
         super(Node::getNode,
-              (index, callback) -> {
-                  checkWatch(catalogClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
-                  catalogClient.getNodes(watchParams(index, watchSeconds, queryOptions), callback);
-              },
+              shareWatch(catalogClient.getWatchMultiplexer(), catalogClient.getConfig().getCacheConfig(),
+                  (index, callback) -> {
+                      checkWatch(catalogClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
+                      catalogClient.getNodes(watchParams(index, watchSeconds, queryOptions), callback);
+                  },
+                  "catalog.nodes", watchSeconds, queryOptions),
               catalogClient.getConfig().getCacheConfig(),
               catalogClient.getEventHandler(),
               new CacheDescriptor("catalog.nodes"),
               callbackScheduler);
     }
 
+    @Override
+    protected Equivalence<Node> valueEquivalence() {
+        return modifyIndexEquivalence(Node::getModifyIndex);
+    }
+
+    @Override
+    protected Optional<Class<? extends Node>> snapshotValueType() {
+        return Optional.of(Node.class);
+    }
+
     public static NodesCatalogCache newCache(
             final CatalogClient catalogClient,
             final QueryOptions queryOptions,
@@ -39,7 +53,7 @@ public class NodesCatalogCache extends ConsulCache<String, Node> {
             final CatalogClient catalogClient,
             final QueryOptions queryOptions,
             final int watchSeconds) {
-        return new NodesCatalogCache(catalogClient, queryOptions, watchSeconds, createDefault());
+        return new NodesCatalogCache(catalogClient, queryOptions, watchSeconds, createDefault(catalogClient.getConfig().getCacheConfig()));
     }
 
     public static NodesCatalogCache newCache(final CatalogClient catalogClient) {
@@ -1,14 +1,25 @@
 package com.orbitz.consul.cache;
 
+import com.google.common.base.Equivalence;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Ints;
 import com.orbitz.consul.CatalogClient;
 import com.orbitz.consul.config.CacheConfig;
 import com.orbitz.consul.model.catalog.CatalogService;
 import com.orbitz.consul.option.QueryOptions;
+import java.util.Collection;
+import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 
 public class ServiceCatalogCache extends ConsulCache<String, CatalogService> {
 
+    private final InstanceIndex<String, CatalogService> instanceIndex = new InstanceIndex<>(
+            CatalogService::getServiceTags,
+            CatalogService::getServiceMeta,
+            CatalogService::getNode,
+            CatalogService::getDatacenter);
+
     private ServiceCatalogCache(CatalogClient catalogClient,
                                 String serviceName,
                                 QueryOptions queryOptions,
@@ -16,14 +27,66 @@ public class ServiceCatalogCache extends ConsulCache<String, CatalogService> {
                                 Scheduler callbackScheduler) {
 
         super(CatalogService::getServiceId,
-            (index, callback) -> {
-                checkWatch(catalogClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
-                catalogClient.getService(serviceName, watchParams(index, watchSeconds, queryOptions), callback);
-            },
+            shareWatch(catalogClient.getWatchMultiplexer(), catalogClient.getConfig().getCacheConfig(),
+                (index, callback) -> {
+                    checkWatch(catalogClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
+                    QueryOptions params = watchParams(index, watchSeconds,
+                            agentCacheParams(queryOptions, catalogClient.getConfig().getCacheConfig()));
+                    catalogClient.getService(serviceName, params, callback);
+                },
+                "catalog.service", serviceName, watchSeconds, queryOptions),
             catalogClient.getConfig().getCacheConfig(),
             catalogClient.getEventHandler(),
             new CacheDescriptor("catalog.service", serviceName),
             callbackScheduler);
+        addDeltaListener(instanceIndex::apply);
+    }
+
+    /**
+     * Gets the instances with the given tag.
+     */
+    public ImmutableMap<String, CatalogService> getByTag(String tag) {
+        return instanceIndex.withTag(Preconditions.checkNotNull(tag, "Tag cannot be null"));
+    }
+
+    /**
+     * Gets the instances with all the given tags.
+     */
+    public ImmutableMap<String, CatalogService> getByTags(Collection<String> tags) {
+        return instanceIndex.withTags(Preconditions.checkNotNull(tags, "Tags cannot be null"));
+    }
+
+    /**
+     * Gets the instances whose service meta has the given value for the given key.
+     */
+    public ImmutableMap<String, CatalogService> getByMeta(String key, String value) {
+        Preconditions.checkNotNull(key, "Meta key cannot be null");
+        Preconditions.checkNotNull(value, "Meta value cannot be null");
+        return instanceIndex.withMeta(key, value);
+    }
+
+    /**
+     * Gets the instances registered on the given node.
+     */
+    public ImmutableMap<String, CatalogService> getByNode(String node) {
+        return instanceIndex.onNode(Preconditions.checkNotNull(node, "Node cannot be null"));
+    }
+
+    /**
+     * Gets the instances of the given datacenter.
+     */
+    public ImmutableMap<String, CatalogService> getByDatacenter(String datacenter) {
+        return instanceIndex.inDatacenter(Preconditions.checkNotNull(datacenter, "Datacenter cannot be null"));
+    }
+
+    @Override
+    protected Equivalence<CatalogService> valueEquivalence() {
+        return modifyIndexEquivalence(CatalogService::getModifyIndex);
+    }
+
+    @Override
+    protected Optional<Class<? extends CatalogService>> snapshotValueType() {
+        return Optional.of(CatalogService.class);
     }
 
     public static ServiceCatalogCache newCache(
@@ -43,7 +106,7 @@ public class ServiceCatalogCache extends ConsulCache<String, CatalogService> {
             final QueryOptions queryOptions,
             final int watchSeconds) {
 
-        return new ServiceCatalogCache(catalogClient, serviceName, queryOptions, watchSeconds, createDefault());
+        return new ServiceCatalogCache(catalogClient, serviceName, queryOptions, watchSeconds, createDefault(catalogClient.getConfig().getCacheConfig()));
     }
 
     public static ServiceCatalogCache newCache(final CatalogClient catalogClient, final String serviceName) {
@@ -1,17 +1,32 @@
 package com.orbitz.consul.cache;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Equivalence;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HostAndPort;
 import com.google.common.primitives.Ints;
 import com.orbitz.consul.HealthClient;
 import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.health.HealthCheck;
 import com.orbitz.consul.model.health.ServiceHealth;
+import com.orbitz.consul.monitoring.ClientEventHandler;
 import com.orbitz.consul.option.QueryOptions;
 
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Function;
 
 public class ServiceHealthCache extends ConsulCache<ServiceHealthKey, ServiceHealth> {
 
+    private final InstanceIndex<ServiceHealthKey, ServiceHealth> instanceIndex = new InstanceIndex<>(
+            serviceHealth -> serviceHealth.getService().getTags(),
+            serviceHealth -> serviceHealth.getService().getMeta(),
+            serviceHealth -> serviceHealth.getNode().getNode(),
+            serviceHealth -> serviceHealth.getNode().getDatacenter());
+
     private ServiceHealthCache(HealthClient healthClient,
                                String serviceName,
                                boolean passing,
@@ -19,22 +34,128 @@ public class ServiceHealthCache extends ConsulCache<ServiceHealthKey, ServiceHea
                                QueryOptions queryOptions,
                                Function<ServiceHealth, ServiceHealthKey> keyExtractor,
                                Scheduler callbackScheduler) {
-        super(keyExtractor,
-              (index, callback) -> {
-                  checkWatch(healthClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
-                  QueryOptions params = watchParams(index, watchSeconds, queryOptions);
-                  if (passing) {
-                      healthClient.getHealthyServiceInstances(serviceName, params, callback);
-                  } else {
-                      healthClient.getAllServiceInstances(serviceName, params, callback);
-                  }
-              },
+        this(keyExtractor,
+              shareWatch(healthClient.getWatchMultiplexer(), healthClient.getConfig().getCacheConfig(),
+                  (index, callback) -> {
+                      checkWatch(healthClient.getNetworkTimeoutConfig().getClientReadTimeoutMillis(), watchSeconds);
+                      QueryOptions params = watchParams(index, watchSeconds,
+                              agentCacheParams(queryOptions, healthClient.getConfig().getCacheConfig()));
+                      if (passing) {
+                          healthClient.getHealthyServiceInstances(serviceName, params, callback);
+                      } else {
+                          healthClient.getAllServiceInstances(serviceName, params, callback);
+                      }
+                  },
+                  "health.service", serviceName, passing, watchSeconds, queryOptions),
               healthClient.getConfig().getCacheConfig(),
               healthClient.getEventHandler(),
               new CacheDescriptor("health.service", serviceName),
               callbackScheduler);
     }
 
+    /**
+     * Creates a cache of service instances served by the given consumer, such as the service caches
+     * of a {@link ClusterHealthCache}.
+     */
+    ServiceHealthCache(Function<ServiceHealth, ServiceHealthKey> keyExtractor,
+                       CallbackConsumer<ServiceHealth> callbackConsumer,
+                       CacheConfig cacheConfig,
+                       ClientEventHandler eventHandler,
+                       CacheDescriptor cacheDescriptor,
+                       Scheduler callbackScheduler) {
+        super(keyExtractor, callbackConsumer, cacheConfig, eventHandler, cacheDescriptor, callbackScheduler);
+        addDeltaListener(instanceIndex::apply);
+    }
+
+    /**
+     * Gets the instances with the given tag.
+     */
+    public ImmutableMap<ServiceHealthKey, ServiceHealth> getByTag(String tag) {
+        return instanceIndex.withTag(Preconditions.checkNotNull(tag, "Tag cannot be null"));
+    }
+
+    /**
+     * Gets the instances with all the given tags.
+     */
+    public ImmutableMap<ServiceHealthKey, ServiceHealth> getByTags(Collection<String> tags) {
+        return instanceIndex.withTags(Preconditions.checkNotNull(tags, "Tags cannot be null"));
+    }
+
+    /**
+     * Gets the instances whose service meta has the given value for the given key.
+     */
+    public ImmutableMap<ServiceHealthKey, ServiceHealth> getByMeta(String key, String value) {
+        Preconditions.checkNotNull(key, "Meta key cannot be null");
+        Preconditions.checkNotNull(value, "Meta value cannot be null");
+        return instanceIndex.withMeta(key, value);
+    }
+
+    /**
+     * Gets the instances registered on the given node.
+     */
+    public ImmutableMap<ServiceHealthKey, ServiceHealth> getByNode(String node) {
+        return instanceIndex.onNode(Preconditions.checkNotNull(node, "Node cannot be null"));
+    }
+
+    /**
+     * Gets the instances of the given datacenter.
+     */
+    public ImmutableMap<ServiceHealthKey, ServiceHealth> getByDatacenter(String datacenter) {
+        return instanceIndex.inDatacenter(Preconditions.checkNotNull(datacenter, "Datacenter cannot be null"));
+    }
+
+    @Override
+    protected Equivalence<ServiceHealth> valueEquivalence() {
+        return MODIFY_INDEX_EQUIVALENCE;
+    }
+
+    @Override
+    protected Optional<Class<? extends ServiceHealth>> snapshotValueType() {
+        return Optional.of(ServiceHealth.class);
+    }
+
+    /**
+     * Compares the {@code ModifyIndex} of the node, the service and each check of two instances,
+     * falling back to {@link Object#equals(Object)} when one of them is missing.
+     */
+    @VisibleForTesting
+    static final Equivalence<ServiceHealth> MODIFY_INDEX_EQUIVALENCE = new Equivalence<ServiceHealth>() {
+        @Override
+        protected boolean doEquivalent(ServiceHealth a, ServiceHealth b) {
+            if (!hasModifyIndexes(a) || !hasModifyIndexes(b)) {
+                return a.equals(b);
+            }
+            if (!a.getNode().getModifyIndex().equals(b.getNode().getModifyIndex())
+                    || !a.getService().getModifyIndex().equals(b.getService().getModifyIndex())
+                    || a.getChecks().size() != b.getChecks().size()) {
+                return false;
+            }
+            for (int i = 0; i < a.getChecks().size(); i++) {
+                HealthCheck checkA = a.getChecks().get(i);
+                HealthCheck checkB = b.getChecks().get(i);
+                if (!checkA.getCheckId().equals(checkB.getCheckId())
+                        || !checkA.getModifyIndex().equals(checkB.getModifyIndex())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected int doHash(ServiceHealth serviceHealth) {
+            if (!hasModifyIndexes(serviceHealth)) {
+                return serviceHealth.hashCode();
+            }
+            return Objects.hash(serviceHealth.getNode().getModifyIndex(), serviceHealth.getService().getModifyIndex());
+        }
+
+        private boolean hasModifyIndexes(ServiceHealth serviceHealth) {
+            return serviceHealth.getNode().getModifyIndex().isPresent()
+                    && serviceHealth.getService().getModifyIndex().isPresent()
+                    && serviceHealth.getChecks().stream().allMatch(check -> check.getModifyIndex().isPresent());
+        }
+    };
+
     /**
      * Factory method to construct a string/{@link ServiceHealth} map for a particular service.
      * <p/>
@@ -66,7 +187,7 @@ public class ServiceHealthCache extends ConsulCache<ServiceHealthKey, ServiceHea
             final QueryOptions queryOptions,
             final Function<ServiceHealth, ServiceHealthKey> keyExtractor) {
 
-        return new ServiceHealthCache(healthClient, serviceName, passing, watchSeconds, queryOptions, keyExtractor, createDefault());
+        return new ServiceHealthCache(healthClient, serviceName, passing, watchSeconds, queryOptions, keyExtractor, createDefault(healthClient.getConfig().getCacheConfig()));
     }
 
     public static ServiceHealthCache newCache(
@@ -0,0 +1,339 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.orbitz.consul.model.State;
+import com.orbitz.consul.model.catalog.ImmutableServiceWeights;
+import com.orbitz.consul.model.catalog.ServiceWeights;
+import com.orbitz.consul.model.health.HealthCheck;
+import com.orbitz.consul.model.health.ServiceHealth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks instances of a service among the healthy entries of a {@link ServiceHealthCache}.
+ * <p>
+ * The balancer listens to the changes of the cache and rebuilds an array of the healthy endpoints when the
+ * instances change, so that picking an endpoint does not lock nor allocate.
+ * Instances with a critical check are left out. Instances with a warning check are weighted with the
+ * {@code Warning} weight of the service, the others with its {@code Passing} weight; an instance whose weight
+ * is 0 is left out.
+ * <p>
+ * Each pick counts an outstanding request on the endpoint, which must be ended with {@link Endpoint#release()}
+ * when the request completes. The counts are only used by the {@link Strategy#LEAST_OUTSTANDING} and
+ * {@link Strategy#POWER_OF_TWO_CHOICES} strategies.
+ */
+public class ServiceLoadBalancer implements AutoCloseable {
+
+    private static final ServiceWeights DEFAULT_WEIGHTS = ImmutableServiceWeights.builder()
+            .passing(1)
+            .warning(1)
+            .build();
+
+    /**
+     * How endpoints are picked.
+     */
+    public enum Strategy {
+        /**
+         * Each endpoint in turn.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * A random endpoint, with a probability proportional to its weight.
+         */
+        WEIGHTED,
+
+        /**
+         * The endpoint with the fewest outstanding requests. Picks scan all the endpoints.
+         */
+        LEAST_OUTSTANDING,
+
+        /**
+         * The endpoint with the fewest outstanding requests among two random endpoints.
+         */
+        POWER_OF_TWO_CHOICES
+    }
+
+    private static final Comparator<Endpoint> ENDPOINT_ORDER = Comparator
+            .comparing((Endpoint endpoint) -> endpoint.key.getServiceId())
+            .thenComparing(endpoint -> endpoint.key.getHost())
+            .thenComparing(endpoint -> endpoint.key.getPort());
+
+    private final ConsulCache<ServiceHealthKey, ServiceHealth> cache;
+    private final Strategy strategy;
+    private final ConsulCache.DeltaListener<ServiceHealthKey, ServiceHealth> listener = this::apply;
+    private final Map<ServiceHealthKey, Endpoint> endpointsByKey = new HashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile Endpoints endpoints = Endpoints.EMPTY;
+
+    private ServiceLoadBalancer(ConsulCache<ServiceHealthKey, ServiceHealth> cache, Strategy strategy) {
+        this.cache = cache;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Creates a load balancer over the instances of a {@link ServiceHealthCache}.
+     * The balancer is updated until it is closed or the cache is stopped.
+     */
+    public static ServiceLoadBalancer create(ConsulCache<ServiceHealthKey, ServiceHealth> cache, Strategy strategy) {
+        Preconditions.checkNotNull(cache, "Cache cannot be null");
+        Preconditions.checkNotNull(strategy, "Strategy cannot be null");
+        ServiceLoadBalancer balancer = new ServiceLoadBalancer(cache, strategy);
+        cache.addDeltaListener(balancer.listener);
+        return balancer;
+    }
+
+    /**
+     * A healthy instance of the service.
+     */
+    public static final class Endpoint {
+        private final ServiceHealthKey key;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile ServiceHealth serviceHealth;
+        private volatile int weight;
+
+        private Endpoint(ServiceHealthKey key) {
+            this.key = key;
+        }
+
+        public ServiceHealthKey getKey() {
+            return key;
+        }
+
+        public ServiceHealth getServiceHealth() {
+            return serviceHealth;
+        }
+
+        /**
+         * Gets the address of the service, or the address of its node when the service has none.
+         */
+        public String getHost() {
+            String address = serviceHealth.getService().getAddress();
+            return Strings.isNullOrEmpty(address) ? serviceHealth.getNode().getAddress() : address;
+        }
+
+        public int getPort() {
+            return serviceHealth.getService().getPort();
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Gets the number of picks of this endpoint which were not released yet.
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * Ends a request sent to the endpoint after it was picked.
+         */
+        public void release() {
+            outstanding.decrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return "Endpoint{" + getHost() + ":" + getPort() + ", weight=" + weight + ", outstanding=" + outstanding + '}';
+        }
+    }
+
+    /**
+     * Picks an endpoint and counts an outstanding request on it.
+     *
+     * @return the endpoint, or {@code null} if there is no healthy endpoint
+     */
+    public Endpoint pick() {
+        Endpoints current = endpoints;
+        int size = current.endpoints.length;
+        if (size == 0) {
+            return null;
+        }
+
+        Endpoint endpoint;
+        switch (strategy) {
+            case WEIGHTED:
+                endpoint = current.endpoints[current.pickWeighted()];
+                break;
+            case LEAST_OUTSTANDING:
+                endpoint = leastOutstanding(current.endpoints, Math.floorMod(next.getAndIncrement(), size));
+                break;
+            case POWER_OF_TWO_CHOICES:
+                endpoint = powerOfTwoChoices(current.endpoints);
+                break;
+            default:
+                endpoint = current.endpoints[Math.floorMod(next.getAndIncrement(), size)];
+                break;
+        }
+        endpoint.outstanding.incrementAndGet();
+        return endpoint;
+    }
+
+    private static Endpoint leastOutstanding(Endpoint[] endpoints, int start) {
+        // starts from a rotating position so that ties are spread between the endpoints
+        Endpoint least = endpoints[start];
+        for (int i = 1; i < endpoints.length; i++) {
+            Endpoint endpoint = endpoints[(start + i) % endpoints.length];
+            if (endpoint.outstanding.get() < least.outstanding.get()) {
+                least = endpoint;
+            }
+        }
+        return least;
+    }
+
+    private static Endpoint powerOfTwoChoices(Endpoint[] endpoints) {
+        if (endpoints.length == 1) {
+            return endpoints[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(endpoints.length);
+        int second = random.nextInt(endpoints.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = endpoints[first];
+        Endpoint b = endpoints[second];
+        return b.outstanding.get() < a.outstanding.get() ? b : a;
+    }
+
+    /**
+     * Gets the healthy endpoints.
+     */
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(Arrays.asList(endpoints.endpoints.clone()));
+    }
+
+    public int size() {
+        return endpoints.endpoints.length;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Stops following the changes of the cache.
+     */
+    @Override
+    public void close() {
+        cache.removeDeltaListener(listener);
+    }
+
+    synchronized void apply(ChangeSet<ServiceHealthKey, ServiceHealth> changes) {
+        changes.getRemoved().keySet().forEach(endpointsByKey::remove);
+        update(changes.getAdded());
+        update(changes.getUpdated());
+
+        List<Endpoint> healthy = new ArrayList<>(endpointsByKey.size());
+        for (Endpoint endpoint : endpointsByKey.values()) {
+            if (endpoint.weight > 0) {
+                healthy.add(endpoint);
+            }
+        }
+        healthy.sort(ENDPOINT_ORDER);
+        endpoints = Endpoints.of(healthy.toArray(new Endpoint[0]));
+    }
+
+    private void update(Map<ServiceHealthKey, ServiceHealth> instances) {
+        instances.forEach((key, serviceHealth) -> {
+            Endpoint endpoint = endpointsByKey.computeIfAbsent(key, Endpoint::new);
+            endpoint.serviceHealth = serviceHealth;
+            endpoint.weight = weight(serviceHealth);
+        });
+    }
+
+    static int weight(ServiceHealth serviceHealth) {
+        boolean warning = false;
+        for (HealthCheck check : serviceHealth.getChecks()) {
+            if (State.WARN.getName().equals(check.getStatus())) {
+                warning = true;
+            } else if (!State.PASS.getName().equals(check.getStatus())) {
+                return 0;
+            }
+        }
+        Optional<ServiceWeights> weights = serviceHealth.getService().getWeights();
+        ServiceWeights serviceWeights = weights.orElse(DEFAULT_WEIGHTS);
+        return Math.max(0, warning ? serviceWeights.getWarning() : serviceWeights.getPassing());
+    }
+
+    /**
+     * The healthy endpoints, with the alias table of their weights.
+     */
+    private static final class Endpoints {
+        private static final Endpoints EMPTY = new Endpoints(new Endpoint[0], new double[0], new int[0]);
+
+        private final Endpoint[] endpoints;
+        private final double[] probabilities;
+        private final int[] aliases;
+
+        private Endpoints(Endpoint[] endpoints, double[] probabilities, int[] aliases) {
+            this.endpoints = endpoints;
+            this.probabilities = probabilities;
+            this.aliases = aliases;
+        }
+
+        /**
+         * Builds the alias table of the weights with Vose's method, so that weighted picks take constant time.
+         */
+        static Endpoints of(Endpoint[] endpoints) {
+            int size = endpoints.length;
+            double[] probabilities = new double[size];
+            int[] aliases = new int[size];
+            long total = 0;
+            for (Endpoint endpoint : endpoints) {
+                total += endpoint.weight;
+            }
+
+            double[] scaled = new double[size];
+            int[] small = new int[size];
+            int[] large = new int[size];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int i = 0; i < size; i++) {
+                scaled[i] = (double) endpoints[i].weight * size / total;
+                if (scaled[i] < 1) {
+                    small[smallCount++] = i;
+                } else {
+                    large[largeCount++] = i;
+                }
+            }
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount];
+                int more = large[--largeCount];
+                probabilities[less] = scaled[less];
+                aliases[less] = more;
+                scaled[more] = scaled[more] + scaled[less] - 1;
+                if (scaled[more] < 1) {
+                    small[smallCount++] = more;
+                } else {
+                    large[largeCount++] = more;
+                }
+            }
+            while (largeCount > 0) {
+                probabilities[large[--largeCount]] = 1;
+            }
+            while (smallCount > 0) {
+                probabilities[small[--smallCount]] = 1;
+            }
+            return new Endpoints(endpoints, probabilities, aliases);
+        }
+
+        int pickWeighted() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int i = random.nextInt(endpoints.length);
+            return random.nextDouble() < probabilities[i] ? i : aliases[i];
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The entries of a cache sorted by key, updated with the {@link ChangeSet} of each response.
+ * <p>
+ * Updates only touch the changed keys, and queries copy the matching entries only, so that a query
+ * returning {@code k} entries out of {@code n} costs {@code O(log n + k)}.
+ * Queries never see a partially applied change set.
+ *
+ * @param <V> the type of the values
+ */
+final class SortedKeyIndex<V> {
+
+    private final NavigableMap<String, V> entries = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    void apply(ChangeSet<String, V> changes) {
+        lock.writeLock().lock();
+        try {
+            changes.getRemoved().keySet().forEach(entries::remove);
+            entries.putAll(changes.getAdded());
+            entries.putAll(changes.getUpdated());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    ImmutableSortedMap<String, V> withPrefix(String prefix) {
+        lock.readLock().lock();
+        try {
+            ImmutableSortedMap.Builder<String, V> builder = ImmutableSortedMap.naturalOrder();
+            for (Map.Entry<String, V> entry : entries.tailMap(prefix, true).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                builder.put(entry);
+            }
+            return builder.build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    ImmutableSortedMap<String, V> range(String fromKey, String toKey) {
+        lock.readLock().lock();
+        try {
+            return ImmutableSortedMap.copyOfSorted(entries.subMap(fromKey, true, toKey, false));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    ImmutableSortedMap<String, V> all() {
+        lock.readLock().lock();
+        try {
+            return ImmutableSortedMap.copyOfSorted(entries);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
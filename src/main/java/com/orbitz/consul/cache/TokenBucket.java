@@ -0,0 +1,68 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting the rate of the requests of caches.
+ * <p>
+ * The bucket is refilled at {@code permitsPerSecond} and holds up to {@code burst} permits.
+ * Permits are not waited for: {@link #reserve(long)} returns the delay after which the request may be sent,
+ * so that the caches schedule it instead of blocking a thread.
+ * The bucket is implemented with the virtual scheduling algorithm, which only keeps the theoretical
+ * arrival time of the next request.
+ */
+public class TokenBucket {
+
+    private final Ticker ticker;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+
+    private long theoreticalArrival;
+
+    /**
+     * Creates a bucket holding up to one second of permits.
+     *
+     * @param permitsPerSecond the rate of the requests.
+     */
+    public TokenBucket(double permitsPerSecond) {
+        this(permitsPerSecond, Math.max(1, (int) permitsPerSecond));
+    }
+
+    /**
+     * Creates a bucket.
+     *
+     * @param permitsPerSecond the rate of the requests.
+     * @param burst the number of requests which may be sent at once after an idle period.
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    TokenBucket(double permitsPerSecond, int burst, Ticker ticker) {
+        Preconditions.checkArgument(permitsPerSecond > 0, "Rate must be positive");
+        Preconditions.checkArgument(burst > 0, "Burst must be positive");
+        this.ticker = ticker;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.toleranceNanos = (burst - 1) * intervalNanos;
+        this.theoreticalArrival = ticker.read();
+    }
+
+    /**
+     * Reserves a permit for a request to be sent after the given delay.
+     *
+     * @param delayNanos the delay after which the request would be sent without rate limiting.
+     * @return the delay after which the request may be sent, which is never less than {@code delayNanos}.
+     */
+    public synchronized long reserve(long delayNanos) {
+        long now = ticker.read();
+        long requested = now + Math.max(0, delayNanos);
+        long allowed = Math.max(requested, theoreticalArrival - toleranceNanos);
+        theoreticalArrival = Math.max(theoreticalArrival, allowed) + intervalNanos;
+        return allowed - now;
+    }
+}
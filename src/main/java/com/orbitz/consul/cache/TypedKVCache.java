@@ -0,0 +1,228 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.orbitz.consul.model.kv.Value;
+import com.orbitz.consul.util.Jackson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * A view of a {@link KVCache} holding decoded values.
+ * <p>
+ * Each value is decoded once, when it is added to the {@link KVCache} or when its {@code ModifyIndex} changes,
+ * so that reads are plain map lookups. Values which cannot be decoded are left out of the map and counted
+ * in {@link #getDecodeFailureCount()}.
+ * <p>
+ * The typed cache owns the {@link KVCache}: starting or stopping it starts or stops the {@link KVCache}.
+ *
+ * @param <T> the type of the decoded values
+ */
+public class TypedKVCache<T> implements AutoCloseable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(TypedKVCache.class);
+
+    private final KVCache kvCache;
+    private final Decoder<T> decoder;
+    private final CopyOnWriteArrayList<ListenerDispatcher<String, T>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong decodeFailureCount = new AtomicLong();
+    private volatile ImmutableMap<String, T> decoded = ImmutableMap.of();
+    private boolean applied;
+
+    private TypedKVCache(KVCache kvCache, Decoder<T> decoder) {
+        this.kvCache = kvCache;
+        this.decoder = decoder;
+        kvCache.addDeltaListener(this::apply);
+    }
+
+    /**
+     * Decodes the value of a key of a {@link KVCache}.
+     *
+     * @param <T> the type of the decoded values
+     */
+    @FunctionalInterface
+    public interface Decoder<T> {
+        /**
+         * Decodes a value.
+         *
+         * @return the decoded value, or {@code null} to leave the key out of the map
+         * @throws Exception if the value cannot be decoded
+         */
+        T decode(Value value) throws Exception;
+    }
+
+    /**
+     * Creates a decoder reading the values as JSON documents of the given type.
+     * Keys without a value are left out of the map.
+     */
+    public static <T> Decoder<T> json(Class<T> type) {
+        return value -> {
+            Optional<byte[]> bytes = value.getValueAsBytes();
+            return bytes.isPresent() ? Jackson.MAPPER.readValue(bytes.get(), type) : null;
+        };
+    }
+
+    /**
+     * Applies a change set of the {@link KVCache}: the unchanged values are carried over from the previous map
+     * and only the added and updated values are decoded.
+     * Only the first change set, which initializes the cache, is applied and dispatched when empty.
+     */
+    private synchronized void apply(ChangeSet<String, Value> changes) {
+        if (changes.isEmpty()) {
+            if (applied) {
+                return;
+            }
+        } else {
+            ImmutableMap.Builder<String, T> builder = ImmutableMap.builder();
+            for (Map.Entry<String, T> entry : decoded.entrySet()) {
+                String key = entry.getKey();
+                if (!changes.getRemoved().containsKey(key) && !changes.getUpdated().containsKey(key)) {
+                    builder.put(entry);
+                }
+            }
+            decodeAll(changes.getAdded(), builder);
+            decodeAll(changes.getUpdated(), builder);
+            decoded = builder.build();
+        }
+        applied = true;
+
+        for (ListenerDispatcher<String, T> listener : listeners) {
+            listener.dispatch(decoded);
+        }
+    }
+
+    private void decodeAll(Map<String, Value> values, ImmutableMap.Builder<String, T> builder) {
+        values.forEach((key, value) -> {
+            decodeCount.incrementAndGet();
+            T result = null;
+            try {
+                result = decoder.decode(value);
+            } catch (Exception e) {
+                decodeFailureCount.incrementAndGet();
+                LOGGER.warn("Unable to decode the value of {} (ModifyIndex={})", value.getKey(), value.getModifyIndex(), e);
+            }
+            if (result != null) {
+                builder.put(key, result);
+            }
+        });
+    }
+
+    public void start() {
+        kvCache.start();
+    }
+
+    public void stop() {
+        kvCache.stop();
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    public boolean awaitInitialized(long timeout, TimeUnit unit) throws InterruptedException {
+        return kvCache.awaitInitialized(timeout, unit);
+    }
+
+    /**
+     * Gets the decoded values, by key relative to the root path of the {@link KVCache}.
+     */
+    public ImmutableMap<String, T> getMap() {
+        return decoded;
+    }
+
+    /**
+     * Gets the decoded value of a key.
+     *
+     * @param key the key relative to the root path of the {@link KVCache}
+     * @return the decoded value, or {@link Optional#empty()} if the key is not in the cache or could not be decoded
+     */
+    public Optional<T> get(String key) {
+        return Optional.ofNullable(decoded.get(key));
+    }
+
+    /**
+     * Gets the underlying {@link KVCache}.
+     */
+    public KVCache getKVCache() {
+        return kvCache;
+    }
+
+    /**
+     * Adds a listener notified with the decoded values each time they change, according to the
+     * {@link com.orbitz.consul.config.ListenerDispatchMode} of the {@link KVCache}.
+     * A listener added to a running cache is notified immediately with the current values.
+     */
+    public synchronized boolean addListener(ConsulCache.Listener<String, T> listener) {
+        ListenerDispatcher<String, T> dispatcher = ListenerDispatcher.create(listener, kvCache.getCacheConfig());
+        boolean added = listeners.add(dispatcher);
+        if (applied && kvCache.getState() != ConsulCache.State.stopped) {
+            dispatcher.dispatch(decoded);
+        }
+        return added;
+    }
+
+    public List<ConsulCache.Listener<String, T>> getListeners() {
+        return Collections.unmodifiableList(listeners.stream()
+                .map(ListenerDispatcher::getListener)
+                .collect(Collectors.toList()));
+    }
+
+    public boolean removeListener(ConsulCache.Listener<String, T> listener) {
+        for (ListenerDispatcher<String, T> dispatcher : listeners) {
+            if (dispatcher.getListener().equals(listener)) {
+                return listeners.remove(dispatcher);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the notification metrics of a listener.
+     *
+     * @return the metrics, or {@link Optional#empty()} if the listener was not added to the cache
+     */
+    public Optional<ListenerStats> getListenerStats(ConsulCache.Listener<String, T> listener) {
+        return listeners.stream()
+                .filter(dispatcher -> dispatcher.getListener().equals(listener))
+                .findFirst()
+                .map(ListenerDispatcher::getStats);
+    }
+
+    /**
+     * Gets the number of values decoded since the cache was created.
+     */
+    public long getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    /**
+     * Gets the number of values which could not be decoded.
+     */
+    public long getDecodeFailureCount() {
+        return decodeFailureCount.get();
+    }
+
+    /**
+     * Factory method to construct a typed view of a {@link KVCache}.
+     *
+     * @param kvCache the cache to decode; if it is already started, its current values are decoded immediately
+     * @param decoder the decoder of the values
+     * @return the cache object
+     */
+    public static <T> TypedKVCache<T> newCache(KVCache kvCache, Decoder<T> decoder) {
+        Preconditions.checkNotNull(kvCache, "KV cache cannot be null");
+        Preconditions.checkNotNull(decoder, "Decoder cannot be null");
+        return new TypedKVCache<>(kvCache, decoder);
+    }
+}
@@ -0,0 +1,209 @@
+package com.orbitz.consul.cache;
+
+import com.orbitz.consul.async.ConsulResponseCallback;
+import com.orbitz.consul.model.ConsulResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares blocking queries between caches watching the same endpoint with the same options.
+ * <p>
+ * Every {@link ConsulCache} created with watch multiplexing enabled subscribes to a shared watch
+ * identified by its endpoint and query options. Only one blocking query per shared watch is parked
+ * on the Consul server at any time, and its response is fanned out to every subscribed cache.
+ * A cache coming back with an index older than the last response of its shared watch is served
+ * that response immediately; any other cache waits for the next response.
+ */
+public class WatchMultiplexer {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(WatchMultiplexer.class);
+
+    private final Map<List<Object>, SharedWatch<?>> watches = new HashMap<>();
+    private final AtomicInteger liveConnections = new AtomicInteger();
+    private final AtomicInteger logicalWatches = new AtomicInteger();
+
+    /**
+     * Gets the number of blocking queries currently in flight for shared watches.
+     */
+    public int getLiveConnections() {
+        return liveConnections.get();
+    }
+
+    /**
+     * Gets the number of caches currently subscribed to a shared watch.
+     */
+    public int getLogicalWatches() {
+        return logicalWatches.get();
+    }
+
+    /**
+     * Gets the number of distinct watches currently shared between caches.
+     */
+    public synchronized int getSharedWatches() {
+        return watches.size();
+    }
+
+    <V> ConsulCache.CallbackConsumer<V> subscribe(List<Object> watchKey, ConsulCache.CallbackConsumer<V> delegate) {
+        return new Subscription<>(watchKey, delegate);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <V> SharedWatch<V> attach(List<Object> watchKey, ConsulCache.CallbackConsumer<V> delegate) {
+        SharedWatch<V> watch = (SharedWatch<V>) watches.computeIfAbsent(watchKey, k -> new SharedWatch<>(delegate));
+        watch.subscribers++;
+        logicalWatches.incrementAndGet();
+        return watch;
+    }
+
+    private synchronized void detach(List<Object> watchKey, SharedWatch<?> watch) {
+        logicalWatches.decrementAndGet();
+        if (--watch.subscribers == 0) {
+            watches.remove(watchKey, watch);
+        }
+    }
+
+    /**
+     * The {@link ConsulCache.CallbackConsumer} handed to a single cache.
+     * It attaches to its shared watch on first use and detaches when the cache is stopped.
+     */
+    final class Subscription<V> implements ConsulCache.CallbackConsumer<V> {
+        private final List<Object> watchKey;
+        private final ConsulCache.CallbackConsumer<V> delegate;
+        private SharedWatch<V> watch;
+        private boolean closed;
+
+        private Subscription(List<Object> watchKey, ConsulCache.CallbackConsumer<V> delegate) {
+            this.watchKey = watchKey;
+            this.delegate = delegate;
+        }
+
+        List<Object> getWatchKey() {
+            return watchKey;
+        }
+
+        @Override
+        public void consume(BigInteger index, ConsulResponseCallback<List<V>> callback) {
+            SharedWatch<V> current;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (watch == null) {
+                    watch = attach(watchKey, delegate);
+                }
+                current = watch;
+            }
+            current.consume(index, callback);
+        }
+
+        synchronized void close() {
+            if (!closed) {
+                closed = true;
+                if (watch != null) {
+                    detach(watchKey, watch);
+                }
+            }
+        }
+    }
+
+    private final class SharedWatch<V> implements ConsulResponseCallback<List<V>> {
+        private final ConsulCache.CallbackConsumer<V> delegate;
+        private final List<ConsulResponseCallback<List<V>>> waiters = new ArrayList<>();
+        private ConsulResponse<List<V>> lastResponse;
+        private boolean inFlight;
+        private int subscribers;
+
+        private SharedWatch(ConsulCache.CallbackConsumer<V> delegate) {
+            this.delegate = delegate;
+        }
+
+        void consume(BigInteger index, ConsulResponseCallback<List<V>> callback) {
+            ConsulResponse<List<V>> available = null;
+            boolean poll = false;
+            synchronized (this) {
+                if (isNewer(lastResponse, index)) {
+                    available = lastResponse;
+                } else {
+                    waiters.add(callback);
+                    if (!inFlight) {
+                        inFlight = true;
+                        poll = true;
+                    }
+                }
+            }
+
+            if (available != null) {
+                callback.onComplete(available);
+            } else if (poll) {
+                liveConnections.incrementAndGet();
+                try {
+                    delegate.consume(index, this);
+                } catch (RuntimeException e) {
+                    onFailure(e);
+                }
+            }
+        }
+
+        /**
+         * Checks whether a subscriber asking with the given index has not seen the given response yet, comparing
+         * with the index the subscriber would block on after that response.
+         */
+        private boolean isNewer(ConsulResponse<List<V>> response, BigInteger index) {
+            if (response == null) {
+                return false;
+            }
+            if (index == null) {
+                return true;
+            }
+            return response.getIndex() != null && index.compareTo(ConsulCache.normalizeIndex(response.getIndex())) < 0;
+        }
+
+        @Override
+        public void onComplete(ConsulResponse<List<V>> consulResponse) {
+            List<ConsulResponseCallback<List<V>>> callbacks;
+            synchronized (this) {
+                lastResponse = consulResponse;
+                callbacks = drain();
+            }
+            for (ConsulResponseCallback<List<V>> callback : callbacks) {
+                try {
+                    callback.onComplete(consulResponse);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Shared watch subscriber threw an exception.", e);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable throwable) {
+            List<ConsulResponseCallback<List<V>>> callbacks;
+            synchronized (this) {
+                callbacks = drain();
+            }
+            for (ConsulResponseCallback<List<V>> callback : callbacks) {
+                try {
+                    callback.onFailure(throwable);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Shared watch subscriber threw an exception.", e);
+                }
+            }
+        }
+
+        private List<ConsulResponseCallback<List<V>>> drain() {
+            if (inFlight) {
+                inFlight = false;
+                liveConnections.decrementAndGet();
+            }
+            List<ConsulResponseCallback<List<V>>> callbacks = new ArrayList<>(waiters);
+            waiters.clear();
+            return callbacks;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.orbitz.consul.config;
+
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+final class BackOffPolicies {
+
+    private BackOffPolicies() {
+    }
+
+    static long randomMillis(long min, long max) {
+        return min == max ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+    }
+
+    static void checkDelays(Duration minDelay, Duration maxDelay) {
+        Preconditions.checkNotNull(minDelay, "Minimum delay cannot be null");
+        Preconditions.checkNotNull(maxDelay, "Maximum delay cannot be null");
+        Preconditions.checkArgument(!minDelay.isNegative(), "Minimum delay must be positive");
+        Preconditions.checkArgument(!maxDelay.minus(minDelay).isNegative(), "Minimum delay must be less than maximum delay");
+    }
+}
@@ -0,0 +1,57 @@
+package com.orbitz.consul.config;
+
+import java.time.Duration;
+
+/**
+ * Computes the delay before a cache retries a failed request.
+ * <p>
+ * Policies are shared by all the caches of a {@link CacheConfig}: the state of a cache is passed on each call,
+ * and is reset when a request succeeds.
+ */
+public interface BackOffPolicy {
+
+    /**
+     * Gets the delay before the next request.
+     *
+     * @param consecutiveFailures the number of failed requests since the last successful one, starting at 1.
+     * @param previousDelay the delay returned for the previous failure, or {@link Duration#ZERO} after the first one.
+     * @return the delay, which must not be negative.
+     */
+    Duration nextDelay(int consecutiveFailures, Duration previousDelay);
+
+    /**
+     * A random delay between {@code minDelay} and {@code maxDelay} (inclusive), whatever the number of failures.
+     * This is the policy used when no other policy is configured.
+     */
+    static BackOffPolicy uniform(Duration minDelay, Duration maxDelay) {
+        BackOffPolicies.checkDelays(minDelay, maxDelay);
+        return (consecutiveFailures, previousDelay) -> Duration.ofMillis(
+                BackOffPolicies.randomMillis(minDelay.toMillis(), maxDelay.toMillis()));
+    }
+
+    /**
+     * A delay doubling with each consecutive failure from {@code initialDelay} up to {@code maxDelay},
+     * with a random jitter of up to half the delay so that clients failing together do not retry together.
+     */
+    static BackOffPolicy exponential(Duration initialDelay, Duration maxDelay) {
+        BackOffPolicies.checkDelays(initialDelay, maxDelay);
+        return (consecutiveFailures, previousDelay) -> {
+            int shift = Math.min(Math.max(consecutiveFailures - 1, 0), 30);
+            long cap = Math.min(maxDelay.toMillis(), initialDelay.toMillis() << shift);
+            return Duration.ofMillis(BackOffPolicies.randomMillis(cap / 2, cap));
+        };
+    }
+
+    /**
+     * A random delay between {@code baseDelay} and three times the previous delay, capped at {@code maxDelay}
+     * ("decorrelated jitter"). Delays grow with consecutive failures while staying spread between clients.
+     */
+    static BackOffPolicy decorrelatedJitter(Duration baseDelay, Duration maxDelay) {
+        BackOffPolicies.checkDelays(baseDelay, maxDelay);
+        return (consecutiveFailures, previousDelay) -> {
+            long base = baseDelay.toMillis();
+            long upper = Math.max(base, Math.min(maxDelay.toMillis(), previousDelay.toMillis() * 3));
+            return Duration.ofMillis(BackOffPolicies.randomMillis(base, upper));
+        };
+    }
+}
@@ -2,9 +2,15 @@ package com.orbitz.consul.config;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.orbitz.consul.cache.HashedWheelTimer;
+import com.orbitz.consul.cache.TokenBucket;
+import com.orbitz.consul.util.VirtualThreads;
 import org.slf4j.Logger;
 
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
 
 public class CacheConfig {
 
@@ -22,6 +28,22 @@ public class CacheConfig {
     static final Duration DEFAULT_TIMEOUT_AUTO_ADJUSTMENT_MARGIN = Duration.ofSeconds(2);
     @VisibleForTesting
     static final RefreshErrorLogConsumer DEFAULT_REFRESH_ERROR_LOG_CONSUMER = Logger::error;
+    @VisibleForTesting
+    static final boolean DEFAULT_WATCH_MULTIPLEXING_ENABLED = false;
+    @VisibleForTesting
+    static final ExecutionMode DEFAULT_EXECUTION_MODE = ExecutionMode.PLATFORM_THREADS;
+    @VisibleForTesting
+    static final boolean DEFAULT_COMPACT_KEY_VALUES_ENABLED = false;
+    @VisibleForTesting
+    static final Duration DEFAULT_SNAPSHOT_INTERVAL = Duration.ofSeconds(5);
+    @VisibleForTesting
+    static final boolean DEFAULT_AGENT_CACHE_ENABLED = false;
+    @VisibleForTesting
+    static final Duration DEFAULT_WAKEUP_JITTER = Duration.ZERO;
+    @VisibleForTesting
+    static final ListenerDispatchMode DEFAULT_LISTENER_DISPATCH_MODE = ListenerDispatchMode.SYNCHRONOUS;
+    @VisibleForTesting
+    static final int DEFAULT_LISTENER_QUEUE_CAPACITY = 16;
 
     private final Duration watchDuration;
     private final Duration minBackOffDelay;
@@ -31,10 +53,31 @@ public class CacheConfig {
     private final Duration timeoutAutoAdjustmentMargin;
     private final boolean timeoutAutoAdjustmentEnabled;
     private final RefreshErrorLogConsumer refreshErrorLogConsumer;
+    private final boolean watchMultiplexingEnabled;
+    private final ExecutionMode executionMode;
+    private final HashedWheelTimer timerWheel;
+    private final boolean compactKeyValuesEnabled;
+    private final Path snapshotDirectory;
+    private final Duration snapshotInterval;
+    private final boolean agentCacheEnabled;
+    private final Duration agentCacheMaxAge;
+    private final Duration agentCacheStaleIfError;
+    private final Double rateLimit;
+    private final TokenBucket globalRateLimiter;
+    private final Duration wakeupJitter;
+    private final BackOffPolicy backOffPolicy;
+    private final ListenerDispatchMode listenerDispatchMode;
+    private final int listenerQueueCapacity;
+    private final Executor listenerExecutor;
 
     private CacheConfig(Duration watchDuration, Duration minBackOffDelay, Duration maxBackOffDelay, Duration minDelayBetweenRequests,
                         Duration minDelayOnEmptyResult, boolean timeoutAutoAdjustmentEnabled,
-                        Duration timeoutAutoAdjustmentMargin, RefreshErrorLogConsumer refreshErrorLogConsumer) {
+                        Duration timeoutAutoAdjustmentMargin, RefreshErrorLogConsumer refreshErrorLogConsumer,
+                        boolean watchMultiplexingEnabled, ExecutionMode executionMode, HashedWheelTimer timerWheel,
+                        boolean compactKeyValuesEnabled, Path snapshotDirectory, Duration snapshotInterval, boolean agentCacheEnabled,
+                        Duration agentCacheMaxAge, Duration agentCacheStaleIfError, Double rateLimit,
+                        TokenBucket globalRateLimiter, Duration wakeupJitter, BackOffPolicy backOffPolicy,
+                        ListenerDispatchMode listenerDispatchMode, int listenerQueueCapacity, Executor listenerExecutor) {
         this.watchDuration = watchDuration;
         this.minBackOffDelay = minBackOffDelay;
         this.maxBackOffDelay = maxBackOffDelay;
@@ -43,6 +86,22 @@ public class CacheConfig {
         this.timeoutAutoAdjustmentEnabled = timeoutAutoAdjustmentEnabled;
         this.timeoutAutoAdjustmentMargin = timeoutAutoAdjustmentMargin;
         this.refreshErrorLogConsumer = refreshErrorLogConsumer;
+        this.watchMultiplexingEnabled = watchMultiplexingEnabled;
+        this.executionMode = executionMode;
+        this.timerWheel = timerWheel;
+        this.compactKeyValuesEnabled = compactKeyValuesEnabled;
+        this.snapshotDirectory = snapshotDirectory;
+        this.snapshotInterval = snapshotInterval;
+        this.agentCacheEnabled = agentCacheEnabled;
+        this.agentCacheMaxAge = agentCacheMaxAge;
+        this.agentCacheStaleIfError = agentCacheStaleIfError;
+        this.rateLimit = rateLimit;
+        this.globalRateLimiter = globalRateLimiter;
+        this.wakeupJitter = wakeupJitter;
+        this.backOffPolicy = backOffPolicy;
+        this.listenerDispatchMode = listenerDispatchMode;
+        this.listenerQueueCapacity = listenerQueueCapacity;
+        this.listenerExecutor = listenerExecutor;
     }
 
     /**
@@ -102,6 +161,120 @@ public class CacheConfig {
         return refreshErrorLogConsumer;
     }
 
+    /**
+     * Are identical watches shared between caches?
+     */
+    public boolean isWatchMultiplexingEnabled() {
+        return watchMultiplexingEnabled;
+    }
+
+    /**
+     * Gets the kind of threads running cache polling and listener callbacks.
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Gets the timer wheel shared by the caches, if any.
+     */
+    public Optional<HashedWheelTimer> getTimerWheel() {
+        return Optional.ofNullable(timerWheel);
+    }
+
+    /**
+     * Do KV caches hold {@link com.orbitz.consul.model.kv.CompactValue} instances?
+     */
+    public boolean isCompactKeyValuesEnabled() {
+        return compactKeyValuesEnabled;
+    }
+
+    /**
+     * Gets the directory where caches persist their last snapshot, if any.
+     */
+    public Optional<Path> getSnapshotDirectory() {
+        return Optional.ofNullable(snapshotDirectory);
+    }
+
+    /**
+     * Gets the minimum time between two writes of the snapshot of a cache.
+     */
+    public Duration getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    /**
+     * Do the caches supporting it read from the cache of the local agent?
+     */
+    public boolean isAgentCacheEnabled() {
+        return agentCacheEnabled;
+    }
+
+    /**
+     * Gets the maximum age of the responses served from the agent cache, if any.
+     */
+    public Optional<Duration> getAgentCacheMaxAge() {
+        return Optional.ofNullable(agentCacheMaxAge);
+    }
+
+    /**
+     * Gets how long the agent cache may serve stale responses when the servers cannot be reached, if any.
+     */
+    public Optional<Duration> getAgentCacheStaleIfError() {
+        return Optional.ofNullable(agentCacheStaleIfError);
+    }
+
+    /**
+     * Gets the maximum number of requests per second of each cache, if any.
+     */
+    public Optional<Double> getRateLimit() {
+        return Optional.ofNullable(rateLimit);
+    }
+
+    /**
+     * Gets the rate limiter shared by all the caches created with this configuration, if any.
+     */
+    public Optional<TokenBucket> getGlobalRateLimiter() {
+        return Optional.ofNullable(globalRateLimiter);
+    }
+
+    /**
+     * Gets the maximum random delay added before each new request of a cache.
+     */
+    public Duration getWakeupJitter() {
+        return wakeupJitter;
+    }
+
+    /**
+     * Gets the policy computing the delay before retrying a failed request.
+     * Unless another policy was set, this is a {@link BackOffPolicy#uniform(Duration, Duration)} policy between
+     * the minimum and maximum back-off delays.
+     */
+    public BackOffPolicy getBackOffPolicy() {
+        return backOffPolicy;
+    }
+
+    /**
+     * Gets how caches notify their listeners.
+     */
+    public ListenerDispatchMode getListenerDispatchMode() {
+        return listenerDispatchMode;
+    }
+
+    /**
+     * Gets the number of snapshots kept for a busy listener with {@link ListenerDispatchMode#QUEUED}.
+     */
+    public int getListenerQueueCapacity() {
+        return listenerQueueCapacity;
+    }
+
+    /**
+     * Gets the executor notifying the listeners in the asynchronous dispatch modes, if any.
+     */
+    public Optional<Executor> getListenerExecutor() {
+        return Optional.ofNullable(listenerExecutor);
+    }
+
     /**
      * Creates a new {@link CacheConfig.Builder} object.
      *
@@ -120,6 +293,22 @@ public class CacheConfig {
         private Duration timeoutAutoAdjustmentMargin = DEFAULT_TIMEOUT_AUTO_ADJUSTMENT_MARGIN;
         private boolean timeoutAutoAdjustmentEnabled = DEFAULT_TIMEOUT_AUTO_ADJUSTMENT_ENABLED;
         private RefreshErrorLogConsumer refreshErrorLogConsumer = DEFAULT_REFRESH_ERROR_LOG_CONSUMER;
+        private boolean watchMultiplexingEnabled = DEFAULT_WATCH_MULTIPLEXING_ENABLED;
+        private ExecutionMode executionMode = DEFAULT_EXECUTION_MODE;
+        private HashedWheelTimer timerWheel;
+        private boolean compactKeyValuesEnabled = DEFAULT_COMPACT_KEY_VALUES_ENABLED;
+        private Path snapshotDirectory;
+        private Duration snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+        private boolean agentCacheEnabled = DEFAULT_AGENT_CACHE_ENABLED;
+        private Duration agentCacheMaxAge;
+        private Duration agentCacheStaleIfError;
+        private Double rateLimit;
+        private Double globalRateLimit;
+        private Duration wakeupJitter = DEFAULT_WAKEUP_JITTER;
+        private BackOffPolicy backOffPolicy;
+        private ListenerDispatchMode listenerDispatchMode = DEFAULT_LISTENER_DISPATCH_MODE;
+        private int listenerQueueCapacity = DEFAULT_LISTENER_QUEUE_CAPACITY;
+        private Executor listenerExecutor;
 
         private Builder() {
 
@@ -215,10 +404,188 @@ public class CacheConfig {
             return this;
         }
 
+        /**
+         * Enable/Disable the sharing of identical watches between caches.
+         * When enabled, caches watching the same endpoint with the same options share a single blocking query.
+         */
+        public Builder withWatchMultiplexing(boolean enabled) {
+            this.watchMultiplexingEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the kind of threads running cache polling and listener callbacks.
+         * With {@link ExecutionMode#VIRTUAL_THREADS}, caches without an external executor share a single timer thread.
+         * @throws UnsupportedOperationException if virtual threads are requested and not available.
+         */
+        public Builder withExecutionMode(ExecutionMode executionMode) {
+            this.executionMode = Preconditions.checkNotNull(executionMode, "Execution mode cannot be null");
+            if (executionMode == ExecutionMode.VIRTUAL_THREADS && !VirtualThreads.isSupported()) {
+                throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+            }
+            return this;
+        }
+
+        /**
+         * Sets a timer wheel used by all the caches created with this configuration without an external executor.
+         * The caches then share the timer thread instead of each starting its own scheduler thread.
+         * The timer is not stopped by the caches: it must be stopped once they are all stopped.
+         */
+        public Builder withTimerWheel(HashedWheelTimer timerWheel) {
+            this.timerWheel = Preconditions.checkNotNull(timerWheel, "Timer wheel cannot be null");
+            return this;
+        }
+
+        /**
+         * Enable/Disable compact values in KV caches.
+         * When enabled, KV caches hold {@link com.orbitz.consul.model.kv.CompactValue} instances, which only keep
+         * the decoded bytes of each value instead of both the base64 string and its decoded form.
+         */
+        public Builder withCompactKeyValues(boolean enabled) {
+            this.compactKeyValuesEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the directory where caches persist the last snapshot of their entries along with its Consul index.
+         * When a snapshot of a cache is found on start, the cache is initialized from it and its first blocking
+         * query resumes from the persisted index, instead of fetching all the entries again.
+         * The directory is created if needed.
+         */
+        public Builder withSnapshotDirectory(Path directory) {
+            this.snapshotDirectory = Preconditions.checkNotNull(directory, "Snapshot directory cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the minimum time between two writes of the snapshot of a cache. Snapshots are written in the
+         * background, and the responses received in the meantime are coalesced into one write of the latest entries.
+         * @throws IllegalArgumentException if {@code interval} is negative.
+         */
+        public Builder withSnapshotInterval(Duration interval) {
+            this.snapshotInterval = Preconditions.checkNotNull(interval, "Interval cannot be null");
+            Preconditions.checkArgument(!interval.isNegative(), "Interval must be positive");
+            return this;
+        }
+
+        /**
+         * Enable/Disable the agent cache for the caches supporting it ({@link com.orbitz.consul.cache.ServiceHealthCache}
+         * and {@link com.orbitz.consul.cache.ServiceCatalogCache}).
+         * When enabled, their blocking queries are made with the {@code cached} consistency mode, so that the local agent
+         * serves them from its background-refreshed cache and the servers only see one watch per agent.
+         * Caches created with an explicit cached consistency mode keep it.
+         */
+        public Builder withAgentCache(boolean enabled) {
+            this.agentCacheEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the maximum age of the responses served from the agent cache ({@code Cache-Control: max-age}).
+         * @throws IllegalArgumentException if {@code maxAge} is negative.
+         */
+        public Builder withAgentCacheMaxAge(Duration maxAge) {
+            this.agentCacheMaxAge = Preconditions.checkNotNull(maxAge, "Max age cannot be null");
+            Preconditions.checkArgument(!maxAge.isNegative(), "Max age must be positive");
+            return this;
+        }
+
+        /**
+         * Sets how long the agent cache may serve stale responses when the servers cannot be reached
+         * ({@code Cache-Control: stale-if-error}).
+         * @throws IllegalArgumentException if {@code staleIfError} is negative.
+         */
+        public Builder withAgentCacheStaleIfError(Duration staleIfError) {
+            this.agentCacheStaleIfError = Preconditions.checkNotNull(staleIfError, "Stale duration cannot be null");
+            Preconditions.checkArgument(!staleIfError.isNegative(), "Stale duration must be positive");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests per second of each cache, with a burst of one second of requests.
+         * Requests exceeding the rate are delayed, including retries after errors.
+         * @throws IllegalArgumentException if {@code requestsPerSecond} is not positive.
+         */
+        public Builder withRateLimit(double requestsPerSecond) {
+            Preconditions.checkArgument(requestsPerSecond > 0, "Rate limit must be positive");
+            this.rateLimit = requestsPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests per second of all the caches created with this configuration,
+         * usually all the caches of a {@link com.orbitz.consul.Consul} instance, with a burst of one second of requests.
+         * Requests exceeding the rate are delayed, including retries after errors.
+         * @throws IllegalArgumentException if {@code requestsPerSecond} is not positive.
+         */
+        public Builder withGlobalRateLimit(double requestsPerSecond) {
+            Preconditions.checkArgument(requestsPerSecond > 0, "Rate limit must be positive");
+            this.globalRateLimit = requestsPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the maximum random delay added before each new request of a cache, so that the clients woken up
+         * by the same change do not all send their next blocking query at once.
+         * @throws IllegalArgumentException if {@code jitter} is negative.
+         */
+        public Builder withWakeupJitter(Duration jitter) {
+            this.wakeupJitter = Preconditions.checkNotNull(jitter, "Jitter cannot be null");
+            Preconditions.checkArgument(!jitter.isNegative(), "Jitter must be positive");
+            return this;
+        }
+
+        /**
+         * Sets the policy computing the delay before retrying a failed request, such as
+         * {@link BackOffPolicy#exponential(Duration, Duration)} or {@link BackOffPolicy#decorrelatedJitter(Duration, Duration)}.
+         * The policy replaces the back-off delays set with {@link #withBackOffDelay(Duration, Duration)}.
+         */
+        public Builder withBackOffPolicy(BackOffPolicy backOffPolicy) {
+            this.backOffPolicy = Preconditions.checkNotNull(backOffPolicy, "Back-off policy cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how caches notify their listeners. In the asynchronous modes, a slow listener does not delay
+         * the next request of the cache nor the other listeners.
+         * {@link com.orbitz.consul.cache.ConsulCache.DeltaListener Delta listeners} are always notified on the
+         * polling thread, since they must not miss any change.
+         */
+        public Builder withListenerDispatch(ListenerDispatchMode mode) {
+            this.listenerDispatchMode = Preconditions.checkNotNull(mode, "Listener dispatch mode cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the number of snapshots kept for a busy listener with {@link ListenerDispatchMode#QUEUED}.
+         * @throws IllegalArgumentException if {@code capacity} is not positive.
+         */
+        public Builder withListenerQueueCapacity(int capacity) {
+            Preconditions.checkArgument(capacity > 0, "Listener queue capacity must be positive");
+            this.listenerQueueCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets the executor notifying the listeners in the asynchronous dispatch modes.
+         * Each listener is still notified with one snapshot at a time.
+         * By default, listeners are notified on a shared pool of daemon threads, or on virtual threads
+         * with {@link ExecutionMode#VIRTUAL_THREADS}.
+         */
+        public Builder withListenerExecutor(Executor executor) {
+            this.listenerExecutor = Preconditions.checkNotNull(executor, "Listener executor cannot be null");
+            return this;
+        }
+
         public CacheConfig build() {
             return new CacheConfig(watchDuration, minBackOffDelay, maxBackOffDelay, minDelayBetweenRequests, minDelayOnEmptyResult,
                     timeoutAutoAdjustmentEnabled, timeoutAutoAdjustmentMargin,
-                    refreshErrorLogConsumer);
+                    refreshErrorLogConsumer, watchMultiplexingEnabled, executionMode, timerWheel,
+                    compactKeyValuesEnabled, snapshotDirectory, snapshotInterval, agentCacheEnabled, agentCacheMaxAge,
+                    agentCacheStaleIfError, rateLimit,
+                    globalRateLimit == null ? null : new TokenBucket(globalRateLimit), wakeupJitter,
+                    backOffPolicy == null ? BackOffPolicy.uniform(minBackOffDelay, maxBackOffDelay) : backOffPolicy,
+                    listenerDispatchMode, listenerQueueCapacity, listenerExecutor);
         }
     }
 
@@ -0,0 +1,18 @@
+package com.orbitz.consul.config;
+
+/**
+ * The kind of threads used to run cache polling, listener callbacks and asynchronous HTTP calls.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Platform threads: a scheduler thread per cache and a cached thread pool for the HTTP dispatcher.
+     */
+    PLATFORM_THREADS,
+
+    /**
+     * Virtual threads: caches share a single timer thread and run their callbacks on virtual threads,
+     * and the HTTP dispatcher starts a virtual thread per call. Requires Java 21 or later.
+     */
+    VIRTUAL_THREADS
+}
@@ -0,0 +1,24 @@
+package com.orbitz.consul.config;
+
+/**
+ * How caches notify their {@link com.orbitz.consul.cache.ConsulCache.Listener listeners}.
+ */
+public enum ListenerDispatchMode {
+
+    /**
+     * Listeners are notified on the polling thread, one after the other, before the next request is sent.
+     */
+    SYNCHRONOUS,
+
+    /**
+     * Each listener is notified on the listener executor, one snapshot at a time. Up to the listener queue capacity
+     * of snapshots are kept while the listener is busy; when the queue is full, the oldest snapshot is dropped.
+     */
+    QUEUED,
+
+    /**
+     * Each listener is notified on the listener executor, one snapshot at a time. While the listener is busy,
+     * only the latest snapshot is kept, so that slow listeners skip intermediate snapshots.
+     */
+    COALESCING
+}
@@ -52,6 +52,7 @@ public class ConsulResponse<T> {
     private final boolean knownLeader;
     private final BigInteger index;
     private final Optional<CacheResponseInfo> cacheResponseInfo;
+    private final Optional<String> contentHash;
 
     @VisibleForTesting
     static CacheResponseInfo buildCacheReponseInfo(String headerHitMiss, String headerAge) throws NumberFormatException {
@@ -66,12 +67,24 @@ public class ConsulResponse<T> {
         this(response, lastContact, knownLeader, index, Optional.ofNullable(buildCacheReponseInfo(headerHitMiss, headerAge)));
     }
 
+    public ConsulResponse(T response, long lastContact, boolean knownLeader, BigInteger index, String headerHitMiss, String headerAge,
+                          String headerContentHash) throws NumberFormatException {
+        this(response, lastContact, knownLeader, index, Optional.ofNullable(buildCacheReponseInfo(headerHitMiss, headerAge)),
+                Optional.ofNullable(headerContentHash));
+    }
+
     public ConsulResponse(T response, long lastContact, boolean knownLeader, BigInteger index, Optional<CacheResponseInfo> cacheInfo) {
+        this(response, lastContact, knownLeader, index, cacheInfo, Optional.empty());
+    }
+
+    private ConsulResponse(T response, long lastContact, boolean knownLeader, BigInteger index, Optional<CacheResponseInfo> cacheInfo,
+                           Optional<String> contentHash) {
         this.response = response;
         this.lastContact = lastContact;
         this.knownLeader = knownLeader;
         this.index = index;
         this.cacheResponseInfo = cacheInfo;
+        this.contentHash = contentHash;
     }
 
     public T getResponse() {
@@ -97,6 +110,22 @@ public class ConsulResponse<T> {
         return cacheResponseInfo;
     }
 
+    /**
+     * Creates a response with the same headers as this one and another content.
+     */
+    public <U> ConsulResponse<U> withResponse(U response) {
+        return new ConsulResponse<>(response, lastContact, knownLeader, index, cacheResponseInfo, contentHash);
+    }
+
+    /**
+     * Gets the hash of the response content, returned by the agent endpoints supporting hash-based blocking queries.
+     *
+     * @see <a href="https://www.consul.io/api-docs/features/blocking#hash-based-blocking-queries">Hash-based blocking queries</a>
+     */
+    public Optional<String> getContentHash() {
+        return contentHash;
+    }
+
     @Override
     public String toString() {
         return "ConsulResponse{" +
@@ -105,6 +134,7 @@ public class ConsulResponse<T> {
                 ", knownLeader=" + knownLeader +
                 ", index=" + index +
                 ", cache=" + cacheResponseInfo +
+                ", contentHash=" + contentHash.orElse(null) +
                 '}';
     }
 
@@ -52,4 +52,7 @@ public abstract class CatalogService {
 
     @JsonProperty("NodeMeta")
     public abstract Map<String,String> getNodeMeta();
+
+    @JsonProperty("ModifyIndex")
+    public abstract Optional<Long> getModifyIndex();
 }
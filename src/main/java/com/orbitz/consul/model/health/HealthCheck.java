@@ -44,4 +44,7 @@ public abstract class HealthCheck {
     @JsonDeserialize(as = ImmutableList.class, contentAs = String.class)
     public abstract List<String> getServiceTags();
 
+    @JsonProperty("ModifyIndex")
+    public abstract Optional<Long> getModifyIndex();
+
 }
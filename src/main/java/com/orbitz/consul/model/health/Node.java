@@ -30,4 +30,7 @@ public abstract class Node {
 
     @JsonProperty("Meta")
     public abstract Optional<Map<String,String>> getNodeMeta();
+
+    @JsonProperty("ModifyIndex")
+    public abstract Optional<Long> getModifyIndex();
 }
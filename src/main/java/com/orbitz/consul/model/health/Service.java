@@ -42,4 +42,7 @@ public abstract class Service {
 
     @JsonProperty("Weights")
     public abstract Optional<ServiceWeights> getWeights();
+
+    @JsonProperty("ModifyIndex")
+    public abstract Optional<Long> getModifyIndex();
 }
@@ -0,0 +1,154 @@
+package com.orbitz.consul.model.kv;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.base.MoreObjects;
+import com.google.common.io.BaseEncoding;
+import com.orbitz.consul.util.UnsignedLongDeserializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A {@link Value} holding only the decoded bytes of its value.
+ * <p>
+ * The base64 value is decoded once, straight from the JSON token, and is not kept:
+ * {@link #getValue()} encodes it again on each call. {@link #getValueAsByteBuffer()} gives a
+ * read-only view of the bytes without copying them, while {@link #getValueAsBytes()} returns a copy.
+ */
+@JsonDeserialize(as = CompactValue.class)
+@JsonSerialize(as = CompactValue.class)
+public final class CompactValue extends Value {
+
+    private final long createIndex;
+    private final long modifyIndex;
+    private final long lockIndex;
+    private final String key;
+    private final long flags;
+    private final byte[] value;
+    private final String session;
+
+    @JsonCreator
+    CompactValue(@JsonProperty("CreateIndex") long createIndex,
+                 @JsonProperty("ModifyIndex") long modifyIndex,
+                 @JsonProperty("LockIndex") long lockIndex,
+                 @JsonProperty("Key") String key,
+                 @JsonProperty("Flags") @JsonDeserialize(using = UnsignedLongDeserializer.class) long flags,
+                 @JsonProperty("Value") byte[] value,
+                 @JsonProperty("Session") String session) {
+        this.createIndex = createIndex;
+        this.modifyIndex = modifyIndex;
+        this.lockIndex = lockIndex;
+        this.key = Objects.requireNonNull(key, "key");
+        this.flags = flags;
+        this.value = value;
+        this.session = session;
+    }
+
+    /**
+     * Creates a compact copy of a value.
+     */
+    public static CompactValue copyOf(Value value) {
+        if (value instanceof CompactValue) {
+            return (CompactValue) value;
+        }
+        return new CompactValue(value.getCreateIndex(), value.getModifyIndex(), value.getLockIndex(), value.getKey(),
+                value.getFlags(), value.getValueAsBytes().orElse(null), value.getSession().orElse(null));
+    }
+
+    @Override
+    public long getCreateIndex() {
+        return createIndex;
+    }
+
+    @Override
+    public long getModifyIndex() {
+        return modifyIndex;
+    }
+
+    @Override
+    public long getLockIndex() {
+        return lockIndex;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public long getFlags() {
+        return flags;
+    }
+
+    @Override
+    public Optional<String> getValue() {
+        return value == null ? Optional.empty() : Optional.of(BaseEncoding.base64().encode(value));
+    }
+
+    @Override
+    public Optional<String> getSession() {
+        return Optional.ofNullable(session);
+    }
+
+    @Override
+    public Optional<String> getValueAsString() {
+        return getValueAsString(Charset.defaultCharset());
+    }
+
+    @Override
+    public Optional<String> getValueAsString(Charset charset) {
+        return value == null ? Optional.empty() : Optional.of(new String(value, charset));
+    }
+
+    @Override
+    public Optional<byte[]> getValueAsBytes() {
+        return value == null ? Optional.empty() : Optional.of(value.clone());
+    }
+
+    @Override
+    public Optional<ByteBuffer> getValueAsByteBuffer() {
+        return value == null ? Optional.empty() : Optional.of(ByteBuffer.wrap(value).asReadOnlyBuffer());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CompactValue)) return false;
+
+        CompactValue that = (CompactValue) o;
+
+        return createIndex == that.createIndex &&
+                modifyIndex == that.modifyIndex &&
+                lockIndex == that.lockIndex &&
+                flags == that.flags &&
+                key.equals(that.key) &&
+                Arrays.equals(value, that.value) &&
+                Objects.equals(session, that.session);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = Objects.hash(createIndex, modifyIndex, lockIndex, key, flags, session);
+        return 31 * h + Arrays.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper("CompactValue")
+                .omitNullValues()
+                .add("createIndex", createIndex)
+                .add("modifyIndex", modifyIndex)
+                .add("lockIndex", lockIndex)
+                .add("key", key)
+                .add("flags", flags)
+                .add("value", getValue().orElse(null))
+                .add("session", session)
+                .toString();
+    }
+}
@@ -8,6 +8,7 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.google.common.io.BaseEncoding;
 import com.orbitz.consul.util.UnsignedLongDeserializer;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Optional;
 
@@ -56,4 +57,9 @@ public abstract class Value {
     public Optional<byte[]> getValueAsBytes() {
         return getValue().map(s -> BaseEncoding.base64().decode(s));
     }
+
+    @JsonIgnore
+    public Optional<ByteBuffer> getValueAsByteBuffer() {
+        return getValueAsBytes().map(b -> ByteBuffer.wrap(b).asReadOnlyBuffer());
+    }
 }
@@ -3,6 +3,7 @@ package com.orbitz.consul.monitoring;
 import com.orbitz.consul.cache.CacheDescriptor;
 
 import java.time.Duration;
+import java.util.Optional;
 
 public interface ClientEventCallback {
 
@@ -19,4 +20,6 @@ public interface ClientEventCallback {
     default void onCachePollingError(String clientName, CacheDescriptor cacheDescriptor, Throwable throwable) { }
 
     default void onCachePollingSuccess(String clientName, CacheDescriptor cacheDescriptor, boolean withNotification, Duration duration) { }
+
+    default void onCacheAgentCacheResponse(String clientName, CacheDescriptor cacheDescriptor, boolean hit, Optional<Long> ageInSeconds) { }
 }
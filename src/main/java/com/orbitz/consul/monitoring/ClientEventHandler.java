@@ -7,6 +7,7 @@ import okhttp3.Request;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
+import java.util.Optional;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -58,6 +59,10 @@ public class ClientEventHandler {
         EVENT_EXECUTOR.submit(() -> callback.onCachePollingSuccess(clientName, cacheDescriptor, withNotification, Duration.of(duration, ChronoUnit.MILLIS)));
     }
 
+    public void cacheAgentCacheResponse(CacheDescriptor cacheDescriptor, boolean hit, Optional<Long> ageInSeconds) {
+        EVENT_EXECUTOR.submit(() -> callback.onCacheAgentCacheResponse(clientName, cacheDescriptor, hit, ageInSeconds));
+    }
+
     public void stop() {
         EVENT_EXECUTOR.shutdownNow();
     }
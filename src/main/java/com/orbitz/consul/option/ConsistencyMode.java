@@ -2,6 +2,7 @@ package com.orbitz.consul.option;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 import com.google.common.collect.ImmutableMap;
@@ -89,6 +90,27 @@ public class ConsistencyMode {
         return name;
     }
 
+    /**
+     * Two consistency modes are equal when they have the same name and the same additional headers,
+     * so that cached modes created with the same directives are interchangeable.
+     */
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ConsistencyMode)) {
+            return false;
+        }
+        ConsistencyMode that = (ConsistencyMode) o;
+        return name.equals(that.name) && additionalHeaders.equals(that.additionalHeaders);
+    }
+
+    @Override
+    public final int hashCode() {
+        return Objects.hash(name, additionalHeaders);
+    }
+
     @Override
     public final String toString() {
         String s = name();
@@ -123,6 +123,6 @@ public class Http {
         long lastContact = lastContactHeaderValue == null ? 0 : NumberUtils.toLong(lastContactHeaderValue);
         boolean knownLeader = knownLeaderHeaderValue == null ? false : Boolean.valueOf(knownLeaderHeaderValue);
         return new ConsulResponse<>(response.body(), lastContact, knownLeader, index,
-                                    headers.get("X-Cache"), headers.get("Age"));
+                                    headers.get("X-Cache"), headers.get("Age"), headers.get("X-Consul-ContentHash"));
     }
 }
@@ -0,0 +1,99 @@
+package com.orbitz.consul.util;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.orbitz.consul.ConsulException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decodes the elements of a JSON array one at a time, so that only the current element is held in memory.
+ * <p>
+ * The underlying stream is closed once the last element is read, or when {@link #close()} is called.
+ * Decoding and I/O errors are thrown as {@link ConsulException}.
+ *
+ * @param <T> the type of the elements
+ */
+public final class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+
+    private final MappingIterator<T> values;
+    private boolean closed;
+
+    private JsonArrayIterator(MappingIterator<T> values) {
+        this.values = values;
+    }
+
+    /**
+     * Creates an iterator over the elements of the JSON array read from {@code in}.
+     * An empty input is decoded as an empty array.
+     */
+    public static <T> JsonArrayIterator<T> of(InputStream in, Class<T> type) {
+        try {
+            return new JsonArrayIterator<>(Jackson.MAPPER.readerFor(type).readValues(in));
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw new ConsulException("Unable to decode JSON array", e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (values.hasNextValue()) {
+                return true;
+            }
+        } catch (IOException e) {
+            close();
+            throw new ConsulException("Unable to decode JSON array", e);
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return values.nextValue();
+        } catch (IOException e) {
+            close();
+            throw new ConsulException("Unable to decode JSON array", e);
+        }
+    }
+
+    /**
+     * Gets a sequential stream of the remaining elements, closing this iterator when the stream is closed.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            closeQuietly(values);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing left to read from it
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.orbitz.consul;
+
+import com.orbitz.consul.cache.WatchMultiplexer;
+import com.orbitz.consul.config.ClientConfig;
+import com.orbitz.consul.monitoring.ClientEventCallback;
+import retrofit2.Retrofit;
+
+/**
+ * Allows tests to create CoordinateClient objects.
+ */
+public class CoordinateClientFactory {
+    private CoordinateClientFactory() {
+    }
+
+    public static CoordinateClient create(Retrofit retrofit, ClientConfig config, ClientEventCallback eventCallback,
+                                          Consul.NetworkTimeoutConfig networkTimeoutConfig) {
+        return new CoordinateClient(retrofit, config, eventCallback, networkTimeoutConfig, new WatchMultiplexer());
+    }
+}
@@ -0,0 +1,19 @@
+package com.orbitz.consul;
+
+import com.orbitz.consul.cache.WatchMultiplexer;
+import com.orbitz.consul.config.ClientConfig;
+import com.orbitz.consul.monitoring.ClientEventCallback;
+import retrofit2.Retrofit;
+
+/**
+ * Allows tests to create HealthClient objects.
+ */
+public class HealthClientFactory {
+    private HealthClientFactory() {
+    }
+
+    public static HealthClient create(Retrofit retrofit, ClientConfig config, ClientEventCallback eventCallback,
+                                      Consul.NetworkTimeoutConfig networkTimeoutConfig) {
+        return new HealthClient(retrofit, config, eventCallback, networkTimeoutConfig, new WatchMultiplexer());
+    }
+}
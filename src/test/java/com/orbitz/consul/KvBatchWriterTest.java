@@ -0,0 +1,129 @@
+package com.orbitz.consul;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.orbitz.consul.model.kv.ImmutableTxError;
+import com.orbitz.consul.model.kv.ImmutableTxResponse;
+import com.orbitz.consul.model.kv.ImmutableValue;
+import com.orbitz.consul.model.kv.Operation;
+import com.orbitz.consul.model.kv.TxResponse;
+import com.orbitz.consul.model.kv.Value;
+import com.orbitz.consul.model.kv.Verb;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class KvBatchWriterTest {
+
+    @Test
+    public void testSplitRespectsMaxOperations() {
+        KvBatchWriter writer = KvBatchWriter.builder(mock(KeyValueClient.class)).build();
+
+        List<List<Operation>> transactions = writer.split(operations(150, "v"));
+
+        assertEquals(3, transactions.size());
+        assertEquals(64, transactions.get(0).size());
+        assertEquals(64, transactions.get(1).size());
+        assertEquals(22, transactions.get(2).size());
+    }
+
+    @Test
+    public void testSplitRespectsMaxPayloadSize() {
+        KvBatchWriter writer = KvBatchWriter.builder(mock(KeyValueClient.class))
+                .withMaxPayloadBytes(10_000)
+                .build();
+
+        // each operation is a bit more than 4 KB once base64 encoded
+        List<List<Operation>> transactions = writer.split(operations(5, Strings.repeat("x", 3_000)));
+
+        assertEquals(3, transactions.size());
+        assertEquals(2, transactions.get(0).size());
+        assertEquals(2, transactions.get(1).size());
+        assertEquals(1, transactions.get(2).size());
+    }
+
+    @Test
+    public void testOversizedOperationIsSentAlone() {
+        KvBatchWriter writer = KvBatchWriter.builder(mock(KeyValueClient.class))
+                .withMaxPayloadBytes(100)
+                .build();
+
+        List<List<Operation>> transactions = writer.split(operations(2, Strings.repeat("x", 1_000)));
+
+        assertEquals(2, transactions.size());
+    }
+
+    @Test
+    public void testResultsAreMappedToOperations() {
+        Operation[] operations = {
+                Operation.builder(Verb.SET).key("a").value("1").build(),
+                Operation.builder(Verb.DELETE).key("b").build(),
+                Operation.builder(Verb.CHECK_AND_SET).key("c").value("2").index(BigInteger.ONE).build()
+        };
+        TxResponse response = ImmutableTxResponse.builder()
+                .addResults(ImmutableMap.of("KV", value("a")), ImmutableMap.of("KV", value("c")))
+                .build();
+
+        KvBatchWriter.Result[] results = KvBatchWriter.map(operations, response);
+
+        assertTrue(results[0].isSuccessful());
+        assertEquals("a", results[0].getValue().get().getKey());
+        assertTrue(results[1].isSuccessful());
+        assertFalse(results[1].getValue().isPresent());
+        assertEquals("c", results[2].getValue().get().getKey());
+    }
+
+    @Test
+    public void testErrorsRollBackTheWholeTransaction() {
+        Operation[] operations = {
+                Operation.builder(Verb.SET).key("a").value("1").build(),
+                Operation.builder(Verb.CHECK_AND_SET).key("b").value("2").index(BigInteger.ONE).build()
+        };
+        TxResponse response = ImmutableTxResponse.builder()
+                .addErrors(ImmutableTxError.builder().opIndex(BigInteger.ONE).what("failed to set key \"b\", index is stale").build())
+                .build();
+
+        KvBatchWriter.Result[] results = KvBatchWriter.map(operations, response);
+
+        assertFalse(results[0].isSuccessful());
+        assertEquals("Transaction rolled back", results[0].getError().get());
+        assertFalse(results[1].isSuccessful());
+        assertEquals("failed to set key \"b\", index is stale", results[1].getError().get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetTreeIsRejected() {
+        KvBatchWriter.builder(mock(KeyValueClient.class)).build()
+                .add(Operation.builder(Verb.GET_TREE).key("a").build());
+    }
+
+    @Test
+    public void testFlushWithoutOperations() {
+        assertTrue(KvBatchWriter.builder(mock(KeyValueClient.class)).build().flush().isEmpty());
+    }
+
+    private static List<Operation> operations(int count, String value) {
+        List<Operation> operations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            operations.add(Operation.builder(Verb.SET).key("key/" + i).value(value).build());
+        }
+        return operations;
+    }
+
+    private static Value value(String key) {
+        return ImmutableValue.builder()
+                .createIndex(1)
+                .modifyIndex(2)
+                .lockIndex(0)
+                .key(key)
+                .flags(0)
+                .build();
+    }
+}
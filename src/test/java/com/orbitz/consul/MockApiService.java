@@ -1,9 +1,12 @@
 package com.orbitz.consul;
 
+import com.orbitz.consul.model.kv.CompactValue;
 import com.orbitz.consul.model.kv.TxResponse;
 import com.orbitz.consul.model.kv.Value;
 import okhttp3.Headers;
+import okhttp3.MediaType;
 import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Response;
 import retrofit2.mock.BehaviorDelegate;
@@ -30,6 +33,21 @@ public class MockApiService implements KeyValueClient.Api {
         return delegate.returning(call).getValue(key, query);
     }
 
+    @Override
+    public Call<List<CompactValue>> getCompactValues(String key, Map<String, Object> query) {
+        return delegate.returningResponse(Collections.emptyList()).getCompactValues(key, query);
+    }
+
+    @Override
+    public Call<ResponseBody> streamValues(String key, Map<String, Object> query) {
+        return delegate.returningResponse(ResponseBody.create(MediaType.get("application/json"), "[]")).streamValues(key, query);
+    }
+
+    @Override
+    public Call<ResponseBody> getValueRaw(String key, Map<String, Object> query) {
+        return delegate.returningResponse(ResponseBody.create(MediaType.get("application/octet-stream"), new byte[0])).getValueRaw(key, query);
+    }
+
     @Override
     public Call<List<String>> getKeys(String key, Map<String, Object> query) {
         return delegate.returningResponse(Collections.emptyList()).getKeys(key, query);
@@ -0,0 +1,174 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.orbitz.consul.KeyValueClient;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.kv.ImmutableValue;
+import com.orbitz.consul.model.kv.Value;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.orbitz.consul.cache.CacheTestUtils.await;
+import static com.orbitz.consul.cache.CacheTestUtils.kvApi;
+import static com.orbitz.consul.cache.CacheTestUtils.kvClient;
+import static com.orbitz.consul.cache.CacheTestUtils.response;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CacheSnapshotTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("consul-cache");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = directory.resolve("kv.snapshot");
+        List<Value> values = Arrays.asList(value("a", 3, "dmFsdWU="), value("b", 7, null));
+
+        CacheSnapshot.write(file, BigInteger.valueOf(42), values);
+        CacheSnapshot<Value> snapshot = CacheSnapshot.<Value>read(file, Value.class).get();
+
+        assertEquals(BigInteger.valueOf(42), snapshot.getIndex());
+        assertEquals(values, snapshot.getValues());
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        assertFalse(CacheSnapshot.read(directory.resolve("missing.snapshot"), Value.class).isPresent());
+    }
+
+    @Test
+    public void testCorruptedFileIsRejected() throws IOException {
+        Path file = directory.resolve("kv.snapshot");
+        CacheSnapshot.write(file, BigInteger.ONE, Arrays.asList(value("a", 1, "dmFsdWU=")));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        try {
+            CacheSnapshot.read(file, Value.class);
+            fail("Expected a corrupted snapshot to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Corrupted"));
+        }
+    }
+
+    @Test
+    public void testFilesDependOnTheWatchKey() {
+        CacheDescriptor descriptor = new CacheDescriptor("keyvalue", "root");
+
+        Path file = CacheSnapshot.file(directory, descriptor, Arrays.asList("keyvalue", "root", 10));
+
+        assertEquals(file, CacheSnapshot.file(directory, descriptor, Arrays.asList("keyvalue", "root", 10)));
+        assertNotEquals(file, CacheSnapshot.file(directory, descriptor, Arrays.asList("keyvalue", "root", 20)));
+        assertTrue(file.getFileName().toString().startsWith("keyvalue-"));
+    }
+
+    @Test
+    public void testCacheResumesFromItsSnapshot() throws Exception {
+        List<Map<String, Object>> queries = new CopyOnWriteArrayList<>();
+        KeyValueClient.Api api = kvApi((method, args) -> {
+            queries.add(ImmutableMap.copyOf((Map<String, Object>) args[1]));
+            return response(ImmutableList.of("root/a", "root/b"), 42);
+        });
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofMillis(10))
+                .withSnapshotDirectory(directory)
+                .build();
+        KeyValueClient kvClient = kvClient(api, cacheConfig);
+
+        try (KeysCache cache = KeysCache.newCache(kvClient, "root/", null, 5)) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+        }
+        assertFalse(queries.get(0).containsKey("index"));
+
+        queries.clear();
+        try (KeysCache cache = KeysCache.newCache(kvClient, "root/", null, 5)) {
+            cache.start();
+
+            assertTrue(cache.awaitInitialized(0, TimeUnit.SECONDS));
+            assertEquals(ImmutableMap.of("a", "root/a", "b", "root/b"), cache.getMap());
+            assertEquals(BigInteger.valueOf(42), cache.getMapWithMetadata().getIndex());
+
+            await(() -> !queries.isEmpty());
+            assertEquals("42", String.valueOf(queries.get(0).get("index")));
+        }
+    }
+
+    @Test
+    public void testWritesAreCoalescedAndFlushedOnStop() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        KeyValueClient.Api api = kvApi((method, args) -> {
+            int index = 10 + requests.incrementAndGet();
+            return response(ImmutableList.of("root/a", "root/" + index), index);
+        });
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofMillis(10))
+                .withSnapshotDirectory(directory)
+                .withSnapshotInterval(Duration.ofHours(1))
+                .build();
+        KeyValueClient kvClient = kvClient(api, cacheConfig);
+
+        Path file;
+        try (KeysCache cache = KeysCache.newCache(kvClient, "root/", null, 5)) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+            await(() -> requests.get() >= 5);
+            try (Stream<Path> files = Files.list(directory)) {
+                file = files.findFirst().get();
+            }
+            // only the first response was written, the following ones wait for the interval
+            assertEquals(BigInteger.valueOf(11), CacheSnapshot.<String>read(file, String.class).get().getIndex());
+        }
+
+        CacheSnapshot<String> snapshot = CacheSnapshot.<String>read(file, String.class).get();
+        assertTrue(snapshot.getIndex().compareTo(BigInteger.valueOf(15)) >= 0);
+        assertEquals("root/" + snapshot.getIndex(), snapshot.getValues().get(1));
+    }
+
+    private static Value value(String key, long modifyIndex, String value) {
+        return ImmutableValue.builder()
+                .createIndex(1)
+                .modifyIndex(modifyIndex)
+                .lockIndex(0)
+                .flags(0)
+                .key(key)
+                .value(Optional.ofNullable(value))
+                .build();
+    }
+}
@@ -0,0 +1,97 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Equivalence;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.orbitz.consul.Consul;
+import com.orbitz.consul.KeyValueClient;
+import com.orbitz.consul.KeyValueClientFactory;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ClientConfig;
+import com.orbitz.consul.monitoring.ClientEventCallback;
+import okhttp3.Headers;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.mock.Calls;
+
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fixtures shared by the cache tests.
+ */
+final class CacheTestUtils {
+
+    private static final long AWAIT_TIMEOUT_SECONDS = 5;
+
+    private CacheTestUtils() {
+    }
+
+    /**
+     * Waits until the condition holds, failing the test if it does not within a few seconds.
+     */
+    static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(AWAIT_TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for the condition", System.nanoTime() < deadline);
+            Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Answers the calls of a stubbed {@link KeyValueClient.Api}.
+     */
+    @FunctionalInterface
+    interface KvApiHandler {
+        Call<?> handle(String method, Object[] args);
+    }
+
+    /**
+     * Gets a {@link KeyValueClient.Api} whose calls are all answered by the given handler.
+     */
+    static KeyValueClient.Api kvApi(KvApiHandler handler) {
+        return (KeyValueClient.Api) Proxy.newProxyInstance(CacheTestUtils.class.getClassLoader(),
+                new Class<?>[]{KeyValueClient.Api.class}, (proxy, method, args) -> handler.handle(method.getName(), args));
+    }
+
+    /**
+     * Gets a successful call returning the given body at the given Consul index.
+     */
+    static <T> Call<T> response(T body, long index) {
+        return Calls.response(Response.success(body, Headers.of("X-Consul-Index", String.valueOf(index))));
+    }
+
+    static KeyValueClient kvClient(KeyValueClient.Api api, CacheConfig cacheConfig) {
+        return KeyValueClientFactory.create(api, new ClientConfig(cacheConfig), new ClientEventCallback() {
+        }, new Consul.NetworkTimeoutConfig.Builder().withReadTimeout(10500).build());
+    }
+
+    /**
+     * Computes the {@link ChangeSet} of each of a sequence of responses against the snapshot of the previous one.
+     *
+     * @param <K> the type of the keys
+     * @param <V> the type of the values
+     */
+    static final class Responses<K, V> {
+
+        private final Function<V, K> keyConversion;
+        private ImmutableMap<K, V> snapshot;
+
+        Responses(Function<V, K> keyConversion) {
+            this.keyConversion = keyConversion;
+        }
+
+        ChangeSet<K, V> next(List<V> response) {
+            ChangeSet<K, V> changes = ChangeSet.compute(snapshot, response, keyConversion,
+                    Equivalence.equals(), BigInteger.ONE);
+            snapshot = changes.getSnapshot();
+            return changes;
+        }
+    }
+}
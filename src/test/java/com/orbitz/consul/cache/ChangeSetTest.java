@@ -0,0 +1,106 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Equivalence;
+import com.google.common.collect.ImmutableMap;
+import com.orbitz.consul.model.kv.ImmutableValue;
+import com.orbitz.consul.model.kv.Value;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeSetTest {
+
+    private static final Equivalence<Value> MODIFY_INDEX = ConsulCache.modifyIndexEquivalence(v -> Optional.of(v.getModifyIndex()));
+
+    @Test
+    public void testEverythingIsAddedWithoutPreviousSnapshot() {
+        ChangeSet<String, Value> changeSet = ChangeSet.compute(null, Arrays.asList(value("a", 1), value("b", 1)),
+                Value::getKey, MODIFY_INDEX, BigInteger.ONE);
+
+        assertEquals(2, changeSet.getSnapshot().size());
+        assertEquals(changeSet.getSnapshot(), changeSet.getAdded());
+        assertTrue(changeSet.getRemoved().isEmpty());
+        assertTrue(changeSet.getUpdated().isEmpty());
+        assertEquals(BigInteger.ONE, changeSet.getIndex());
+    }
+
+    @Test
+    public void testPreviousSnapshotIsReusedWhenNothingChanged() {
+        ImmutableMap<String, Value> previous = ImmutableMap.of("a", value("a", 1), "b", value("b", 1));
+
+        ChangeSet<String, Value> changeSet = ChangeSet.compute(previous, Arrays.asList(value("a", 1), value("b", 1)),
+                Value::getKey, MODIFY_INDEX, BigInteger.TEN);
+
+        assertTrue(changeSet.isEmpty());
+        assertSame(previous, changeSet.getSnapshot());
+    }
+
+    @Test
+    public void testAddedRemovedAndUpdatedEntries() {
+        Value unchanged = value("a", 1);
+        ImmutableMap<String, Value> previous = ImmutableMap.of("a", unchanged, "b", value("b", 1), "c", value("c", 1));
+
+        ChangeSet<String, Value> changeSet = ChangeSet.compute(previous,
+                Arrays.asList(value("a", 1), value("b", 2), value("d", 3)),
+                Value::getKey, MODIFY_INDEX, BigInteger.TEN);
+
+        assertEquals(ImmutableMap.of("d", value("d", 3)), changeSet.getAdded());
+        assertEquals(ImmutableMap.of("b", value("b", 2)), changeSet.getUpdated());
+        assertEquals(ImmutableMap.of("c", value("c", 1)), changeSet.getRemoved());
+        assertEquals(3, changeSet.getSnapshot().size());
+        assertSame(unchanged, changeSet.getSnapshot().get("a"));
+    }
+
+    @Test
+    public void testEmptyResponseRemovesEverything() {
+        ImmutableMap<String, Value> previous = ImmutableMap.of("a", value("a", 1));
+
+        ChangeSet<String, Value> changeSet = ChangeSet.compute(previous, Collections.emptyList(),
+                Value::getKey, MODIFY_INDEX, BigInteger.TEN);
+
+        assertTrue(changeSet.getSnapshot().isEmpty());
+        assertEquals(previous, changeSet.getRemoved());
+    }
+
+    @Test
+    public void testDuplicateKeysKeepFirstValue() {
+        Value first = value("a", 1);
+
+        ChangeSet<String, Value> changeSet = ChangeSet.compute(null, Arrays.asList(first, value("a", 2)),
+                Value::getKey, MODIFY_INDEX, BigInteger.ONE);
+
+        assertEquals(1, changeSet.getSnapshot().size());
+        assertSame(first, changeSet.getSnapshot().get("a"));
+    }
+
+    @Test
+    public void testDuplicateKeysDoNotHideRemovals() {
+        Value a = value("a", 1);
+        ImmutableMap<String, Value> previous = ImmutableMap.of("a", a, "b", value("b", 1));
+
+        ChangeSet<String, Value> changeSet = ChangeSet.compute(previous, Arrays.asList(value("a", 1), value("a", 1)),
+                Value::getKey, MODIFY_INDEX, BigInteger.TEN);
+
+        assertEquals(ImmutableMap.of("a", a), changeSet.getSnapshot());
+        assertEquals(Collections.singleton("b"), changeSet.getRemoved().keySet());
+        assertTrue(changeSet.getAdded().isEmpty());
+        assertTrue(changeSet.getUpdated().isEmpty());
+    }
+
+    private static Value value(String key, long modifyIndex) {
+        return ImmutableValue.builder()
+                .createIndex(1)
+                .modifyIndex(modifyIndex)
+                .lockIndex(0)
+                .key(key)
+                .flags(0)
+                .build();
+    }
+}
@@ -0,0 +1,209 @@
+package com.orbitz.consul.cache;
+
+import com.orbitz.consul.Consul;
+import com.orbitz.consul.HealthClient;
+import com.orbitz.consul.HealthClientFactory;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ClientConfig;
+import com.orbitz.consul.model.health.HealthCheck;
+import com.orbitz.consul.model.health.ImmutableHealthCheck;
+import com.orbitz.consul.model.health.ImmutableNode;
+import com.orbitz.consul.model.health.ImmutableService;
+import com.orbitz.consul.model.health.ImmutableServiceHealth;
+import com.orbitz.consul.model.health.ServiceHealth;
+import com.orbitz.consul.monitoring.ClientEventCallback;
+import com.orbitz.consul.util.Jackson;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.orbitz.consul.cache.CacheTestUtils.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterHealthCacheTest {
+
+    private final AtomicLong index = new AtomicLong(10);
+    private final Map<String, HealthCheck> checks = new ConcurrentHashMap<>();
+    private final Map<String, ServiceHealth> instances = new ConcurrentHashMap<>();
+    private final AtomicInteger serviceRequests = new AtomicInteger();
+    private HealthClient healthClient;
+
+    @Before
+    public void setUp() {
+        register("web-1", "n1");
+        register("web-2", "n2");
+
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    String path = chain.request().url().encodedPath();
+                    Object body;
+                    if (path.endsWith("/health/state/any")) {
+                        body = new ArrayList<>(new TreeMap<>(checks).values());
+                    } else {
+                        serviceRequests.incrementAndGet();
+                        body = new ArrayList<>(new TreeMap<>(instances).values());
+                    }
+                    return new okhttp3.Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .header("X-Consul-Index", String.valueOf(index.get()))
+                            .body(ResponseBody.create(MediaType.get("application/json"),
+                                    Jackson.MAPPER.writeValueAsBytes(body)))
+                            .build();
+                })
+                .build();
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl("http://localhost:8500/v1/")
+                .addConverterFactory(JacksonConverterFactory.create(Jackson.MAPPER))
+                .client(okHttpClient)
+                .build();
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofMillis(10))
+                .build();
+        healthClient = HealthClientFactory.create(retrofit, new ClientConfig(cacheConfig), new ClientEventCallback() {
+        }, new Consul.NetworkTimeoutConfig.Builder().withReadTimeout(10500).build());
+    }
+
+    private void register(String serviceId, String node) {
+        instances.put(serviceId, ImmutableServiceHealth.builder()
+                .node(ImmutableNode.builder().node(node).address("10.0.0." + node.substring(1)).build())
+                .service(ImmutableService.builder()
+                        .id(serviceId)
+                        .service("web")
+                        .address("10.0.1." + node.substring(1))
+                        .port(8080)
+                        .build())
+                .build());
+        check(node, "serfHealth", null, "passing");
+        check(node, "service:" + serviceId, serviceId, "passing");
+    }
+
+    private void check(String node, String checkId, String serviceId, String status) {
+        ImmutableHealthCheck.Builder check = ImmutableHealthCheck.builder()
+                .node(node)
+                .checkId(checkId)
+                .name(checkId)
+                .status(status)
+                .modifyIndex(index.incrementAndGet());
+        if (serviceId != null) {
+            check.serviceId(serviceId).serviceName("web");
+        }
+        checks.put(node + "/" + checkId, check.build());
+    }
+
+    @Test
+    public void testHealthChangesAreDerivedFromTheChecks() throws Exception {
+        try (ClusterHealthCache cluster = ClusterHealthCache.newCache(healthClient);
+             ServiceHealthCache web = cluster.newServiceCache("web", true)) {
+            cluster.start();
+            assertTrue(cluster.awaitInitialized(1, TimeUnit.SECONDS));
+            web.start();
+            assertTrue(web.awaitInitialized(1, TimeUnit.SECONDS));
+            assertEquals(2, web.getMap().size());
+            assertEquals(1, serviceRequests.get());
+
+            check("n2", "service:web-2", "web-2", "critical");
+            await(() -> web.getMap().size() == 1);
+            assertEquals("web-1", web.getMap().values().iterator().next().getService().getId());
+
+            check("n1", "serfHealth", null, "critical");
+            await(() -> web.getMap().isEmpty());
+
+            check("n1", "serfHealth", null, "passing");
+            check("n2", "service:web-2", "web-2", "passing");
+            await(() -> web.getMap().size() == 2);
+            assertEquals(1, serviceRequests.get());
+        }
+    }
+
+    @Test
+    public void testRegistrationsFetchTheInstances() throws Exception {
+        try (ClusterHealthCache cluster = ClusterHealthCache.newCache(healthClient);
+             ServiceHealthCache web = cluster.newServiceCache("web", false)) {
+            cluster.start();
+            assertTrue(cluster.awaitInitialized(1, TimeUnit.SECONDS));
+            web.start();
+            assertTrue(web.awaitInitialized(1, TimeUnit.SECONDS));
+            assertEquals(1, serviceRequests.get());
+
+            register("web-3", "n3");
+            await(() -> web.getMap().size() == 3);
+            assertEquals(2, serviceRequests.get());
+
+            instances.remove("web-1");
+            checks.remove("n1/service:web-1");
+            index.incrementAndGet();
+            await(() -> web.getMap().size() == 2);
+            assertEquals(3, serviceRequests.get());
+        }
+    }
+
+    @Test
+    public void testAllInstancesKeepTheirFailingChecks() throws Exception {
+        check("n2", "service:web-2", "web-2", "warning");
+        try (ClusterHealthCache cluster = ClusterHealthCache.newCache(healthClient);
+             ServiceHealthCache all = cluster.newServiceCache("web", false);
+             ServiceHealthCache passing = cluster.newServiceCache("web", true)) {
+            cluster.start();
+            assertTrue(cluster.awaitInitialized(1, TimeUnit.SECONDS));
+            all.start();
+            passing.start();
+            assertTrue(all.awaitInitialized(1, TimeUnit.SECONDS));
+            assertTrue(passing.awaitInitialized(1, TimeUnit.SECONDS));
+
+            await(() -> all.getMap().size() == 2 && passing.getMap().size() == 1);
+            for (ServiceHealth instance : all.getMap().values()) {
+                assertEquals(2, instance.getChecks().size());
+            }
+        }
+    }
+
+    @Test
+    public void testServiceCachesAreIndexed() throws Exception {
+        try (ClusterHealthCache cluster = ClusterHealthCache.newCache(healthClient);
+             ServiceHealthCache web = cluster.newServiceCache("web", false)) {
+            cluster.start();
+            assertTrue(cluster.awaitInitialized(1, TimeUnit.SECONDS));
+            web.start();
+            assertTrue(web.awaitInitialized(1, TimeUnit.SECONDS));
+
+            assertEquals(1, web.getByNode("n1").size());
+            assertEquals("web-1", web.getByNode("n1").values().iterator().next().getService().getId());
+
+            register("web-3", "n1");
+            await(() -> web.getByNode("n1").size() == 2);
+            assertTrue(web.getByTag("primary").isEmpty());
+        }
+    }
+
+    @Test
+    public void testStoppingTheClusterStopsTheServiceCaches() throws Exception {
+        ClusterHealthCache cluster = ClusterHealthCache.newCache(healthClient);
+        ServiceHealthCache web = cluster.newServiceCache("web", true);
+        cluster.start();
+        assertTrue(cluster.awaitInitialized(1, TimeUnit.SECONDS));
+        web.start();
+        assertTrue(web.awaitInitialized(1, TimeUnit.SECONDS));
+
+        cluster.stop();
+
+        assertEquals(ConsulCache.State.stopped, web.getState());
+    }
+}
@@ -1,7 +1,9 @@
 package com.orbitz.consul.cache;
 
 import com.google.common.collect.ImmutableMap;
+import com.orbitz.consul.async.ConsulResponseCallback;
 import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ListenerDispatchMode;
 import com.orbitz.consul.model.ConsulResponse;
 import com.orbitz.consul.model.kv.ImmutableValue;
 import com.orbitz.consul.model.kv.Value;
@@ -21,15 +23,25 @@ import org.mockito.internal.matchers.LessOrEqual;
 
 import java.math.BigInteger;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -46,7 +58,7 @@ public class ConsulCacheTest {
     public void testDuplicateServicesDontCauseFailure() {
         final Function<Value, String> keyExtractor = input -> "SAME_KEY";
         final List<Value> response = Arrays.asList(mock(Value.class), mock(Value.class));
-        CacheConfig cacheConfig = mock(CacheConfig.class);
+        CacheConfig cacheConfig = CacheConfig.builder().build();
         ClientEventHandler eventHandler = mock(ClientEventHandler.class);
 
         final StubCallbackConsumer callbackConsumer = new StubCallbackConsumer(Collections.emptyList());
@@ -103,6 +115,280 @@ public class ConsulCacheTest {
         ConsulCache.watchParams(index, 10, additionalOptions);
     }
 
+    @Test
+    public void testHashWatchParams() {
+        QueryOptions additionalOptions = ImmutableQueryOptions.builder()
+                .token("186596")
+                .build();
+
+        assertEquals(additionalOptions, ConsulCache.hashWatchParams(null, 10, additionalOptions));
+        assertEquals(ImmutableQueryOptions.builder().hash("abc").wait("10s").token("186596").build(),
+                ConsulCache.hashWatchParams("abc", 10, additionalOptions));
+    }
+
+    @Test
+    public void testWatchParamsKeepServerSideFilters() {
+        QueryOptions additionalOptions = ImmutableQueryOptions.builder()
+                .filter("\"primary\" in Service.Tags")
+                .namespace("team")
+                .addNodeMeta("rack:r1")
+                .build();
+
+        QueryOptions expectedOptions = ImmutableQueryOptions.builder()
+                .index(new BigInteger("12"))
+                .wait("10s")
+                .filter("\"primary\" in Service.Tags")
+                .namespace("team")
+                .addNodeMeta("rack:r1")
+                .build();
+
+        assertEquals(additionalOptions, ConsulCache.watchParams(null, 10, additionalOptions));
+        assertEquals(expectedOptions, ConsulCache.watchParams(new BigInteger("12"), 10, additionalOptions));
+        assertEquals(ImmutableQueryOptions.builder().from(additionalOptions).hash("abc").wait("10s").build(),
+                ConsulCache.hashWatchParams("abc", 10, additionalOptions));
+    }
+
+    @Test
+    public void testAgentCacheParams() {
+        QueryOptions queryOptions = ImmutableQueryOptions.builder().token("186596").build();
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withAgentCache(true)
+                .withAgentCacheMaxAge(Duration.ofSeconds(5))
+                .withAgentCacheStaleIfError(Duration.ofMinutes(1))
+                .build();
+
+        assertEquals(queryOptions, ConsulCache.agentCacheParams(queryOptions, CacheConfig.builder().build()));
+
+        QueryOptions cached = ConsulCache.agentCacheParams(queryOptions, cacheConfig);
+        assertEquals("CACHED", cached.getConsistencyMode().name());
+        assertEquals("max-age=5,stale-if-error=60", cached.toHeaders().get("Cache-Control"));
+        assertEquals("186596", cached.getToken().get());
+
+        QueryOptions explicit = ImmutableQueryOptions.builder()
+                .consistencyMode(ConsistencyMode.createCachedConsistencyWithMaxAgeAndStale(Optional.of(1L), Optional.empty()))
+                .build();
+        assertEquals(explicit, ConsulCache.agentCacheParams(explicit, cacheConfig));
+    }
+
+    @Test
+    public void testAgentCacheResponsesAreCounted() {
+        final ImmutableValue value = ImmutableValue.builder()
+                .createIndex(1)
+                .modifyIndex(2)
+                .lockIndex(2)
+                .key("foo")
+                .flags(0)
+                .build();
+        ConsulCache.CallbackConsumer<Value> consumer = (index, callback) -> callback.onComplete(
+                new ConsulResponse<>(Collections.singletonList(value), 0, true, BigInteger.ONE,
+                        index == null ? "MISS" : "HIT", "3"));
+        CacheConfig cacheConfig = CacheConfig.builder().withMinDelayBetweenRequests(Duration.ofHours(1)).build();
+
+        try (ConsulCache<String, Value> cache = new ConsulCache<>(Value::getKey, consumer, cacheConfig,
+                mock(ClientEventHandler.class), new CacheDescriptor(""))) {
+            cache.start();
+
+            assertEquals(0, cache.getAgentCacheHitCount());
+            assertEquals(1, cache.getAgentCacheMissCount());
+            ConsulResponse.CacheResponseInfo cacheInfo = cache.getMapWithMetadata().getCacheReponseInfo().get();
+            assertFalse(cacheInfo.isCacheHit());
+            assertEquals(Optional.of(3L), cacheInfo.getAgeInSeconds());
+        }
+    }
+
+    @Test
+    public void testIndexRegressionTriggersAFullResync() {
+        List<BigInteger> requests = Collections.synchronizedList(new ArrayList<>());
+        List<BigInteger> responses = Arrays.asList(BigInteger.valueOf(10), BigInteger.valueOf(4), BigInteger.valueOf(5));
+        List<ConsulResponseCallback<List<Value>>> callbacks = new CopyOnWriteArrayList<>();
+        ConsulCache.CallbackConsumer<Value> consumer = (index, callback) -> {
+            requests.add(index);
+            callbacks.add(callback);
+        };
+        CacheConfig cacheConfig = CacheConfig.builder().withMinDelayBetweenRequests(Duration.ZERO).build();
+
+        try (ConsulCache<String, Value> cache = new ConsulCache<>(Value::getKey, consumer, cacheConfig,
+                mock(ClientEventHandler.class), new CacheDescriptor(""))) {
+            cache.start();
+            for (BigInteger index : responses) {
+                callbacks.get(callbacks.size() - 1).onComplete(
+                        new ConsulResponse<>(Collections.emptyList(), 0, true, index, null, null));
+                awaitRequests(callbacks, responses.indexOf(index) + 2);
+            }
+
+            assertEquals(Arrays.asList(null, BigInteger.valueOf(10), null, BigInteger.valueOf(5)), requests);
+            assertEquals(1, cache.getIndexResetCount());
+        }
+    }
+
+    @Test
+    public void testIndexZeroIsClampedToOne() {
+        List<BigInteger> requests = Collections.synchronizedList(new ArrayList<>());
+        List<ConsulResponseCallback<List<Value>>> callbacks = new CopyOnWriteArrayList<>();
+        ConsulCache.CallbackConsumer<Value> consumer = (index, callback) -> {
+            requests.add(index);
+            callbacks.add(callback);
+        };
+        CacheConfig cacheConfig = CacheConfig.builder().withMinDelayBetweenRequests(Duration.ZERO).build();
+
+        try (ConsulCache<String, Value> cache = new ConsulCache<>(Value::getKey, consumer, cacheConfig,
+                mock(ClientEventHandler.class), new CacheDescriptor(""))) {
+            cache.start();
+            callbacks.get(0).onComplete(new ConsulResponse<>(Collections.emptyList(), 0, true, BigInteger.ZERO, null, null));
+            awaitRequests(callbacks, 2);
+            callbacks.get(1).onComplete(new ConsulResponse<>(Collections.emptyList(), 0, true, BigInteger.ZERO, null, null));
+            awaitRequests(callbacks, 3);
+
+            assertEquals(Arrays.asList(null, BigInteger.ONE, BigInteger.ONE), requests);
+            assertEquals(0, cache.getIndexResetCount());
+            assertEquals(1, cache.getTightLoopCount());
+        }
+    }
+
+    @Test
+    public void testTightLoopsAreCounted() {
+        List<ConsulResponseCallback<List<Value>>> callbacks = new CopyOnWriteArrayList<>();
+        ConsulCache.CallbackConsumer<Value> consumer = (index, callback) -> callbacks.add(callback);
+        CacheConfig cacheConfig = CacheConfig.builder().withMinDelayBetweenRequests(Duration.ZERO).build();
+
+        try (ConsulCache<String, Value> cache = new ConsulCache<>(Value::getKey, consumer, cacheConfig,
+                mock(ClientEventHandler.class), new CacheDescriptor(""))) {
+            cache.start();
+            long[] indexes = {7, 7, 7, 8};
+            for (int i = 0; i < indexes.length; i++) {
+                callbacks.get(i).onComplete(
+                        new ConsulResponse<>(Collections.emptyList(), 0, true, BigInteger.valueOf(indexes[i]), null, null));
+                awaitRequests(callbacks, i + 2);
+            }
+
+            assertEquals(2, cache.getTightLoopCount());
+            assertEquals(0, cache.getIndexResetCount());
+        }
+    }
+
+    @Test
+    public void testRequestsAreRateLimited() throws InterruptedException {
+        List<ConsulResponseCallback<List<Value>>> callbacks = new CopyOnWriteArrayList<>();
+        ConsulCache.CallbackConsumer<Value> consumer = (index, callback) -> {
+            callbacks.add(callback);
+            callback.onComplete(new ConsulResponse<>(Collections.emptyList(), 0, true, BigInteger.TEN, null, null));
+        };
+        CacheConfig cacheConfig = CacheConfig.builder().withRateLimit(1).build();
+
+        try (ConsulCache<String, Value> cache = new ConsulCache<>(Value::getKey, consumer, cacheConfig,
+                mock(ClientEventHandler.class), new CacheDescriptor(""))) {
+            cache.start();
+            awaitRequests(callbacks, 2);
+            Thread.sleep(300);
+
+            assertEquals(2, callbacks.size());
+            assertEquals(1, cache.getRateLimitedCount());
+        }
+    }
+
+    @Test
+    public void testConsecutiveFailuresAreCountedAndResetOnSuccess() {
+        List<ConsulResponseCallback<List<Value>>> callbacks = new CopyOnWriteArrayList<>();
+        List<Integer> policyFailures = new CopyOnWriteArrayList<>();
+        ConsulCache.CallbackConsumer<Value> consumer = (index, callback) -> callbacks.add(callback);
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withBackOffPolicy((failures, previousDelay) -> {
+                    policyFailures.add(failures);
+                    return Duration.ZERO;
+                })
+                .withRefreshErrorLoggedAs((logger, message, error) -> { })
+                .build();
+
+        try (ConsulCache<String, Value> cache = new ConsulCache<>(Value::getKey, consumer, cacheConfig,
+                mock(ClientEventHandler.class), new CacheDescriptor(""))) {
+            cache.start();
+            callbacks.get(0).onFailure(new RuntimeException("down"));
+            awaitRequests(callbacks, 2);
+            callbacks.get(1).onFailure(new RuntimeException("down"));
+            awaitRequests(callbacks, 3);
+            assertEquals(2, cache.getConsecutiveFailureCount());
+
+            callbacks.get(2).onComplete(new ConsulResponse<>(Collections.emptyList(), 0, true, BigInteger.TEN, null, null));
+            awaitRequests(callbacks, 4);
+            assertEquals(0, cache.getConsecutiveFailureCount());
+            callbacks.get(3).onFailure(new RuntimeException("down"));
+            awaitRequests(callbacks, 5);
+
+            assertEquals(Arrays.asList(1, 2, 1), policyFailures);
+            assertEquals(1, cache.getConsecutiveFailureCount());
+            assertEquals(2, cache.getMaxConsecutiveFailureCount());
+        }
+    }
+
+    @Test
+    public void testSlowListenerDoesNotDelayPolling() throws InterruptedException {
+        List<ConsulResponseCallback<List<Value>>> callbacks = new CopyOnWriteArrayList<>();
+        ConsulCache.CallbackConsumer<Value> consumer = (index, callback) -> callbacks.add(callback);
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withListenerDispatch(ListenerDispatchMode.COALESCING)
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Map<String, Value>> notified = new CopyOnWriteArrayList<>();
+
+        try (ConsulCache<String, Value> cache = new ConsulCache<>(Value::getKey, consumer, cacheConfig,
+                mock(ClientEventHandler.class), new CacheDescriptor(""))) {
+            ConsulCache.Listener<String, Value> listener = values -> {
+                notified.add(values);
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            cache.addListener(listener);
+            cache.start();
+            for (int i = 0; i < 3; i++) {
+                Value value = ImmutableValue.builder().createIndex(1).modifyIndex(i).lockIndex(0).key("foo").flags(0).build();
+                callbacks.get(i).onComplete(new ConsulResponse<>(Collections.singletonList(value), 0, true,
+                        BigInteger.valueOf(i + 1), null, null));
+                awaitRequests(callbacks, i + 2);
+            }
+            release.countDown();
+
+            CacheTestUtils.await(() -> cache.getListenerStats(listener).get().getNotificationCount() >= 2);
+            assertEquals(2, notified.size());
+            assertEquals(2, notified.get(1).get("foo").getModifyIndex());
+            assertEquals(1, cache.getListenerStats(listener).get().getDroppedCount());
+        }
+    }
+
+    private static void awaitRequests(List<?> requests, int count) {
+        CacheTestUtils.await(() -> requests.size() >= count);
+        assertEquals(count, requests.size());
+    }
+
+    @Test
+    public void testBlockOnContentHashPassesThePreviousHash() {
+        List<String> hashes = new ArrayList<>();
+        List<String> responseHashes = Arrays.asList("h1", "h2");
+        ConsulCache.CallbackConsumer<Value> consumer = ConsulCache.blockOnContentHash((hash, callback) -> {
+            hashes.add(hash);
+            callback.onComplete(new ConsulResponse<>(Collections.emptyList(), 0, false, BigInteger.ZERO,
+                    null, null, responseHashes.get(Math.min(hashes.size() - 1, 1))));
+        });
+        ConsulResponseCallback<List<Value>> ignored = new ConsulResponseCallback<List<Value>>() {
+            @Override
+            public void onComplete(ConsulResponse<List<Value>> consulResponse) {
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+            }
+        };
+
+        consumer.consume(null, ignored);
+        consumer.consume(BigInteger.ZERO, ignored);
+        consumer.consume(BigInteger.ZERO, ignored);
+        consumer.consume(null, ignored);
+
+        assertEquals(Arrays.asList(null, "h1", "h2", null), hashes);
+    }
+
     @Test
     @Parameters(method = "getRetryDurationSamples")
     @TestCaseName("min Delay: {0}, max Delay: {1}")
@@ -117,6 +403,24 @@ public class ConsulCacheTest {
         }
     }
 
+    @Test
+    public void testJitterDelaysTheRequestFollowingALongPoll() {
+        Duration jitter = Duration.ofMillis(500);
+        Set<Long> delays = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            // a blocking query answered after 30 seconds, far beyond the minimum delay between requests
+            long delayMs = ConsulCache.computeNextRequestDelayMs(Duration.ofMillis(10), 30000, jitter);
+            Assert.assertThat(
+                    String.format("Delay expected between 0 and %s but got %d ms", jitter, delayMs),
+                    delayMs,
+                    is(allOf(new GreaterOrEqual<>(0L), new LessOrEqual<>(jitter.toMillis()))));
+            delays.add(delayMs);
+        }
+        assertTrue(delays.size() > 1);
+
+        assertEquals(800, ConsulCache.computeNextRequestDelayMs(Duration.ofSeconds(1), 200, Duration.ZERO));
+    }
+
     public Object getRetryDurationSamples() {
         return new Object[]{
                 // Same duration
@@ -253,4 +557,63 @@ public class ConsulCacheTest {
         }
     }
 
+    @Test
+    public void testDeltaListenerReceivesChanges() {
+        final Function<Value, String> keyExtractor = Value::getKey;
+        final CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofSeconds(10))
+                .build();
+        final ClientEventHandler eventHandler = mock(ClientEventHandler.class);
+
+        final String key = "foo";
+        final ImmutableValue value = ImmutableValue.builder()
+                .createIndex(1)
+                .modifyIndex(2)
+                .lockIndex(2)
+                .key(key)
+                .flags(0)
+                .build();
+        final StubCallbackConsumer callbackConsumer = new StubCallbackConsumer(Collections.singletonList(value));
+
+        try (final ConsulCache<String, Value> cache = new ConsulCache<>(keyExtractor, callbackConsumer, cacheConfig,
+                eventHandler, new CacheDescriptor(""))) {
+            final List<ChangeSet<String, Value>> changes = new ArrayList<>();
+            cache.addDeltaListener(changes::add);
+            cache.start();
+
+            assertEquals(1, changes.size());
+            assertEquals(ImmutableMap.of(key, value), changes.get(0).getAdded());
+            assertTrue(changes.get(0).getRemoved().isEmpty());
+            assertTrue(changes.get(0).getUpdated().isEmpty());
+
+            // Adding listener after cache is already started
+            final List<ChangeSet<String, Value>> lateChanges = new ArrayList<>();
+            cache.addDeltaListener(lateChanges::add);
+
+            assertEquals(1, lateChanges.size());
+            assertEquals(ImmutableMap.of(key, value), lateChanges.get(0).getAdded());
+        }
+    }
+
+    @Test
+    public void testSharedTimerSchedulerOnlyCancelsItsOwnCallbacks() throws InterruptedException {
+        final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final ConsulCache.SharedTimerScheduler stopped = new ConsulCache.SharedTimerScheduler(timer, Runnable::run);
+            final ConsulCache.SharedTimerScheduler running = new ConsulCache.SharedTimerScheduler(timer, Runnable::run);
+            final CountDownLatch stoppedLatch = new CountDownLatch(1);
+            final CountDownLatch runningLatch = new CountDownLatch(1);
+
+            stopped.schedule(stoppedLatch::countDown, 100, TimeUnit.MILLISECONDS);
+            running.schedule(runningLatch::countDown, 100, TimeUnit.MILLISECONDS);
+            stopped.shutdownNow();
+
+            assertTrue(runningLatch.await(5, TimeUnit.SECONDS));
+            assertFalse(stoppedLatch.await(200, TimeUnit.MILLISECONDS));
+            assertFalse(timer.isShutdown());
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
 }
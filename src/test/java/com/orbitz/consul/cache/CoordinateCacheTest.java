@@ -0,0 +1,165 @@
+package com.orbitz.consul.cache;
+
+import com.orbitz.consul.Consul;
+import com.orbitz.consul.CoordinateClient;
+import com.orbitz.consul.CoordinateClientFactory;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ClientConfig;
+import com.orbitz.consul.model.coordinate.Coord;
+import com.orbitz.consul.model.coordinate.Coordinate;
+import com.orbitz.consul.model.coordinate.ImmutableCoord;
+import com.orbitz.consul.model.coordinate.ImmutableCoordinate;
+import com.orbitz.consul.monitoring.ClientEventCallback;
+import com.orbitz.consul.option.ConsistencyMode;
+import com.orbitz.consul.option.ImmutableQueryOptions;
+import com.orbitz.consul.option.QueryOptions;
+import com.orbitz.consul.util.Jackson;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoordinateCacheTest {
+
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private CoordinateClient coordinateClient;
+
+    @Before
+    public void setUp() {
+        List<Coordinate> coordinates = Arrays.asList(
+                coordinate("local", 0, 0, 0, 0),
+                coordinate("near", 0.001, 0, 0, 0),
+                coordinate("far", 0.010, 0, 0, 0),
+                coordinate("farther", 0, 0.020, 0, 0));
+
+        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    requests.add(chain.request());
+                    return new okhttp3.Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .header("X-Consul-Index", "10")
+                            .body(ResponseBody.create(MediaType.get("application/json"),
+                                    Jackson.MAPPER.writeValueAsBytes(coordinates)))
+                            .build();
+                })
+                .build();
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl("http://localhost:8500/v1/")
+                .addConverterFactory(JacksonConverterFactory.create(Jackson.MAPPER))
+                .client(okHttpClient)
+                .build();
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofMillis(10))
+                .build();
+        coordinateClient = CoordinateClientFactory.create(retrofit, new ClientConfig(cacheConfig),
+                new ClientEventCallback() {
+                }, new Consul.NetworkTimeoutConfig.Builder().withReadTimeout(10500).build());
+    }
+
+    private static Coordinate coordinate(String node, double x, double y, double height, double adjustment) {
+        return ImmutableCoordinate.builder()
+                .node(node)
+                .coord(coord(new double[]{x, y}, height, adjustment))
+                .build();
+    }
+
+    private static Coord coord(double[] vec, double height, double adjustment) {
+        return ImmutableCoord.builder()
+                .vec(vec)
+                .height(height)
+                .adjustment(adjustment)
+                .error(1.5)
+                .build();
+    }
+
+    @Test
+    public void testRttIsTheDistancePlusHeights() {
+        Coord a = coord(new double[]{0, 0}, 0.001, 0);
+        Coord b = coord(new double[]{0.003, 0.004}, 0.002, 0);
+
+        assertEquals(Duration.ofMillis(8), CoordinateCache.estimateRtt(a, b));
+        assertEquals(CoordinateCache.estimateRtt(a, b), CoordinateCache.estimateRtt(b, a));
+    }
+
+    @Test
+    public void testAdjustmentsAreOnlyAppliedWhenPositive() {
+        Coord a = coord(new double[]{0, 0}, 0, 0.002);
+        Coord b = coord(new double[]{0.005, 0}, 0, -0.001);
+        assertEquals(Duration.ofMillis(6), CoordinateCache.estimateRtt(a, b));
+
+        Coord c = coord(new double[]{0.001, 0}, 0, -0.002);
+        Coord d = coord(new double[]{0, 0}, 0, -0.002);
+        assertEquals(Duration.ofMillis(1), CoordinateCache.estimateRtt(c, d));
+    }
+
+    @Test
+    public void testQueryOptionsAreSent() {
+        QueryOptions queryOptions = ImmutableQueryOptions.builder()
+                .datacenter("dc2")
+                .addNodeMeta("rack:r1")
+                .consistencyMode(ConsistencyMode.createCachedConsistencyWithMaxAgeAndStale(Optional.of(30L), Optional.empty()))
+                .build();
+
+        assertEquals(4, coordinateClient.getNodeCoordinates(queryOptions).size());
+
+        Request request = requests.get(0);
+        assertEquals("dc2", request.url().queryParameter("dc"));
+        assertEquals("rack:r1", request.url().queryParameter("node-meta"));
+        assertEquals("max-age=30", request.header("Cache-Control"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDimensionsMustMatch() {
+        CoordinateCache.estimateRtt(coord(new double[]{0, 0}, 0, 0), coord(new double[]{0, 0, 0}, 0, 0));
+    }
+
+    @Test
+    public void testNearestCandidatesAreSortedByRtt() throws Exception {
+        try (CoordinateCache cache = CoordinateCache.newCache(coordinateClient)) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            assertEquals(Optional.of(Duration.ofMillis(10)), cache.getRtt("local", "far"));
+            assertFalse(cache.getRtt("local", "unknown").isPresent());
+
+            List<String> candidates = Arrays.asList("unknown", "farther", "near", "far", "local");
+            assertEquals(Arrays.asList("local", "near"),
+                    cache.nearest("local", candidates, Function.identity(), 2));
+            assertEquals(Arrays.asList("local", "near", "far", "farther", "unknown"),
+                    cache.nearest("local", candidates, Function.identity(), 10));
+            assertTrue(cache.nearest("local", candidates, Function.identity(), 0).isEmpty());
+        }
+    }
+
+    @Test
+    public void testCandidatesKeepTheirOrderWithoutLocalCoordinates() throws Exception {
+        try (CoordinateCache cache = CoordinateCache.newCache(coordinateClient)) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            List<String> candidates = Arrays.asList("far", "near", "local");
+            assertEquals(Arrays.asList("far", "near"),
+                    cache.nearest("unknown", candidates, Function.identity(), 2));
+        }
+    }
+}
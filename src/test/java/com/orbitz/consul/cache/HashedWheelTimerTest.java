@@ -0,0 +1,106 @@
+package com.orbitz.consul.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer(Duration.ofMillis(10), 8, Runnable::run);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void testTimeoutsRunAfterTheirDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(3);
+        long start = System.nanoTime();
+        timer.newTimeout(latch::countDown, 0, TimeUnit.MILLISECONDS);
+        timer.newTimeout(latch::countDown, 50, TimeUnit.MILLISECONDS);
+        // more than one round of the wheel
+        timer.newTimeout(latch::countDown, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(3, timer.getExpiredTimeouts());
+        assertEquals(0, timer.getPendingTimeouts());
+        assertTrue(timer.getMaximumDrift().compareTo(timer.getAverageDrift()) >= 0);
+    }
+
+    @Test
+    public void testCancelledTimeoutDoesNotRun() throws InterruptedException {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(cancelled::countDown, 50, TimeUnit.MILLISECONDS);
+        timer.newTimeout(running::countDown, 50, TimeUnit.MILLISECONDS);
+        assertEquals(2, timer.getPendingTimeouts());
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(1, timer.getPendingTimeouts());
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelled.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testSchedulerOnlyCancelsItsOwnCallbacks() throws InterruptedException {
+        ConsulCache.TimerWheelScheduler stopped = new ConsulCache.TimerWheelScheduler(timer);
+        ConsulCache.TimerWheelScheduler running = new ConsulCache.TimerWheelScheduler(timer);
+        CountDownLatch stoppedLatch = new CountDownLatch(1);
+        CountDownLatch runningLatch = new CountDownLatch(1);
+
+        stopped.schedule(stoppedLatch::countDown, 50, TimeUnit.MILLISECONDS);
+        running.schedule(runningLatch::countDown, 50, TimeUnit.MILLISECONDS);
+        stopped.shutdownNow();
+
+        assertTrue(runningLatch.await(5, TimeUnit.SECONDS));
+        assertFalse(stoppedLatch.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testDefaultTimerRunsTasksOutsideOfTheTimerThread() throws InterruptedException {
+        HashedWheelTimer defaultTimer = new HashedWheelTimer();
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            AtomicReference<String> threadName = new AtomicReference<>();
+            defaultTimer.newTimeout(() -> {
+                threadName.set(Thread.currentThread().getName());
+                latch.countDown();
+            }, 0, TimeUnit.MILLISECONDS);
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertTrue(threadName.get().startsWith("consulCacheTimerWheelTask-"));
+        } finally {
+            defaultTimer.stop();
+        }
+    }
+
+    @Test
+    public void testSchedulerDiscardsCallbacksOnceTheTimerIsStopped() throws InterruptedException {
+        ConsulCache.TimerWheelScheduler scheduler = new ConsulCache.TimerWheelScheduler(timer);
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.stop();
+
+        scheduler.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+        scheduler.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+
+        assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+    }
+}
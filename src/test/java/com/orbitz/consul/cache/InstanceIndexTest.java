@@ -0,0 +1,101 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.orbitz.consul.model.catalog.CatalogService;
+import com.orbitz.consul.model.catalog.ImmutableCatalogService;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class InstanceIndexTest {
+
+    private final InstanceIndex<String, CatalogService> index = new InstanceIndex<>(
+            CatalogService::getServiceTags,
+            CatalogService::getServiceMeta,
+            CatalogService::getNode,
+            CatalogService::getDatacenter);
+    private final CacheTestUtils.Responses<String, CatalogService> responses =
+            new CacheTestUtils.Responses<>(CatalogService::getServiceId);
+
+    @Test
+    public void testInstancesAreIndexed() {
+        update(instance("web-1", "n1", "dc1", "v1", "primary"),
+               instance("web-2", "n2", "dc1", "v2", "primary", "canary"),
+               instance("web-3", "n2", "dc2", "v2"));
+
+        assertEquals(ImmutableSet.of("web-1", "web-2"), index.withTag("primary").keySet());
+        assertEquals(ImmutableSet.of("web-2"), index.withTag("canary").keySet());
+        assertTrue(index.withTag("other").isEmpty());
+        assertEquals(ImmutableSet.of("web-2", "web-3"), index.withMeta("version", "v2").keySet());
+        assertTrue(index.withMeta("version", "v3").isEmpty());
+        assertEquals(ImmutableSet.of("web-2", "web-3"), index.onNode("n2").keySet());
+        assertEquals(ImmutableSet.of("web-3"), index.inDatacenter("dc2").keySet());
+    }
+
+    @Test
+    public void testAllTagsMustMatch() {
+        update(instance("web-1", "n1", "dc1", "v1", "primary"),
+               instance("web-2", "n2", "dc1", "v2", "primary", "canary"),
+               instance("web-3", "n2", "dc2", "v2", "canary"));
+
+        assertEquals(ImmutableSet.of("web-2"), index.withTags(Arrays.asList("primary", "canary")).keySet());
+        assertTrue(index.withTags(Arrays.asList("primary", "other")).isEmpty());
+        assertEquals(3, index.withTags(Collections.emptyList()).size());
+    }
+
+    @Test
+    public void testUpdatesMoveInstancesBetweenBuckets() {
+        update(instance("web-1", "n1", "dc1", "v1", "primary"),
+               instance("web-2", "n2", "dc1", "v1", "primary"));
+        update(instance("web-1", "n1", "dc1", "v2", "canary"));
+
+        assertEquals(ImmutableSet.of("web-1"), index.withTag("canary").keySet());
+        assertTrue(index.withTag("primary").isEmpty());
+        assertEquals(ImmutableSet.of("web-1"), index.withMeta("version", "v2").keySet());
+        assertTrue(index.withMeta("version", "v1").isEmpty());
+        assertTrue(index.onNode("n2").isEmpty());
+        assertEquals("v2", index.inDatacenter("dc1").get("web-1").getServiceMeta().get("version"));
+    }
+
+    @Test
+    public void testViewsAreSharedUntilTheirBucketChanges() {
+        update(instance("web-1", "n1", "dc1", "v1", "primary"),
+               instance("web-2", "n2", "dc1", "v1", "canary"));
+        ImmutableMap<String, CatalogService> primary = index.withTag("primary");
+        ImmutableMap<String, CatalogService> canary = index.withTag("canary");
+        assertSame(primary, index.withTag("primary"));
+
+        update(instance("web-1", "n1", "dc1", "v1", "primary"),
+               instance("web-2", "n2", "dc1", "v1", "canary"),
+               instance("web-3", "n3", "dc1", "v1", "canary"));
+
+        assertSame(primary, index.withTag("primary"));
+        assertEquals(ImmutableSet.of("web-2", "web-3"), index.withTag("canary").keySet());
+        assertEquals(1, canary.size());
+    }
+
+    private static CatalogService instance(String serviceId, String node, String datacenter, String version,
+                                           String... tags) {
+        return ImmutableCatalogService.builder()
+                .node(node)
+                .address("10.0.0.1")
+                .datacenter(datacenter)
+                .serviceName("web")
+                .serviceId(serviceId)
+                .serviceAddress("10.0.1.1")
+                .servicePort(8080)
+                .addServiceTags(tags)
+                .putServiceMeta("version", version)
+                .build();
+    }
+
+    private void update(CatalogService... instances) {
+        index.apply(responses.next(Arrays.asList(instances)));
+    }
+}
@@ -1,15 +1,11 @@
 package com.orbitz.consul.cache;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.orbitz.consul.Consul;
 import com.orbitz.consul.KeyValueClient;
-import com.orbitz.consul.KeyValueClientFactory;
 import com.orbitz.consul.MockApiService;
 import com.orbitz.consul.config.CacheConfig;
-import com.orbitz.consul.config.ClientConfig;
 import com.orbitz.consul.model.kv.ImmutableValue;
 import com.orbitz.consul.model.kv.Value;
-import com.orbitz.consul.monitoring.ClientEventCallback;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
 import junitparams.naming.TestCaseName;
@@ -26,6 +22,8 @@ import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
 @RunWith(JUnitParamsRunner.class)
@@ -95,9 +93,7 @@ public class KVCacheTest {
                 .withMinDelayBetweenRequests(Duration.ofSeconds(10))
                 .build();
 
-        final KeyValueClient kvClient = KeyValueClientFactory.create(mockApiService, new ClientConfig(cacheConfig),
-                new ClientEventCallback() {
-        }, new Consul.NetworkTimeoutConfig.Builder().withReadTimeout(10500).build());
+        final KeyValueClient kvClient = CacheTestUtils.kvClient(mockApiService, cacheConfig);
 
 
         try (final KVCache kvCache = KVCache.newCache(kvClient, "")) {
@@ -118,4 +114,35 @@ public class KVCacheTest {
         }
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPrefixQueriesFollowUpdates() throws InterruptedException {
+        final AtomicReference<List<Value>> values = new AtomicReference<>(Arrays.asList(
+                createValue("root/feature/x/a"), createValue("root/feature/x/b"), createValue("root/feature/y/a")));
+        final AtomicLong index = new AtomicLong(1);
+        final KeyValueClient.Api api = CacheTestUtils.kvApi((method, args) -> CacheTestUtils.response(values.get(), index.get()));
+        final CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofMillis(10))
+                .build();
+        final KeyValueClient kvClient = CacheTestUtils.kvClient(api, cacheConfig);
+
+        try (final KVCache kvCache = KVCache.newCache(kvClient, "root/", 5)) {
+            kvCache.start();
+            Assert.assertTrue(kvCache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            Assert.assertEquals(Arrays.asList("feature/x/a", "feature/x/b"), new ArrayList<>(kvCache.subMap("feature/x/").keySet()));
+            Assert.assertEquals(Arrays.asList("feature/x/b", "feature/y/a"),
+                    new ArrayList<>(kvCache.range("feature/x/b", "feature/z").keySet()));
+
+            values.set(Arrays.asList(createValue("root/feature/x/b"), createValue("root/feature/x/c"), createValue("root/feature/y/a")));
+            index.set(2);
+            final StopWatch stopWatch = StopWatch.createStarted();
+            while (stopWatch.getTime() < 5000 && !kvCache.subMap("feature/x/").containsKey("feature/x/c")) {
+                Thread.sleep(10);
+            }
+
+            Assert.assertEquals(Arrays.asList("feature/x/b", "feature/x/c"), new ArrayList<>(kvCache.subMap("feature/x/").keySet()));
+            Assert.assertEquals(kvCache.getMap(), kvCache.getSortedMap());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.orbitz.consul.KeyValueClient;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.kv.ImmutableValue;
+import com.orbitz.consul.model.kv.Value;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.orbitz.consul.cache.CacheTestUtils.await;
+import static com.orbitz.consul.cache.CacheTestUtils.kvApi;
+import static com.orbitz.consul.cache.CacheTestUtils.kvClient;
+import static com.orbitz.consul.cache.CacheTestUtils.response;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class KeysCacheTest {
+
+    private final AtomicLong index = new AtomicLong(10);
+    private final AtomicReference<List<String>> keys = new AtomicReference<>();
+    private final Map<String, Value> values = new ConcurrentHashMap<>();
+    private final AtomicInteger valueRequests = new AtomicInteger();
+    private KeyValueClient kvClient;
+
+    @Before
+    public void setUp() {
+        put("root/a", 5);
+        put("root/b", 10);
+
+        KeyValueClient.Api api = kvApi((method, args) -> {
+            switch (method) {
+                case "getKeys":
+                    return response(keys.get(), index.get());
+                case "getValue":
+                    valueRequests.incrementAndGet();
+                    Value value = values.get((String) args[0]);
+                    return response(value == null ? Collections.emptyList() : Collections.singletonList(value),
+                            index.get());
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        });
+
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofMillis(10))
+                .build();
+        kvClient = kvClient(api, cacheConfig);
+    }
+
+    @Test
+    public void testMapsRelativeKeysToFullKeys() throws Exception {
+        try (KeysCache cache = KeysCache.newCache(kvClient, "root/", null, 5)) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            assertEquals(ImmutableMap.of("a", "root/a", "b", "root/b"), cache.getMap());
+            assertEquals(0, valueRequests.get());
+        }
+    }
+
+    @Test
+    public void testValuesAreLoadedOnDemand() throws Exception {
+        try (KeysCache cache = KeysCache.newCache(kvClient, "root/", null, 5)) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            Value a = cache.getValue("a").get();
+            assertEquals("root/a", a.getKey());
+            assertSame(a, cache.getValue("a").get());
+            assertFalse(cache.getValue("c").isPresent());
+
+            assertEquals(1, valueRequests.get());
+            assertEquals(1, cache.getLoadCount());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    @Test
+    public void testValuesAreReloadedWhenTheIndexMoves() throws Exception {
+        try (KeysCache cache = KeysCache.newCache(kvClient, "root/", null, 5)) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            Value a = cache.getValue("a").get();
+            assertEquals(10, cache.getValue("b").get().getModifyIndex());
+            assertEquals(2, valueRequests.get());
+
+            put("root/b", 11);
+            index.set(11);
+            await(() -> cache.getMapWithMetadata().getIndex().longValue() == 11);
+
+            assertSame(a, cache.getValue("a").get());
+            Value updated = cache.getValue("b").get();
+            assertEquals(11, updated.getModifyIndex());
+            assertSame(updated, cache.getValue("b").get());
+            assertEquals(4, valueRequests.get());
+        }
+    }
+
+    @Test
+    public void testRemovedKeysAreNotLoaded() throws Exception {
+        try (KeysCache cache = KeysCache.newCache(kvClient, "root/", null, 5)) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+            assertTrue(cache.getValue("b").isPresent());
+
+            values.remove("root/b");
+            keys.set(ImmutableList.of("root/a"));
+            index.set(12);
+            await(() -> !cache.getMap().containsKey("b"));
+
+            assertFalse(cache.getValue("b").isPresent());
+            assertEquals(1, valueRequests.get());
+        }
+    }
+
+    private void put(String key, long modifyIndex) {
+        values.put(key, ImmutableValue.builder()
+                .createIndex(1)
+                .modifyIndex(modifyIndex)
+                .lockIndex(0)
+                .flags(0)
+                .key(key)
+                .value(Optional.of("dmFsdWU="))
+                .build());
+        keys.set(ImmutableList.copyOf(new TreeSet<>(values.keySet())));
+    }
+}
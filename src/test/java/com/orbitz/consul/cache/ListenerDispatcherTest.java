@@ -0,0 +1,88 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ListenerDispatchMode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ListenerDispatcherTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<Map<String, Integer>> notified = new ArrayList<>();
+
+    @Test
+    public void testSynchronousDispatchNotifiesImmediately() {
+        ListenerDispatcher<String, Integer> dispatcher = ListenerDispatcher.create(notified::add, CacheConfig.builder().build());
+
+        dispatcher.dispatch(snapshot(1));
+        dispatcher.dispatch(snapshot(2));
+
+        assertEquals(Arrays.asList(snapshot(1), snapshot(2)), notified);
+        assertEquals(2, dispatcher.getStats().getNotificationCount());
+    }
+
+    @Test
+    public void testCoalescingDispatchOnlyKeepsTheLatestSnapshot() {
+        ListenerDispatcher<String, Integer> dispatcher = dispatcher(ListenerDispatchMode.COALESCING, 16);
+
+        dispatcher.dispatch(snapshot(1));
+        dispatcher.dispatch(snapshot(2));
+        dispatcher.dispatch(snapshot(3));
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+
+        assertEquals(Arrays.asList(snapshot(3)), notified);
+        assertEquals(1, dispatcher.getStats().getNotificationCount());
+        assertEquals(2, dispatcher.getStats().getDroppedCount());
+    }
+
+    @Test
+    public void testQueuedDispatchDropsTheOldestSnapshots() {
+        ListenerDispatcher<String, Integer> dispatcher = dispatcher(ListenerDispatchMode.QUEUED, 2);
+
+        for (int i = 1; i <= 4; i++) {
+            dispatcher.dispatch(snapshot(i));
+        }
+        tasks.remove(0).run();
+        dispatcher.dispatch(snapshot(5));
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+
+        assertEquals(Arrays.asList(snapshot(3), snapshot(4), snapshot(5)), notified);
+        assertEquals(2, dispatcher.getStats().getDroppedCount());
+    }
+
+    @Test
+    public void testFailuresAreIsolatedAndCounted() {
+        ListenerDispatcher<String, Integer> dispatcher = ListenerDispatcher.create(snapshot -> {
+            throw new RuntimeException("failure");
+        }, CacheConfig.builder().withListenerDispatch(ListenerDispatchMode.QUEUED).withListenerExecutor(tasks::add).build());
+
+        dispatcher.dispatch(snapshot(1));
+        dispatcher.dispatch(snapshot(2));
+        tasks.remove(0).run();
+
+        assertEquals(2, dispatcher.getStats().getNotificationCount());
+        assertEquals(2, dispatcher.getStats().getFailureCount());
+    }
+
+    private ListenerDispatcher<String, Integer> dispatcher(ListenerDispatchMode mode, int capacity) {
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withListenerDispatch(mode)
+                .withListenerQueueCapacity(capacity)
+                .withListenerExecutor(tasks::add)
+                .build();
+        return ListenerDispatcher.create(notified::add, cacheConfig);
+    }
+
+    private static Map<String, Integer> snapshot(int version) {
+        return ImmutableMap.of("key", version);
+    }
+}
@@ -0,0 +1,278 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.orbitz.consul.Consul;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ClientConfig;
+import com.orbitz.consul.model.catalog.CatalogService;
+import com.orbitz.consul.model.catalog.ImmutableCatalogService;
+import com.orbitz.consul.model.health.ImmutableNode;
+import com.orbitz.consul.model.health.ImmutableService;
+import com.orbitz.consul.model.health.ImmutableServiceHealth;
+import com.orbitz.consul.model.health.ServiceHealth;
+import com.orbitz.consul.option.ImmutableQueryOptions;
+import com.orbitz.consul.option.QueryOptions;
+import com.orbitz.consul.util.Jackson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.orbitz.consul.cache.CacheTestUtils.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs caches against a local stub of the Consul HTTP API which applies {@code "<tag>" in ...Tags} filter
+ * expressions, to check that the options selecting the values reach the server on every request.
+ */
+public class ServerSideFilterTest {
+
+    private static final Pattern TAG_FILTER = Pattern.compile("^\"(.+)\" in (Service\\.Tags|ServiceTags)$");
+    private static final int INSTANCES = 50;
+    private static final long INDEX = 42;
+
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private ExecutorService executor;
+    private HttpServer server;
+    private Consul consul;
+
+    private static final class Request {
+        private final String path;
+        private final Map<String, List<String>> params;
+        private final int responseBytes;
+
+        private Request(String path, Map<String, List<String>> params, int responseBytes) {
+            this.path = path;
+            this.params = params;
+            this.responseBytes = responseBytes;
+        }
+
+        private String param(String name) {
+            List<String> values = params.get(name);
+            return values == null ? null : values.get(0);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofMillis(10))
+                .withWatchMultiplexing(true)
+                .build();
+        consul = Consul.builder()
+                .withUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .withPing(false)
+                .withClientConfiguration(new ClientConfig(cacheConfig))
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        consul.destroy();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Map<String, List<String>> params = parse(exchange.getRequestURI().getRawQuery());
+        String filter = params.containsKey("filter") ? params.get("filter").get(0) : null;
+
+        Object body;
+        if (path.equals("/v1/health/service/web")) {
+            body = filter(healthInstances(), filter, instance -> instance.getService().getTags());
+        } else if (path.equals("/v1/catalog/service/web")) {
+            body = filter(catalogInstances(), filter, CatalogService::getServiceTags);
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        if (params.containsKey("index")) {
+            // nothing changes: a blocking query returns after a (short) wait
+            Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+        }
+        byte[] bytes = Jackson.MAPPER.writeValueAsBytes(body);
+        requests.add(new Request(path, params, bytes.length));
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("X-Consul-Index", String.valueOf(INDEX));
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static <T> List<T> filter(List<T> instances, String filter,
+                                      Function<T, List<String>> tagsOf) {
+        if (filter == null) {
+            return instances;
+        }
+        Matcher matcher = TAG_FILTER.matcher(filter);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Unsupported filter " + filter);
+        }
+        Predicate<T> hasTag = instance -> tagsOf.apply(instance).contains(matcher.group(1));
+        return instances.stream().filter(hasTag).collect(Collectors.toList());
+    }
+
+    private static List<ServiceHealth> healthInstances() {
+        List<ServiceHealth> instances = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            instances.add(ImmutableServiceHealth.builder()
+                    .node(ImmutableNode.builder().node("node-" + i).address("10.0.0." + i).build())
+                    .service(ImmutableService.builder()
+                            .id("web-" + i)
+                            .service("web")
+                            .address("10.0.1." + i)
+                            .port(8080)
+                            .addTags(i % 10 == 0 ? "primary" : "secondary")
+                            .putMeta("version", "1.0." + i)
+                            .build())
+                    .build());
+        }
+        return instances;
+    }
+
+    private static List<CatalogService> catalogInstances() {
+        List<CatalogService> instances = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            instances.add(ImmutableCatalogService.builder()
+                    .node("node-" + i)
+                    .address("10.0.0." + i)
+                    .serviceName("web")
+                    .serviceId("web-" + i)
+                    .serviceAddress("10.0.1." + i)
+                    .servicePort(8080)
+                    .addServiceTags(i % 10 == 0 ? "primary" : "secondary")
+                    .build());
+        }
+        return instances;
+    }
+
+    private static Map<String, List<String>> parse(String rawQuery) throws IOException {
+        Map<String, List<String>> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+            params.computeIfAbsent(name, n -> new ArrayList<>()).add(value);
+        }
+        return params;
+    }
+
+    private List<Request> requests(String path, String filter) {
+        return requests.stream()
+                .filter(request -> request.path.equals(path))
+                .filter(request -> Objects.equals(filter, request.param("filter")))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testFilterIsSentOnEveryBlockingRequest() throws Exception {
+        String filter = "\"primary\" in Service.Tags";
+        QueryOptions queryOptions = ImmutableQueryOptions.builder().filter(filter).build();
+        try (ServiceHealthCache filtered = ServiceHealthCache.newCache(consul.healthClient(), "web", false, 5, queryOptions);
+             ServiceHealthCache unfiltered = ServiceHealthCache.newCache(consul.healthClient(), "web", false, 5, QueryOptions.BLANK)) {
+            filtered.start();
+            unfiltered.start();
+            assertTrue(filtered.awaitInitialized(2, TimeUnit.SECONDS));
+            assertTrue(unfiltered.awaitInitialized(2, TimeUnit.SECONDS));
+            await(() -> requests("/v1/health/service/web", filter).stream().filter(r -> r.params.containsKey("index")).count() >= 2);
+
+            assertEquals(INSTANCES / 10, filtered.getMap().size());
+            assertEquals(INSTANCES, unfiltered.getMap().size());
+
+            List<Request> blocking = requests.stream()
+                    .filter(request -> request.path.equals("/v1/health/service/web"))
+                    .filter(request -> request.params.containsKey("index"))
+                    .collect(Collectors.toList());
+            for (Request request : blocking) {
+                assertEquals(String.valueOf(INDEX), request.param("index"));
+            }
+            // blocking requests of the filtered cache keep the filter
+            assertTrue(blocking.stream().anyMatch(request -> filter.equals(request.param("filter"))));
+
+            int filteredBytes = requests("/v1/health/service/web", filter).get(0).responseBytes;
+            int unfilteredBytes = requests("/v1/health/service/web", null).get(0).responseBytes;
+            assertTrue("filtered " + filteredBytes + " bytes, unfiltered " + unfilteredBytes + " bytes",
+                    filteredBytes * 5 < unfilteredBytes);
+        }
+    }
+
+    @Test
+    public void testNamespaceAndNodeMetaAreSentOnEveryBlockingRequest() throws Exception {
+        String filter = "\"primary\" in ServiceTags";
+        QueryOptions queryOptions = ImmutableQueryOptions.builder()
+                .filter(filter)
+                .namespace("team")
+                .addNodeMeta("rack:r1")
+                .build();
+        try (ServiceCatalogCache cache = ServiceCatalogCache.newCache(consul.catalogClient(), "web", queryOptions, 5)) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(2, TimeUnit.SECONDS));
+            await(() -> requests("/v1/catalog/service/web", filter).size() >= 3);
+
+            assertEquals(INSTANCES / 10, cache.getMap().size());
+            for (Request request : requests("/v1/catalog/service/web", filter)) {
+                assertEquals("team", request.param("ns"));
+                assertEquals("rack:r1", request.param("node-meta"));
+            }
+            assertTrue(requests.stream().allMatch(request -> filter.equals(request.param("filter"))));
+        }
+    }
+
+    @Test
+    public void testWatchesAreOnlySharedWithTheSameFilter() throws Exception {
+        QueryOptions primary = ImmutableQueryOptions.builder().filter("\"primary\" in Service.Tags").build();
+        QueryOptions secondary = ImmutableQueryOptions.builder().filter("\"secondary\" in Service.Tags").build();
+        try (ServiceHealthCache a = ServiceHealthCache.newCache(consul.healthClient(), "web", false, 5, primary);
+             ServiceHealthCache b = ServiceHealthCache.newCache(consul.healthClient(), "web", false, 5, primary);
+             ServiceHealthCache c = ServiceHealthCache.newCache(consul.healthClient(), "web", false, 5, secondary)) {
+            a.start();
+            b.start();
+            c.start();
+            assertTrue(a.awaitInitialized(2, TimeUnit.SECONDS));
+            assertTrue(b.awaitInitialized(2, TimeUnit.SECONDS));
+            assertTrue(c.awaitInitialized(2, TimeUnit.SECONDS));
+
+            assertEquals(2, consul.watchMultiplexer().getSharedWatches());
+            assertEquals(3, consul.watchMultiplexer().getLogicalWatches());
+            assertEquals(ImmutableSet.copyOf(a.getMap().keySet()), ImmutableSet.copyOf(b.getMap().keySet()));
+            assertEquals(INSTANCES / 10, a.getMap().size());
+            assertEquals(INSTANCES - INSTANCES / 10, c.getMap().size());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.orbitz.consul.cache;
+
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.catalog.ImmutableServiceWeights;
+import com.orbitz.consul.model.health.HealthCheck;
+import com.orbitz.consul.model.health.ImmutableHealthCheck;
+import com.orbitz.consul.model.health.ImmutableNode;
+import com.orbitz.consul.model.health.ImmutableService;
+import com.orbitz.consul.model.health.ImmutableServiceHealth;
+import com.orbitz.consul.model.health.ServiceHealth;
+import com.orbitz.consul.monitoring.ClientEventHandler;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ServiceLoadBalancerTest {
+
+    private final ConsulCache<ServiceHealthKey, ServiceHealth> cache = new ConsulCache<>(ServiceHealthKey::fromServiceHealth,
+            (index, callback) -> { }, CacheConfig.builder().build(), mock(ClientEventHandler.class), new CacheDescriptor("health.service", "web"));
+    private final CacheTestUtils.Responses<ServiceHealthKey, ServiceHealth> responses =
+            new CacheTestUtils.Responses<>(ServiceHealthKey::fromServiceHealth);
+
+    @Test
+    public void testRoundRobin() {
+        ServiceLoadBalancer balancer = ServiceLoadBalancer.create(cache, ServiceLoadBalancer.Strategy.ROUND_ROBIN);
+        assertNull(balancer.pick());
+
+        update(balancer, instance("a", 1, 1, "passing"), instance("b", 1, 1, "passing"), instance("c", 1, 1, "passing"));
+
+        assertEquals(Arrays.asList("a", "b", "c", "a", "b", "c"), Arrays.asList(
+                balancer.pick().getHost(), balancer.pick().getHost(), balancer.pick().getHost(),
+                balancer.pick().getHost(), balancer.pick().getHost(), balancer.pick().getHost()));
+    }
+
+    @Test
+    public void testUnhealthyInstancesAreLeftOut() {
+        ServiceLoadBalancer balancer = ServiceLoadBalancer.create(cache, ServiceLoadBalancer.Strategy.ROUND_ROBIN);
+
+        update(balancer, instance("a", 1, 1, "passing"), instance("b", 1, 1, "critical"), instance("c", 1, 0, "warning"));
+        assertEquals(1, balancer.size());
+        assertEquals("a", balancer.pick().getHost());
+
+        update(balancer, instance("b", 1, 1, "passing"));
+        assertEquals(1, balancer.size());
+        assertEquals("b", balancer.pick().getHost());
+    }
+
+    @Test
+    public void testWeightedPicksFollowTheWeights() {
+        ServiceLoadBalancer balancer = ServiceLoadBalancer.create(cache, ServiceLoadBalancer.Strategy.WEIGHTED);
+        update(balancer, instance("a", 1, 1, "passing"), instance("b", 3, 1, "passing"), instance("c", 10, 4, "warning"));
+
+        Map<String, Integer> picks = new HashMap<>();
+        for (int i = 0; i < 80000; i++) {
+            picks.merge(balancer.pick().getHost(), 1, Integer::sum);
+        }
+
+        assertEquals(10000, picks.get("a"), 1000);
+        assertEquals(30000, picks.get("b"), 1500);
+        assertEquals(40000, picks.get("c"), 1500);
+    }
+
+    @Test
+    public void testLeastOutstanding() {
+        ServiceLoadBalancer balancer = ServiceLoadBalancer.create(cache, ServiceLoadBalancer.Strategy.LEAST_OUTSTANDING);
+        update(balancer, instance("a", 1, 1, "passing"), instance("b", 1, 1, "passing"));
+
+        ServiceLoadBalancer.Endpoint first = balancer.pick();
+        ServiceLoadBalancer.Endpoint second = balancer.pick();
+        assertTrue(first != second);
+        first.release();
+
+        assertSame(first, balancer.pick());
+        assertEquals(1, first.getOutstanding());
+        assertEquals(1, second.getOutstanding());
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesAvoidsBusyEndpoints() {
+        ServiceLoadBalancer balancer = ServiceLoadBalancer.create(cache, ServiceLoadBalancer.Strategy.POWER_OF_TWO_CHOICES);
+        update(balancer, instance("a", 1, 1, "passing"), instance("b", 1, 1, "passing"));
+
+        ServiceLoadBalancer.Endpoint busy = balancer.pick();
+        for (int i = 0; i < 100; i++) {
+            ServiceLoadBalancer.Endpoint endpoint = balancer.pick();
+            assertTrue(endpoint != busy);
+            endpoint.release();
+        }
+    }
+
+    @Test
+    public void testOutstandingCountsSurviveUpdates() {
+        ServiceLoadBalancer balancer = ServiceLoadBalancer.create(cache, ServiceLoadBalancer.Strategy.LEAST_OUTSTANDING);
+        update(balancer, instance("a", 1, 1, "passing"));
+        ServiceLoadBalancer.Endpoint endpoint = balancer.pick();
+
+        update(balancer, instance("a", 2, 1, "passing"));
+
+        assertSame(endpoint, balancer.getEndpoints().get(0));
+        assertEquals(2, endpoint.getWeight());
+        assertEquals(1, endpoint.getOutstanding());
+    }
+
+    @Test
+    public void testBalancerFollowsTheCache() {
+        List<ServiceHealth> instances = Arrays.asList(instance("a", 1, 1, "passing"), instance("b", 1, 1, "passing"));
+        try (ConsulCache<ServiceHealthKey, ServiceHealth> started = new ConsulCache<>(ServiceHealthKey::fromServiceHealth,
+                (index, callback) -> callback.onComplete(new ConsulResponse<>(instances, 0, true, BigInteger.ONE, null, null)),
+                CacheConfig.builder().withMinDelayBetweenRequests(Duration.ofHours(1)).build(),
+                mock(ClientEventHandler.class), new CacheDescriptor("health.service", "web"))) {
+            ServiceLoadBalancer balancer = ServiceLoadBalancer.create(started, ServiceLoadBalancer.Strategy.ROUND_ROBIN);
+            started.start();
+
+            assertEquals(2, balancer.size());
+            balancer.close();
+            assertTrue(started.getDeltaListeners().isEmpty());
+        }
+    }
+
+    @Test
+    public void testBalancersCreatedWhileResponsesArriveConverge() throws Exception {
+        List<ServiceHealth> all = Arrays.asList(instance("a", 1, 1, "passing"), instance("b", 1, 1, "passing"),
+                instance("c", 1, 1, "passing"));
+        List<ServiceHealth> one = Collections.singletonList(instance("a", 1, 1, "passing"));
+        int responses = 500;
+        AtomicInteger count = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        ExecutorService responder = Executors.newSingleThreadExecutor();
+        try (ConsulCache<ServiceHealthKey, ServiceHealth> started = new ConsulCache<>(ServiceHealthKey::fromServiceHealth,
+                (index, callback) -> {
+                    int n = count.incrementAndGet();
+                    if (n > responses) {
+                        done.countDown();
+                        return;
+                    }
+                    responder.execute(() -> callback.onComplete(new ConsulResponse<>(n % 2 == 0 ? all : one, 0, true,
+                            BigInteger.valueOf(n), null, null)));
+                },
+                CacheConfig.builder().withMinDelayBetweenRequests(Duration.ZERO).build(),
+                mock(ClientEventHandler.class), new CacheDescriptor("health.service", "web"))) {
+            started.start();
+
+            List<ServiceLoadBalancer> balancers = new ArrayList<>();
+            while (done.getCount() > 0) {
+                balancers.add(ServiceLoadBalancer.create(started, ServiceLoadBalancer.Strategy.ROUND_ROBIN));
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+
+            // the last response holds the three instances
+            for (ServiceLoadBalancer balancer : balancers) {
+                assertEquals(started.getMap().size(), balancer.size());
+            }
+        } finally {
+            responder.shutdownNow();
+        }
+    }
+
+    private void update(ServiceLoadBalancer balancer, ServiceHealth... instances) {
+        balancer.apply(responses.next(Arrays.asList(instances)));
+    }
+
+    private static ServiceHealth instance(String host, int passingWeight, int warningWeight, String status) {
+        HealthCheck check = ImmutableHealthCheck.builder()
+                .node(host)
+                .checkId("service:web")
+                .name("web")
+                .status(status)
+                .build();
+        return ImmutableServiceHealth.builder()
+                .node(ImmutableNode.builder().node(host).address(host).build())
+                .service(ImmutableService.builder()
+                        .id("web")
+                        .service("web")
+                        .address("")
+                        .port(8080)
+                        .weights(ImmutableServiceWeights.builder().passing(passingWeight).warning(warningWeight).build())
+                        .build())
+                .addChecks(check)
+                .build();
+    }
+}
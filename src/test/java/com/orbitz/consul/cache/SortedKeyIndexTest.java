@@ -0,0 +1,63 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SortedKeyIndexTest {
+
+    private final SortedKeyIndex<String> index = new SortedKeyIndex<>();
+    private final CacheTestUtils.Responses<String, String> responses =
+            new CacheTestUtils.Responses<>(value -> value.split("!")[0]);
+
+    @Test
+    public void testEntriesAreSortedByKey() {
+        update("b", "a/2", "a/1", "c");
+
+        assertEquals(Arrays.asList("a/1", "a/2", "b", "c"), ImmutableList.copyOf(index.all().keySet()));
+    }
+
+    @Test
+    public void testPrefixLookup() {
+        update("feature/x/a", "feature/x/b", "feature/xy", "feature/y/a", "feature/x");
+
+        assertEquals(Arrays.asList("feature/x/a", "feature/x/b"), ImmutableList.copyOf(index.withPrefix("feature/x/").keySet()));
+        assertEquals(Arrays.asList("feature/x", "feature/x/a", "feature/x/b", "feature/xy"),
+                ImmutableList.copyOf(index.withPrefix("feature/x").keySet()));
+        assertEquals(5, index.withPrefix("").size());
+        assertTrue(index.withPrefix("other/").isEmpty());
+    }
+
+    @Test
+    public void testRangeLookup() {
+        update("a", "b", "c", "d");
+
+        assertEquals(Arrays.asList("b", "c"), ImmutableList.copyOf(index.range("b", "d").keySet()));
+        assertTrue(index.range("b", "b").isEmpty());
+    }
+
+    @Test
+    public void testUpdatesAreApplied() {
+        update("a", "b", "c");
+        update("a", "c!", "d");
+
+        assertEquals(ImmutableMap.of("a", "a", "c", "c!", "d", "d"), index.all());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRangeBoundsMustBeOrdered() {
+        index.range("b", "a");
+    }
+
+    /**
+     * Applies the change set of a response made of the given values, keyed by the value up to its first "!".
+     */
+    private void update(String... values) {
+        index.apply(responses.next(Arrays.asList(values)));
+    }
+}
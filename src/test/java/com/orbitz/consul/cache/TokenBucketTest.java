@@ -0,0 +1,68 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong time = new AtomicLong(42);
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return time.get();
+        }
+    };
+
+    @Test
+    public void testRequestsAreSpacedByTheRate() {
+        TokenBucket bucket = new TokenBucket(2, 1, ticker);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(SECOND / 2, bucket.reserve(0));
+        assertEquals(SECOND, bucket.reserve(0));
+    }
+
+    @Test
+    public void testBurstIsAllowedAfterAnIdlePeriod() {
+        TokenBucket bucket = new TokenBucket(1, 3, ticker);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(SECOND, bucket.reserve(0));
+
+        time.addAndGet(10 * SECOND);
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(SECOND, bucket.reserve(0));
+    }
+
+    @Test
+    public void testDelayedRequestsAreNotDelayedFurther() {
+        TokenBucket bucket = new TokenBucket(1, 1, ticker);
+
+        assertEquals(2 * SECOND, bucket.reserve(2 * SECOND));
+        assertEquals(3 * SECOND, bucket.reserve(0));
+        assertEquals(5 * SECOND, bucket.reserve(5 * SECOND));
+    }
+
+    @Test
+    public void testNegativeDelaysAreSentImmediately() {
+        TokenBucket bucket = new TokenBucket(1, 1, ticker);
+
+        assertEquals(0, bucket.reserve(-SECOND));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateMustBePositive() {
+        new TokenBucket(0);
+    }
+}
@@ -0,0 +1,185 @@
+package com.orbitz.consul.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+import com.orbitz.consul.KeyValueClient;
+import com.orbitz.consul.config.CacheConfig;
+import com.orbitz.consul.config.ListenerDispatchMode;
+import com.orbitz.consul.model.kv.ImmutableValue;
+import com.orbitz.consul.model.kv.Value;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.orbitz.consul.cache.CacheTestUtils.await;
+import static com.orbitz.consul.cache.CacheTestUtils.kvApi;
+import static com.orbitz.consul.cache.CacheTestUtils.kvClient;
+import static com.orbitz.consul.cache.CacheTestUtils.response;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TypedKVCacheTest {
+
+    private final AtomicLong index = new AtomicLong(10);
+    private final Map<String, Value> values = new ConcurrentHashMap<>();
+    private final AtomicInteger decoded = new AtomicInteger();
+    private KeyValueClient.Api api;
+    private KeyValueClient kvClient;
+
+    public static class Feature {
+        public boolean enabled;
+    }
+
+    @Before
+    public void setUp() {
+        put("root/a", 5, "{\"enabled\": true}");
+        put("root/b", 6, "{\"enabled\": false}");
+
+        api = kvApi((method, args) -> response(new ArrayList<>(new TreeMap<>(values).values()), index.get()));
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofMillis(10))
+                .build();
+        kvClient = kvClient(api, cacheConfig);
+    }
+
+    @Test
+    public void testValuesAreDecodedOnce() throws Exception {
+        try (TypedKVCache<Feature> cache = newCache()) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            assertTrue(cache.get("a").get().enabled);
+            assertFalse(cache.get("b").get().enabled);
+            assertEquals(2, decoded.get());
+            Feature a = cache.get("a").get();
+
+            put("root/b", 11, "{\"enabled\": true}");
+            index.set(11);
+            await(() -> cache.get("b").get().enabled);
+
+            assertSame(a, cache.get("a").get());
+            assertEquals(3, decoded.get());
+            assertEquals(3, cache.getDecodeCount());
+            assertEquals(0, cache.getDecodeFailureCount());
+        }
+    }
+
+    @Test
+    public void testValuesWhichCannotBeDecodedAreLeftOut() throws Exception {
+        put("root/c", 7, "not json");
+        try (TypedKVCache<Feature> cache = newCache()) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            assertEquals(2, cache.getMap().size());
+            assertFalse(cache.get("c").isPresent());
+            assertEquals(1, cache.getDecodeFailureCount());
+
+            put("root/c", 12, "{\"enabled\": true}");
+            index.set(12);
+            await(() -> cache.get("c").isPresent());
+            assertEquals(1, cache.getDecodeFailureCount());
+        }
+    }
+
+    @Test
+    public void testUpdatedValuesWhichCannotBeDecodedAreRemoved() throws Exception {
+        try (TypedKVCache<Feature> cache = newCache()) {
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+            Feature a = cache.get("a").get();
+
+            put("root/b", 14, "not json");
+            index.set(14);
+            await(() -> !cache.get("b").isPresent());
+
+            assertEquals(ImmutableMap.of("a", a), cache.getMap());
+            assertEquals(1, cache.getDecodeFailureCount());
+        }
+    }
+
+    @Test
+    public void testEmptyCacheIsDispatchedOnce() throws Exception {
+        values.clear();
+        try (TypedKVCache<Feature> cache = newCache()) {
+            List<Map<String, Feature>> notified = new CopyOnWriteArrayList<>();
+            cache.addListener(notified::add);
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+            await(() -> notified.size() == 1);
+
+            assertTrue(cache.getMap().isEmpty());
+            assertEquals(0, cache.getDecodeCount());
+        }
+    }
+
+    @Test
+    public void testRemovedValuesAreRemoved() throws Exception {
+        try (TypedKVCache<Feature> cache = newCache()) {
+            List<Map<String, Feature>> notified = new ArrayList<>();
+            cache.addListener(notified::add);
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            values.remove("root/a");
+            index.set(13);
+            await(() -> !cache.get("a").isPresent());
+
+            assertEquals(ImmutableMap.of("b", cache.get("b").get()), cache.getMap());
+            assertEquals(2, notified.size());
+        }
+    }
+
+    @Test
+    public void testListenersFollowTheDispatchModeOfTheCache() throws Exception {
+        CacheConfig cacheConfig = CacheConfig.builder()
+                .withMinDelayBetweenRequests(Duration.ofMillis(10))
+                .withListenerDispatch(ListenerDispatchMode.QUEUED)
+                .build();
+        KeyValueClient queuedClient = kvClient(api, cacheConfig);
+        try (TypedKVCache<Feature> cache = TypedKVCache.newCache(KVCache.newCache(queuedClient, "root/", 5),
+                TypedKVCache.json(Feature.class))) {
+            List<String> threads = new CopyOnWriteArrayList<>();
+            ConsulCache.Listener<String, Feature> listener = map -> threads.add(Thread.currentThread().getName());
+            cache.addListener(listener);
+            cache.start();
+            assertTrue(cache.awaitInitialized(1, TimeUnit.SECONDS));
+
+            await(() -> cache.getListenerStats(listener).get().getNotificationCount() == 1);
+            assertTrue(threads.get(0).startsWith("consulCacheListener-"));
+        }
+    }
+
+    private TypedKVCache<Feature> newCache() {
+        TypedKVCache.Decoder<Feature> json = TypedKVCache.json(Feature.class);
+        return TypedKVCache.newCache(KVCache.newCache(kvClient, "root/", 5), value -> {
+            decoded.incrementAndGet();
+            return json.decode(value);
+        });
+    }
+
+    private void put(String key, long modifyIndex, String json) {
+        values.put(key, ImmutableValue.builder()
+                .createIndex(1)
+                .modifyIndex(modifyIndex)
+                .lockIndex(0)
+                .flags(0)
+                .key(key)
+                .value(Optional.of(BaseEncoding.base64().encode(json.getBytes(StandardCharsets.UTF_8))))
+                .build());
+    }
+}
@@ -0,0 +1,138 @@
+package com.orbitz.consul.cache;
+
+import com.orbitz.consul.async.ConsulResponseCallback;
+import com.orbitz.consul.model.ConsulResponse;
+import com.orbitz.consul.model.kv.Value;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WatchMultiplexerTest {
+
+    @Test
+    public void testIdenticalWatchesShareOneQuery() {
+        WatchMultiplexer multiplexer = new WatchMultiplexer();
+        PendingCallbackConsumer delegate = new PendingCallbackConsumer();
+
+        WatchMultiplexer.Subscription<Value> first = (WatchMultiplexer.Subscription<Value>)
+                multiplexer.subscribe(Arrays.asList("keyvalue", "foo"), delegate);
+        WatchMultiplexer.Subscription<Value> second = (WatchMultiplexer.Subscription<Value>)
+                multiplexer.subscribe(Arrays.asList("keyvalue", "foo"), delegate);
+
+        RecordingCallback firstCallback = new RecordingCallback();
+        RecordingCallback secondCallback = new RecordingCallback();
+        first.consume(null, firstCallback);
+        second.consume(null, secondCallback);
+
+        assertEquals(1, delegate.callbacks.size());
+        assertEquals(1, multiplexer.getLiveConnections());
+        assertEquals(2, multiplexer.getLogicalWatches());
+        assertEquals(1, multiplexer.getSharedWatches());
+
+        ConsulResponse<List<Value>> response = new ConsulResponse<>(Collections.emptyList(), 0, true, BigInteger.TEN, null, null);
+        delegate.callbacks.get(0).onComplete(response);
+
+        assertEquals(0, multiplexer.getLiveConnections());
+        assertSame(response, firstCallback.responses.get(0));
+        assertSame(response, secondCallback.responses.get(0));
+
+        first.close();
+        second.close();
+        assertEquals(0, multiplexer.getLogicalWatches());
+        assertEquals(0, multiplexer.getSharedWatches());
+    }
+
+    @Test
+    public void testLateSubscriberIsServedLastResponse() {
+        WatchMultiplexer multiplexer = new WatchMultiplexer();
+        PendingCallbackConsumer delegate = new PendingCallbackConsumer();
+
+        ConsulCache.CallbackConsumer<Value> first = multiplexer.subscribe(Arrays.asList("keyvalue", "foo"), delegate);
+        ConsulCache.CallbackConsumer<Value> second = multiplexer.subscribe(Arrays.asList("keyvalue", "foo"), delegate);
+
+        first.consume(null, new RecordingCallback());
+        ConsulResponse<List<Value>> response = new ConsulResponse<>(Collections.emptyList(), 0, true, BigInteger.TEN, null, null);
+        delegate.callbacks.get(0).onComplete(response);
+
+        RecordingCallback late = new RecordingCallback();
+        second.consume(null, late);
+
+        assertEquals(1, delegate.callbacks.size());
+        assertSame(response, late.responses.get(0));
+
+        second.consume(BigInteger.TEN, new RecordingCallback());
+        first.consume(BigInteger.TEN, new RecordingCallback());
+        assertEquals(2, delegate.callbacks.size());
+        assertEquals(BigInteger.TEN, delegate.indexes.get(1));
+    }
+
+    @Test
+    public void testResponsesWithoutIndexAreNotServedAgain() {
+        WatchMultiplexer multiplexer = new WatchMultiplexer();
+        PendingCallbackConsumer delegate = new PendingCallbackConsumer();
+
+        ConsulCache.CallbackConsumer<Value> first = multiplexer.subscribe(Arrays.asList("agent", "services"), delegate);
+        ConsulCache.CallbackConsumer<Value> second = multiplexer.subscribe(Arrays.asList("agent", "services"), delegate);
+
+        first.consume(null, new RecordingCallback());
+        ConsulResponse<List<Value>> response = new ConsulResponse<>(Collections.emptyList(), 0, true, BigInteger.ZERO, null, null);
+        delegate.callbacks.get(0).onComplete(response);
+
+        // the cache stores an index of 0 as 1, so asking with 1 means the response was already seen
+        RecordingCallback waiting = new RecordingCallback();
+        first.consume(BigInteger.ONE, waiting);
+        assertTrue(waiting.responses.isEmpty());
+        assertEquals(2, delegate.callbacks.size());
+        assertEquals(BigInteger.ONE, delegate.indexes.get(1));
+
+        RecordingCallback late = new RecordingCallback();
+        second.consume(null, late);
+        assertSame(response, late.responses.get(0));
+        assertEquals(2, delegate.callbacks.size());
+    }
+
+    @Test
+    public void testDifferentWatchesAreNotShared() {
+        WatchMultiplexer multiplexer = new WatchMultiplexer();
+        PendingCallbackConsumer delegate = new PendingCallbackConsumer();
+
+        multiplexer.subscribe(Arrays.asList("keyvalue", "foo"), delegate).consume(null, new RecordingCallback());
+        multiplexer.subscribe(Arrays.asList("keyvalue", "bar"), delegate).consume(null, new RecordingCallback());
+
+        assertEquals(2, delegate.callbacks.size());
+        assertEquals(2, multiplexer.getLiveConnections());
+        assertEquals(2, multiplexer.getSharedWatches());
+    }
+
+    private static class PendingCallbackConsumer implements ConsulCache.CallbackConsumer<Value> {
+        private final List<BigInteger> indexes = new ArrayList<>();
+        private final List<ConsulResponseCallback<List<Value>>> callbacks = new ArrayList<>();
+
+        @Override
+        public void consume(BigInteger index, ConsulResponseCallback<List<Value>> callback) {
+            indexes.add(index);
+            callbacks.add(callback);
+        }
+    }
+
+    private static class RecordingCallback implements ConsulResponseCallback<List<Value>> {
+        private final List<ConsulResponse<List<Value>>> responses = new ArrayList<>();
+
+        @Override
+        public void onComplete(ConsulResponse<List<Value>> consulResponse) {
+            responses.add(consulResponse);
+        }
+
+        @Override
+        public void onFailure(Throwable throwable) {
+        }
+    }
+}
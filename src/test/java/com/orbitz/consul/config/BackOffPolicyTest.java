@@ -0,0 +1,59 @@
+package com.orbitz.consul.config;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BackOffPolicyTest {
+
+    @Test
+    public void testUniformDelaysStayWithinBounds() {
+        BackOffPolicy policy = BackOffPolicy.uniform(Duration.ofMillis(100), Duration.ofMillis(200));
+        for (int failures = 1; failures < 100; failures++) {
+            assertBetween(100, 200, policy.nextDelay(failures, Duration.ZERO));
+        }
+    }
+
+    @Test
+    public void testExponentialDelaysDoubleUpToTheMaximum() {
+        BackOffPolicy policy = BackOffPolicy.exponential(Duration.ofMillis(100), Duration.ofSeconds(10));
+        for (int i = 0; i < 100; i++) {
+            assertBetween(50, 100, policy.nextDelay(1, Duration.ZERO));
+            assertBetween(100, 200, policy.nextDelay(2, Duration.ZERO));
+            assertBetween(400, 800, policy.nextDelay(4, Duration.ZERO));
+            assertBetween(5000, 10000, policy.nextDelay(20, Duration.ZERO));
+            assertBetween(5000, 10000, policy.nextDelay(Integer.MAX_VALUE, Duration.ZERO));
+        }
+    }
+
+    @Test
+    public void testDecorrelatedJitterDelaysGrowFromThePreviousDelay() {
+        BackOffPolicy policy = BackOffPolicy.decorrelatedJitter(Duration.ofMillis(100), Duration.ofSeconds(2));
+        Duration delay = Duration.ZERO;
+        for (int failures = 1; failures < 100; failures++) {
+            Duration next = policy.nextDelay(failures, delay);
+            assertBetween(100, Math.min(2000, Math.max(100, delay.toMillis() * 3)), next);
+            delay = next;
+        }
+    }
+
+    @Test
+    public void testFixedDelays() {
+        Duration delay = Duration.ofSeconds(1);
+        assertEquals(delay, BackOffPolicy.uniform(delay, delay).nextDelay(3, Duration.ZERO));
+        assertEquals(delay, BackOffPolicy.decorrelatedJitter(delay, delay).nextDelay(3, delay));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinimumDelayMustBeLessThanMaximumDelay() {
+        BackOffPolicy.exponential(Duration.ofSeconds(2), Duration.ofSeconds(1));
+    }
+
+    private static void assertBetween(long minMillis, long maxMillis, Duration delay) {
+        assertTrue(String.format("Delay expected between %d and %d ms but got %s", minMillis, maxMillis, delay),
+                delay.toMillis() >= minMillis && delay.toMillis() <= maxMillis);
+    }
+}
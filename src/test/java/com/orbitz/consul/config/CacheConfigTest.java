@@ -22,6 +22,8 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
@@ -41,6 +43,21 @@ public class CacheConfigTest {
         assertEquals(CacheConfig.DEFAULT_MIN_DELAY_ON_EMPTY_RESULT, config.getMinimumDurationDelayOnEmptyResult());
         assertEquals(CacheConfig.DEFAULT_TIMEOUT_AUTO_ADJUSTMENT_ENABLED, config.isTimeoutAutoAdjustmentEnabled());
         assertEquals(CacheConfig.DEFAULT_TIMEOUT_AUTO_ADJUSTMENT_MARGIN, config.getTimeoutAutoAdjustmentMargin());
+        assertEquals(CacheConfig.DEFAULT_WATCH_MULTIPLEXING_ENABLED, config.isWatchMultiplexingEnabled());
+        assertEquals(CacheConfig.DEFAULT_EXECUTION_MODE, config.getExecutionMode());
+        assertFalse(config.getTimerWheel().isPresent());
+        assertEquals(CacheConfig.DEFAULT_COMPACT_KEY_VALUES_ENABLED, config.isCompactKeyValuesEnabled());
+        assertFalse(config.getSnapshotDirectory().isPresent());
+        assertEquals(CacheConfig.DEFAULT_SNAPSHOT_INTERVAL, config.getSnapshotInterval());
+        assertEquals(CacheConfig.DEFAULT_AGENT_CACHE_ENABLED, config.isAgentCacheEnabled());
+        assertFalse(config.getAgentCacheMaxAge().isPresent());
+        assertFalse(config.getAgentCacheStaleIfError().isPresent());
+        assertFalse(config.getRateLimit().isPresent());
+        assertFalse(config.getGlobalRateLimiter().isPresent());
+        assertEquals(CacheConfig.DEFAULT_WAKEUP_JITTER, config.getWakeupJitter());
+        assertEquals(CacheConfig.DEFAULT_LISTENER_DISPATCH_MODE, config.getListenerDispatchMode());
+        assertEquals(CacheConfig.DEFAULT_LISTENER_QUEUE_CAPACITY, config.getListenerQueueCapacity());
+        assertFalse(config.getListenerExecutor().isPresent());
 
         AtomicBoolean loggedAsWarn = new AtomicBoolean(false);
         Logger logger = mock(Logger.class);
@@ -77,6 +94,30 @@ public class CacheConfigTest {
         assertEquals(delayBetweenRequests, config.getMinimumDurationDelayOnEmptyResult());
     }
 
+    @Test
+    @Parameters(method = "getDurationSamples")
+    @TestCaseName("Jitter: {0}")
+    public void testOverrideWakeupJitter(Duration jitter) {
+        CacheConfig config = CacheConfig.builder().withWakeupJitter(jitter).build();
+        assertEquals(jitter, config.getWakeupJitter());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSnapshotIntervalMustNotBeNegative() {
+        CacheConfig.builder().withSnapshotInterval(Duration.ofSeconds(-1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateLimitMustBePositive() {
+        CacheConfig.builder().withRateLimit(0);
+    }
+
+    @Test
+    public void testGlobalRateLimiterIsSharedByTheCaches() {
+        CacheConfig config = CacheConfig.builder().withGlobalRateLimit(10).build();
+        assertSame(config.getGlobalRateLimiter().get(), config.getGlobalRateLimiter().get());
+    }
+
     @Test
     @Parameters({"true", "false"})
     @TestCaseName("Enabled: {0}")
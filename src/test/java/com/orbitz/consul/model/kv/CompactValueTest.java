@@ -0,0 +1,85 @@
+package com.orbitz.consul.model.kv;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.orbitz.consul.util.Jackson;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompactValueTest {
+
+    private static final String JSON = "[{\"LockIndex\":1,\"Key\":\"a/b\",\"Flags\":18446744073709551615,"
+            + "\"Value\":\"aGVsbG8=\",\"CreateIndex\":2,\"ModifyIndex\":3,\"Session\":\"s\"},"
+            + "{\"LockIndex\":0,\"Key\":\"a/c\",\"Flags\":0,\"Value\":null,\"CreateIndex\":4,\"ModifyIndex\":5}]";
+
+    @Test
+    public void testDecode() throws IOException {
+        List<CompactValue> values = Jackson.MAPPER.readValue(JSON, new TypeReference<List<CompactValue>>() {});
+
+        CompactValue value = values.get(0);
+        assertEquals("a/b", value.getKey());
+        assertEquals(1, value.getLockIndex());
+        assertEquals(2, value.getCreateIndex());
+        assertEquals(3, value.getModifyIndex());
+        assertEquals(-1L, value.getFlags());
+        assertEquals("s", value.getSession().get());
+        assertEquals("aGVsbG8=", value.getValue().get());
+        assertEquals("hello", value.getValueAsString(StandardCharsets.UTF_8).get());
+
+        assertFalse(values.get(1).getValue().isPresent());
+        assertFalse(values.get(1).getValueAsByteBuffer().isPresent());
+        assertFalse(values.get(1).getSession().isPresent());
+    }
+
+    @Test
+    public void testMatchesImmutableValue() throws IOException {
+        List<Value> expected = Jackson.MAPPER.readValue(JSON, new TypeReference<List<Value>>() {});
+        List<CompactValue> actual = Jackson.MAPPER.readValue(JSON, new TypeReference<List<CompactValue>>() {});
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(actual.get(i), CompactValue.copyOf(expected.get(i)));
+            assertEquals(expected.get(i).getValue(), actual.get(i).getValue());
+        }
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testByteBufferIsReadOnly() {
+        CompactValue value = CompactValue.copyOf(ImmutableValue.builder()
+                .createIndex(1).modifyIndex(1).lockIndex(0).key("a").flags(0).value("aGVsbG8=").build());
+
+        ByteBuffer buffer = value.getValueAsByteBuffer().get();
+        assertEquals(5, buffer.remaining());
+        buffer.put(0, (byte) 0);
+    }
+
+    @Test
+    public void testBytesAreCopied() {
+        CompactValue value = CompactValue.copyOf(ImmutableValue.builder()
+                .createIndex(1).modifyIndex(1).lockIndex(0).key("a").flags(0).value("aGVsbG8=").build());
+
+        byte[] bytes = value.getValueAsBytes().get();
+        bytes[0] = 0;
+
+        assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8), value.getValueAsBytes().get());
+        assertTrue(value.getValueAsByteBuffer().get().isReadOnly());
+    }
+
+    @Test
+    public void testSerializeAsValue() throws IOException {
+        CompactValue value = CompactValue.copyOf(ImmutableValue.builder()
+                .createIndex(1).modifyIndex(2).lockIndex(0).key("a").flags(7).value("aGVsbG8=").session("s").build());
+
+        Value roundTrip = Jackson.MAPPER.readValue(Jackson.MAPPER.writeValueAsString(value), Value.class);
+
+        assertEquals(value, CompactValue.copyOf(roundTrip));
+    }
+}
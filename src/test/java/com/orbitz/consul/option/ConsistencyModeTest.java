@@ -3,6 +3,7 @@ package com.orbitz.consul.option;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 import java.util.Optional;
 
@@ -41,6 +42,17 @@ public class ConsistencyModeTest {
         assertEquals(0, consistency.getAdditionalHeaders().size());
     }
 
+    @Test
+    public void checkCachedModesWithTheSameHeadersAreEqual() {
+        ConsistencyMode consistency = ConsistencyMode.createCachedConsistencyWithMaxAgeAndStale(Optional.of(30L), Optional.of(60L));
+
+        assertEquals(consistency, ConsistencyMode.createCachedConsistencyWithMaxAgeAndStale(Optional.of(30L), Optional.of(60L)));
+        assertEquals(consistency.hashCode(),
+                ConsistencyMode.createCachedConsistencyWithMaxAgeAndStale(Optional.of(30L), Optional.of(60L)).hashCode());
+        assertNotEquals(consistency, ConsistencyMode.createCachedConsistencyWithMaxAgeAndStale(Optional.of(30L), Optional.empty()));
+        assertNotEquals(ConsistencyMode.STALE, ConsistencyMode.CONSISTENT);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void checkBadMaxAge() {
         ConsistencyMode.createCachedConsistencyWithMaxAgeAndStale(Optional.of(-1L), Optional.empty());
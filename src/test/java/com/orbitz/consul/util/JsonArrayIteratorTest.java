@@ -0,0 +1,72 @@
+package com.orbitz.consul.util;
+
+import com.orbitz.consul.ConsulException;
+import com.orbitz.consul.model.kv.Value;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JsonArrayIteratorTest {
+
+    @Test
+    public void testElementsAreDecoded() {
+        String json = "[{\"Key\":\"a\",\"Value\":\"dmFsdWU=\",\"Flags\":0,\"CreateIndex\":1,\"ModifyIndex\":2,\"LockIndex\":0},"
+                + "{\"Key\":\"b\",\"Flags\":0,\"CreateIndex\":3,\"ModifyIndex\":4,\"LockIndex\":0}]";
+
+        List<Value> values;
+        try (Stream<Value> stream = JsonArrayIterator.of(input(json), Value.class).stream()) {
+            values = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(2, values.size());
+        assertEquals("a", values.get(0).getKey());
+        assertEquals("value", values.get(0).getValueAsString().get());
+        assertEquals(4, values.get(1).getModifyIndex());
+        assertFalse(values.get(1).getValue().isPresent());
+    }
+
+    @Test
+    public void testEmptyInputIsAnEmptyArray() {
+        assertFalse(JsonArrayIterator.of(input(""), Value.class).hasNext());
+        assertFalse(JsonArrayIterator.of(input("[]"), Value.class).hasNext());
+    }
+
+    @Test
+    public void testInputIsClosedOnceExhausted() {
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream in = new ByteArrayInputStream("[\"a\"]".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        JsonArrayIterator<String> iterator = JsonArrayIterator.of(in, String.class);
+        assertEquals("a", iterator.next());
+        assertFalse(closed.get());
+        assertFalse(iterator.hasNext());
+        assertTrue(closed.get());
+    }
+
+    @Test(expected = ConsulException.class)
+    public void testMalformedElementThrowsConsulException() {
+        JsonArrayIterator<Value> iterator = JsonArrayIterator.of(input("[{\"Key\":"), Value.class);
+        while (iterator.hasNext()) {
+            iterator.next();
+        }
+    }
+
+    private static InputStream input(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}